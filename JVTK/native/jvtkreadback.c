@@ -0,0 +1,427 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+
+/*
+ * Native helper for eu.mihosoft.vtk.NativeReadback.
+ *
+ * Reads pixels of the current OpenGL context either directly into a direct
+ * NIO buffer or asynchronously via two alternating pixel buffer objects
+ * (PBO). All OpenGL functions are resolved
+ * at runtime. Thus, no OpenGL headers or import libraries are necessary.
+ *
+ * All functions must be called while the OpenGL context of the vtk render
+ * window is current (see vtkRenderWindow::MakeCurrent()).
+ */
+
+#include <jni.h>
+#include <stddef.h>
+#include <stdlib.h>
+#include <string.h>
+
+#if defined(_WIN32)
+#include <windows.h>
+#define GLAPIENTRY APIENTRY
+#else
+#include <dlfcn.h>
+#define GLAPIENTRY
+#endif
+
+typedef unsigned int GLenum;
+typedef unsigned int GLuint;
+typedef int GLint;
+typedef int GLsizei;
+typedef unsigned char GLboolean;
+typedef void GLvoid;
+typedef ptrdiff_t GLsizeiptr;
+
+#define GL_FRONT               0x0404
+#define GL_BACK                0x0405
+#define GL_READ_BUFFER         0x0C02
+#define GL_PACK_ALIGNMENT      0x0D05
+#define GL_UNSIGNED_BYTE       0x1401
+#define GL_FLOAT               0x1406
+#define GL_DEPTH_COMPONENT     0x1902
+#define GL_RGB                 0x1907
+#define GL_RGBA                0x1908
+#define GL_PIXEL_PACK_BUFFER   0x88EB
+#define GL_STREAM_READ         0x88E1
+#define GL_READ_ONLY           0x88B8
+
+typedef void (GLAPIENTRY *ReadPixelsFn)(GLint, GLint, GLsizei, GLsizei,
+        GLenum, GLenum, GLvoid*);
+typedef void (GLAPIENTRY *PixelStoreiFn)(GLenum, GLint);
+typedef void (GLAPIENTRY *GetIntegervFn)(GLenum, GLint*);
+typedef void (GLAPIENTRY *ReadBufferFn)(GLenum);
+typedef void (GLAPIENTRY *GenBuffersFn)(GLsizei, GLuint*);
+typedef void (GLAPIENTRY *DeleteBuffersFn)(GLsizei, const GLuint*);
+typedef void (GLAPIENTRY *BindBufferFn)(GLenum, GLuint);
+typedef void (GLAPIENTRY *BufferDataFn)(GLenum, GLsizeiptr, const GLvoid*,
+        GLenum);
+typedef void* (GLAPIENTRY *MapBufferFn)(GLenum, GLenum);
+typedef GLboolean (GLAPIENTRY *UnmapBufferFn)(GLenum);
+
+static ReadPixelsFn glReadPixelsPtr;
+static PixelStoreiFn glPixelStoreiPtr;
+static GetIntegervFn glGetIntegervPtr;
+static ReadBufferFn glReadBufferPtr;
+static GenBuffersFn glGenBuffersPtr;
+static DeleteBuffersFn glDeleteBuffersPtr;
+static BindBufferFn glBindBufferPtr;
+static BufferDataFn glBufferDataPtr;
+static MapBufferFn glMapBufferPtr;
+static UnmapBufferFn glUnmapBufferPtr;
+
+/* pbo reader state */
+typedef struct {
+    GLuint pbo[2];
+    /* allocated size of the buffers (bytes) */
+    jint capacity[2];
+    /* size of the pending reads (bytes) */
+    jint size[2];
+    /* buffer used for the next read */
+    int next;
+    /* number of pending reads (0, 1 or 2) */
+    int pending;
+} PBOReader;
+
+/*
+ * Resolves an OpenGL function. Core functions are looked up in the OpenGL
+ * library, extension functions via the platform specific get-proc-address
+ * function.
+ */
+static void* getProc(const char* name) {
+#if defined(_WIN32)
+    typedef PROC (WINAPI *WglGetProcAddressFn)(LPCSTR);
+    HMODULE lib = GetModuleHandleA("opengl32.dll");
+    void* p = NULL;
+    if (lib == NULL) {
+        return NULL;
+    }
+    p = (void*) GetProcAddress(lib, name);
+    if (p == NULL) {
+        WglGetProcAddressFn wglGetProc =
+                (WglGetProcAddressFn) GetProcAddress(lib, "wglGetProcAddress");
+        if (wglGetProc != NULL) {
+            p = (void*) wglGetProc(name);
+        }
+    }
+    return p;
+#elif defined(__APPLE__)
+    return dlsym(RTLD_DEFAULT, name);
+#else
+    typedef void* (*GlxGetProcAddressFn)(const unsigned char*);
+    static void* lib = NULL;
+    GlxGetProcAddressFn glxGetProc;
+    void* p;
+    if (lib == NULL) {
+        lib = dlopen("libGL.so.1", RTLD_LAZY | RTLD_GLOBAL);
+    }
+    if (lib == NULL) {
+        return NULL;
+    }
+    p = dlsym(lib, name);
+    if (p == NULL) {
+        glxGetProc = (GlxGetProcAddressFn) dlsym(lib, "glXGetProcAddressARB");
+        if (glxGetProc != NULL) {
+            p = glxGetProc((const unsigned char*) name);
+        }
+    }
+    return p;
+#endif
+}
+
+/*
+ * Resolves all OpenGL functions (ARB names are used as fallback).
+ */
+static int initFunctions(void) {
+    static int initialized = 0;
+
+    if (initialized) {
+        return glMapBufferPtr != NULL;
+    }
+
+    glReadPixelsPtr = (ReadPixelsFn) getProc("glReadPixels");
+    glPixelStoreiPtr = (PixelStoreiFn) getProc("glPixelStorei");
+    glGetIntegervPtr = (GetIntegervFn) getProc("glGetIntegerv");
+    glReadBufferPtr = (ReadBufferFn) getProc("glReadBuffer");
+
+    glGenBuffersPtr = (GenBuffersFn) getProc("glGenBuffers");
+    glDeleteBuffersPtr = (DeleteBuffersFn) getProc("glDeleteBuffers");
+    glBindBufferPtr = (BindBufferFn) getProc("glBindBuffer");
+    glBufferDataPtr = (BufferDataFn) getProc("glBufferData");
+    glMapBufferPtr = (MapBufferFn) getProc("glMapBuffer");
+    glUnmapBufferPtr = (UnmapBufferFn) getProc("glUnmapBuffer");
+
+    if (glGenBuffersPtr == NULL) {
+        glGenBuffersPtr = (GenBuffersFn) getProc("glGenBuffersARB");
+        glDeleteBuffersPtr = (DeleteBuffersFn) getProc("glDeleteBuffersARB");
+        glBindBufferPtr = (BindBufferFn) getProc("glBindBufferARB");
+        glBufferDataPtr = (BufferDataFn) getProc("glBufferDataARB");
+        glMapBufferPtr = (MapBufferFn) getProc("glMapBufferARB");
+        glUnmapBufferPtr = (UnmapBufferFn) getProc("glUnmapBufferARB");
+    }
+
+    initialized = 1;
+
+    if (glReadPixelsPtr == NULL || glPixelStoreiPtr == NULL
+            || glGetIntegervPtr == NULL || glReadBufferPtr == NULL) {
+        glReadPixelsPtr = NULL;
+        glMapBufferPtr = NULL;
+        return 0;
+    }
+
+    if (glGenBuffersPtr == NULL || glDeleteBuffersPtr == NULL
+            || glBindBufferPtr == NULL || glBufferDataPtr == NULL
+            || glMapBufferPtr == NULL || glUnmapBufferPtr == NULL) {
+        glMapBufferPtr = NULL;
+        return 0;
+    }
+
+    return 1;
+}
+
+/*
+ * Indicates whether the core functions necessary for synchronous reads are
+ * available.
+ */
+static int hasCoreFunctions(void) {
+    initFunctions();
+    return glReadPixelsPtr != NULL;
+}
+
+/*
+ * Reads pixels from the current read buffer to the specified destination
+ * (either client memory or an offset into the bound pixel pack buffer).
+ */
+static void readPixels(jint x, jint y, jint w, jint h, GLenum format,
+        GLenum type, jboolean front, void* dest) {
+    GLint alignment;
+    GLint readBuffer;
+
+    glGetIntegervPtr(GL_PACK_ALIGNMENT, &alignment);
+    glGetIntegervPtr(GL_READ_BUFFER, &readBuffer);
+
+    glPixelStoreiPtr(GL_PACK_ALIGNMENT, 1);
+    glReadBufferPtr(front ? GL_FRONT : GL_BACK);
+
+    glReadPixelsPtr(x, y, w, h, format, type, dest);
+
+    glReadBufferPtr((GLenum) readBuffer);
+    glPixelStoreiPtr(GL_PACK_ALIGNMENT, alignment);
+}
+
+JNIEXPORT jint JNICALL Java_eu_mihosoft_vtk_NativeReadback_nativeVersion(
+        JNIEnv* env, jclass cls) {
+    return 1;
+}
+
+JNIEXPORT jboolean JNICALL Java_eu_mihosoft_vtk_NativeReadback_readPixels(
+        JNIEnv* env, jclass cls,
+        jint x, jint y, jint w, jint h, jint components, jboolean front,
+        jobject buffer) {
+    void* dest;
+    jlong capacity;
+
+    if (!hasCoreFunctions() || w <= 0 || h <= 0) {
+        return JNI_FALSE;
+    }
+
+    dest = (*env)->GetDirectBufferAddress(env, buffer);
+    capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+
+    if (dest == NULL || capacity < (jlong) w * h * components) {
+        return JNI_FALSE;
+    }
+
+    /* no pixel pack buffer must be bound, otherwise dest is an offset */
+    if (glBindBufferPtr != NULL) {
+        glBindBufferPtr(GL_PIXEL_PACK_BUFFER, 0);
+    }
+
+    readPixels(x, y, w, h, components == 4 ? GL_RGBA : GL_RGB,
+            GL_UNSIGNED_BYTE, front, dest);
+
+    return JNI_TRUE;
+}
+
+JNIEXPORT jboolean JNICALL Java_eu_mihosoft_vtk_NativeReadback_readDepth(
+        JNIEnv* env, jclass cls, jint x, jint y, jint w, jint h,
+        jobject buffer) {
+    void* dest;
+    jlong capacity;
+
+    if (!hasCoreFunctions() || w <= 0 || h <= 0) {
+        return JNI_FALSE;
+    }
+
+    dest = (*env)->GetDirectBufferAddress(env, buffer);
+    capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+
+    /* capacity of a direct float buffer is measured in floats */
+    if (dest == NULL || capacity < (jlong) w * h) {
+        return JNI_FALSE;
+    }
+
+    if (glBindBufferPtr != NULL) {
+        glBindBufferPtr(GL_PIXEL_PACK_BUFFER, 0);
+    }
+
+    readPixels(x, y, w, h, GL_DEPTH_COMPONENT, GL_FLOAT, JNI_FALSE, dest);
+
+    return JNI_TRUE;
+}
+
+JNIEXPORT jlong JNICALL Java_eu_mihosoft_vtk_NativeReadback_pboCreate(
+        JNIEnv* env, jclass cls) {
+    PBOReader* reader;
+
+    if (!initFunctions()) {
+        return 0;
+    }
+
+    reader = (PBOReader*) calloc(1, sizeof (PBOReader));
+
+    if (reader == NULL) {
+        return 0;
+    }
+
+    glGenBuffersPtr(2, reader->pbo);
+
+    if (reader->pbo[0] == 0 || reader->pbo[1] == 0) {
+        free(reader);
+        return 0;
+    }
+
+    return (jlong) (size_t) reader;
+}
+
+JNIEXPORT void JNICALL Java_eu_mihosoft_vtk_NativeReadback_pboDelete(
+        JNIEnv* env, jclass cls, jlong handle) {
+    PBOReader* reader = (PBOReader*) (size_t) handle;
+
+    if (reader == NULL) {
+        return;
+    }
+
+    glDeleteBuffersPtr(2, reader->pbo);
+    free(reader);
+}
+
+JNIEXPORT void JNICALL Java_eu_mihosoft_vtk_NativeReadback_pboReset(
+        JNIEnv* env, jclass cls, jlong handle) {
+    PBOReader* reader = (PBOReader*) (size_t) handle;
+
+    if (reader == NULL) {
+        return;
+    }
+
+    reader->pending = 0;
+}
+
+JNIEXPORT jint JNICALL Java_eu_mihosoft_vtk_NativeReadback_pboPending(
+        JNIEnv* env, jclass cls, jlong handle) {
+    PBOReader* reader = (PBOReader*) (size_t) handle;
+
+    return reader == NULL ? 0 : reader->pending;
+}
+
+JNIEXPORT jboolean JNICALL Java_eu_mihosoft_vtk_NativeReadback_pboRead(
+        JNIEnv* env, jclass cls, jlong handle,
+        jint x, jint y, jint w, jint h, jint components, jboolean front) {
+    PBOReader* reader = (PBOReader*) (size_t) handle;
+    jint size = w * h * components;
+    int i;
+
+    if (reader == NULL || size <= 0) {
+        return JNI_FALSE;
+    }
+
+    /* both buffers are pending: we drop the oldest read */
+    if (reader->pending == 2) {
+        reader->pending = 1;
+    }
+
+    i = reader->next;
+
+    glBindBufferPtr(GL_PIXEL_PACK_BUFFER, reader->pbo[i]);
+
+    if (reader->capacity[i] != size) {
+        glBufferDataPtr(GL_PIXEL_PACK_BUFFER, size, NULL, GL_STREAM_READ);
+        reader->capacity[i] = size;
+    }
+
+    /* returns immediately, the transfer happens asynchronously */
+    readPixels(x, y, w, h, components == 4 ? GL_RGBA : GL_RGB,
+            GL_UNSIGNED_BYTE, front, (void*) 0);
+
+    glBindBufferPtr(GL_PIXEL_PACK_BUFFER, 0);
+
+    reader->size[i] = size;
+    reader->next = 1 - i;
+    reader->pending++;
+
+    return JNI_TRUE;
+}
+
+JNIEXPORT jboolean JNICALL Java_eu_mihosoft_vtk_NativeReadback_pboFetch(
+        JNIEnv* env, jclass cls, jlong handle, jbyteArray dest) {
+    PBOReader* reader = (PBOReader*) (size_t) handle;
+    void* data;
+    jint length;
+    int i;
+
+    if (reader == NULL || reader->pending == 0) {
+        return JNI_FALSE;
+    }
+
+    /* the oldest pending read */
+    i = reader->pending == 2 ? reader->next : 1 - reader->next;
+
+    length = (*env)->GetArrayLength(env, dest);
+
+    if (length < reader->size[i]) {
+        return JNI_FALSE;
+    }
+
+    glBindBufferPtr(GL_PIXEL_PACK_BUFFER, reader->pbo[i]);
+
+    /* blocks until the transfer of this buffer is complete */
+    data = glMapBufferPtr(GL_PIXEL_PACK_BUFFER, GL_READ_ONLY);
+
+    if (data != NULL) {
+        (*env)->SetByteArrayRegion(env, dest, 0, reader->size[i],
+                (const jbyte*) data);
+        glUnmapBufferPtr(GL_PIXEL_PACK_BUFFER);
+    }
+
+    glBindBufferPtr(GL_PIXEL_PACK_BUFFER, 0);
+
+    reader->pending--;
+
+    return data != NULL ? JNI_TRUE : JNI_FALSE;
+}
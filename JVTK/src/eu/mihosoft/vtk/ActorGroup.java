@@ -0,0 +1,274 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import vtk.vtkActor;
+import vtk.vtkActorCollection;
+import vtk.vtkProperty;
+
+/**
+ * Group of actors that share one {@link vtkProperty}. Representation, color
+ * and opacity changes are applied to the shared property, i.e., they cost a
+ * single native call regardless of the number of actors. Visibility is a
+ * per-actor state. Only actors whose visibility actually changes are
+ * modified. The visibility is read from the actors since it may also be
+ * changed by others (e.g., {@link BVHCuller}).
+ *
+ * <p>Adding an actor replaces its property by the shared property of this
+ * group. Removing it assigns a copy of the shared property.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class ActorGroup {
+
+    //
+    // property shared by all actors of this group
+    private final vtkProperty property;
+    //
+    // actors of this group
+    private final List<vtkActor> actors = new ArrayList<vtkActor>();
+
+    /**
+     * Constructor. Creates a new shared property.
+     */
+    public ActorGroup() {
+        this(new vtkProperty());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param property property to share
+     */
+    public ActorGroup(vtkProperty property) {
+        this.property = property;
+    }
+
+    /**
+     * Adds the specified actor to this group.
+     *
+     * @param a actor to add
+     */
+    public void add(vtkActor a) {
+        a.SetProperty(property);
+        actors.add(a);
+    }
+
+    /**
+     * Adds the specified actors to this group.
+     *
+     * @param actors actors to add
+     */
+    public void addAll(vtkActor... actors) {
+        for (vtkActor a : actors) {
+            add(a);
+        }
+    }
+
+    /**
+     * Removes the specified actor from this group. The actor gets a copy of
+     * the shared property.
+     *
+     * @param a actor to remove
+     * @return <code>true</code> if the actor has been removed;
+     * <code>false</code> if it is not part of this group
+     */
+    public boolean remove(vtkActor a) {
+        int i = actors.indexOf(a);
+
+        if (i < 0) {
+            return false;
+        }
+
+        actors.remove(i);
+
+        vtkProperty p = new vtkProperty();
+        p.DeepCopy(property);
+        a.SetProperty(p);
+
+        return true;
+    }
+
+    /**
+     * Returns the property shared by the actors of this group.
+     *
+     * @return the shared property
+     */
+    public vtkProperty getProperty() {
+        return property;
+    }
+
+    /**
+     * Returns the actors of this group.
+     *
+     * @return the actors of this group (unmodifiable)
+     */
+    public List<vtkActor> getActors() {
+        return Collections.unmodifiableList(actors);
+    }
+
+    /**
+     * Returns the number of actors in this group.
+     *
+     * @return the number of actors
+     */
+    public int size() {
+        return actors.size();
+    }
+
+    /**
+     * Defines the representation of all actors (see
+     * {@link vtkProperty#SetRepresentation(int) }).
+     *
+     * @param representation the representation to set
+     */
+    public void setRepresentation(int representation) {
+        property.SetRepresentation(representation);
+    }
+
+    /**
+     * Shows all actors as wireframe.
+     */
+    public void setRepresentationToWireframe() {
+        property.SetRepresentationToWireframe();
+    }
+
+    /**
+     * Shows all actors as surfaces.
+     */
+    public void setRepresentationToSurface() {
+        property.SetRepresentationToSurface();
+    }
+
+    /**
+     * Shows all actors as points.
+     */
+    public void setRepresentationToPoints() {
+        property.SetRepresentationToPoints();
+    }
+
+    /**
+     * Defines the color of all actors.
+     *
+     * @param r red component (<code>[0,1]</code>)
+     * @param g green component (<code>[0,1]</code>)
+     * @param b blue component (<code>[0,1]</code>)
+     */
+    public void setColor(double r, double g, double b) {
+        property.SetColor(r, g, b);
+    }
+
+    /**
+     * Defines the opacity of all actors.
+     *
+     * @param opacity opacity (<code>[0,1]</code>)
+     */
+    public void setOpacity(double opacity) {
+        property.SetOpacity(opacity);
+    }
+
+    /**
+     * Defines the visibility of all actors. Only actors whose visibility
+     * differs are modified.
+     *
+     * @param v defines whether the actors shall be visible
+     */
+    public void setVisible(boolean v) {
+        int visibility = v ? 1 : 0;
+
+        for (vtkActor a : actors) {
+            if (a.GetVisibility() != visibility) {
+                a.SetVisibility(visibility);
+            }
+        }
+    }
+
+    /**
+     * Defines the visibility of the specified actor.
+     *
+     * @param a actor
+     * @param v defines whether the actor shall be visible
+     */
+    public void setVisible(vtkActor a, boolean v) {
+        int i = actors.indexOf(a);
+
+        if (i < 0) {
+            throw new IllegalArgumentException(
+                    "Actor is not part of this group.");
+        }
+
+        int visibility = v ? 1 : 0;
+
+        if (a.GetVisibility() != visibility) {
+            a.SetVisibility(visibility);
+        }
+    }
+
+    /**
+     * Returns the number of visible actors.
+     *
+     * @return the number of visible actors
+     */
+    public int getNumberOfVisibleActors() {
+        int n = 0;
+
+        for (vtkActor a : actors) {
+            if (a.GetVisibility() != 0) {
+                n++;
+            }
+        }
+
+        return n;
+    }
+
+    /**
+     * Returns the distinct properties of the specified actors. Bulk changes
+     * can be applied to the returned properties with one native call per
+     * property instead of several calls per actor.
+     *
+     * @param ac actors
+     * @return the distinct properties of the specified actors
+     */
+    public static vtkProperty[] getProperties(vtkActorCollection ac) {
+        Set<vtkProperty> properties = Collections.newSetFromMap(
+                new IdentityHashMap<vtkProperty, Boolean>());
+
+        ac.InitTraversal();
+
+        for (int i = 0; i < ac.GetNumberOfItems(); i++) {
+            properties.add(ac.GetNextActor().GetProperty());
+        }
+
+        return properties.toArray(new vtkProperty[properties.size()]);
+    }
+}
@@ -0,0 +1,800 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import vtk.vtkActor;
+import vtk.vtkActorCollection;
+import vtk.vtkCamera;
+import vtk.vtkCuller;
+import vtk.vtkCullerCollection;
+import vtk.vtkMatrix4x4;
+import vtk.vtkRenderWindow;
+import vtk.vtkRenderer;
+
+/**
+ * Culls actors that are outside of the view frustum or smaller than a pixel
+ * threshold. Only the side planes of the frustum are tested since the near
+ * and far planes depend on the clipping range which vtk computes from the
+ * visible props. The bounds of the actors are stored in a bounding volume
+ * hierarchy (BVH) that consists of primitive arrays only. Culling is
+ * performed before each frame if the camera or the size of the renderer has
+ * changed. Visibility is toggled in one batch for actors whose state
+ * actually changed.
+ *
+ * <p>Installing the culler removes the default cullers of the renderer
+ * since they perform a linear pass over all props each frame. They are
+ * restored by {@link #uninstall() }. While installed, camera resets of the
+ * renderer are redone with the bounds of all enabled actors, i.e., culled
+ * actors do not affect the camera.</p>
+ *
+ * <p><b>Note:</b> the actors are assumed to be static. Call
+ * {@link #build(java.util.List) } again if actors are moved, added or
+ * removed. While the culler is installed the visibility of managed actors
+ * must be changed via {@link #setVisible(vtk.vtkActor, boolean) }.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class BVHCuller {
+
+    //
+    // maximum number of actors per leaf
+    private static final int LEAF_SIZE = 8;
+    private final vtkRenderer renderer;
+    //
+    // managed actors
+    private vtkActor[] actors = new vtkActor[0];
+    private final Map<vtkActor, Integer> indices =
+            new IdentityHashMap<vtkActor, Integer>();
+    //
+    // bounds of the actors (xmin, xmax, ymin, ymax, zmin, zmax)
+    private double[] bounds = new double[0];
+    //
+    // bounding sphere of the actors
+    private double[] centers = new double[0];
+    private double[] radii = new double[0];
+    //
+    // visibility requested by the application
+    private boolean[] enabled = new boolean[0];
+    //
+    // current visibility
+    private boolean[] visible = new boolean[0];
+    //
+    // bvh nodes (children are -1 for leaves)
+    private int numberOfNodes;
+    private double[] nodeBounds = new double[0];
+    private double[] nodeMaxRadius = new double[0];
+    private int[] nodeLeft = new int[0];
+    private int[] nodeRight = new int[0];
+    private int[] nodeStart = new int[0];
+    private int[] nodeCount = new int[0];
+    //
+    // actor indices ordered by leaf
+    private int[] order = new int[0];
+    //
+    // frustum planes (a, b, c, d per plane, inside if ax + by + cz + d >= 0)
+    private final double[] planes = new double[24];
+    //
+    // visibility computed by the last pass
+    private boolean[] result = new boolean[0];
+    //
+    // minimum projected diameter (in pixels)
+    private double pixelThreshold = 1.0;
+    //
+    // state of the last pass (used to skip unchanged frames)
+    private int lastCameraMTime = -1;
+    private int lastWidth = -1;
+    private int lastHeight = -1;
+    private boolean dirty = true;
+    //
+    // statistics of the last pass
+    private int frustumCulled;
+    private int smallCulled;
+    private int numberOfVisible;
+    private int numberOfPasses;
+    //
+    // observer tag (-1 if not installed)
+    private int observer = -1;
+    private int resetObserver = -1;
+    private int clippingObserver = -1;
+    //
+    // indicates whether the camera is being reset by this culler
+    private boolean resetting;
+    //
+    // default cullers of the renderer (removed while installed)
+    private final List<vtkCuller> defaultCullers = new ArrayList<vtkCuller>();
+
+    /**
+     * Constructor.
+     *
+     * @param renderer renderer
+     */
+    public BVHCuller(vtkRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Builds the hierarchy of all visible actors of the renderer.
+     */
+    public synchronized void build() {
+        List<vtkActor> list = new ArrayList<vtkActor>();
+
+        vtkActorCollection ac = renderer.GetActors();
+        ac.InitTraversal();
+
+        for (int i = 0; i < ac.GetNumberOfItems(); i++) {
+            vtkActor a = ac.GetNextActor();
+            if (a.GetVisibility() != 0 || indices.containsKey(a)) {
+                list.add(a);
+            }
+        }
+
+        build(list);
+    }
+
+    /**
+     * Builds the hierarchy of the specified actors. Actors that have been
+     * culled by a previous hierarchy are made visible again.
+     *
+     * @param actors actors to manage
+     */
+    public synchronized void build(List<vtkActor> actors) {
+
+        // previously managed actors are visible unless disabled
+        Map<vtkActor, Boolean> previous = new IdentityHashMap<vtkActor, Boolean>();
+
+        for (int i = 0; i < this.actors.length; i++) {
+            previous.put(this.actors[i], enabled[i]);
+            if (enabled[i] && !visible[i]) {
+                this.actors[i].SetVisibility(1);
+            }
+        }
+
+        int n = actors.size();
+
+        this.actors = actors.toArray(new vtkActor[n]);
+        indices.clear();
+
+        bounds = new double[6 * n];
+        centers = new double[3 * n];
+        radii = new double[n];
+        enabled = new boolean[n];
+        visible = new boolean[n];
+        result = new boolean[n];
+        order = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            vtkActor a = this.actors[i];
+
+            indices.put(a, i);
+
+            double[] b = a.GetBounds();
+            System.arraycopy(b, 0, bounds, 6 * i, 6);
+
+            double dx = b[1] - b[0];
+            double dy = b[3] - b[2];
+            double dz = b[5] - b[4];
+
+            centers[3 * i] = (b[0] + b[1]) / 2;
+            centers[3 * i + 1] = (b[2] + b[3]) / 2;
+            centers[3 * i + 2] = (b[4] + b[5]) / 2;
+            radii[i] = Math.sqrt(dx * dx + dy * dy + dz * dz) / 2;
+
+            Boolean e = previous.get(a);
+            enabled[i] = e != null ? e : a.GetVisibility() != 0;
+            visible[i] = a.GetVisibility() != 0;
+
+            order[i] = i;
+        }
+
+        // a binary tree with leaves of at least one actor has less than
+        // 2n nodes
+        int capacity = Math.max(1, 2 * n);
+
+        nodeBounds = new double[6 * capacity];
+        nodeMaxRadius = new double[capacity];
+        nodeLeft = new int[capacity];
+        nodeRight = new int[capacity];
+        nodeStart = new int[capacity];
+        nodeCount = new int[capacity];
+        numberOfNodes = 0;
+
+        if (n > 0) {
+            buildNode(0, n);
+        }
+
+        dirty = true;
+    }
+
+    /**
+     * Builds the subtree of the specified range of <code>order</code>.
+     *
+     * @param start first index
+     * @param count number of actors
+     * @return node index
+     */
+    private int buildNode(int start, int count) {
+        int node = numberOfNodes++;
+
+        nodeStart[node] = start;
+        nodeCount[node] = count;
+        nodeLeft[node] = -1;
+        nodeRight[node] = -1;
+
+        // bounds of the node
+        int nb = 6 * node;
+        nodeBounds[nb] = nodeBounds[nb + 2] = nodeBounds[nb + 4] =
+                Double.POSITIVE_INFINITY;
+        nodeBounds[nb + 1] = nodeBounds[nb + 3] = nodeBounds[nb + 5] =
+                Double.NEGATIVE_INFINITY;
+        nodeMaxRadius[node] = 0;
+
+        for (int k = start; k < start + count; k++) {
+            int i = order[k];
+            for (int d = 0; d < 3; d++) {
+                nodeBounds[nb + 2 * d] = Math.min(
+                        nodeBounds[nb + 2 * d], bounds[6 * i + 2 * d]);
+                nodeBounds[nb + 2 * d + 1] = Math.max(
+                        nodeBounds[nb + 2 * d + 1], bounds[6 * i + 2 * d + 1]);
+            }
+            nodeMaxRadius[node] = Math.max(nodeMaxRadius[node], radii[i]);
+        }
+
+        if (count <= LEAF_SIZE) {
+            return node;
+        }
+
+        // split at the median of the longest axis
+        int axis = 0;
+        double extent = -1;
+
+        for (int d = 0; d < 3; d++) {
+            double e = nodeBounds[nb + 2 * d + 1] - nodeBounds[nb + 2 * d];
+            if (e > extent) {
+                extent = e;
+                axis = d;
+            }
+        }
+
+        int half = count / 2;
+        select(start, start + count - 1, start + half, axis);
+
+        int left = buildNode(start, half);
+        int right = buildNode(start + half, count - half);
+
+        nodeLeft[node] = left;
+        nodeRight[node] = right;
+
+        return node;
+    }
+
+    /**
+     * Partially sorts the specified range of <code>order</code> by the
+     * center coordinate along the specified axis such that the element at
+     * index <code>k</code> is at its sorted position (quickselect).
+     */
+    private void select(int lo, int hi, int k, int axis) {
+        while (hi > lo) {
+            double pivot = centers[3 * order[(lo + hi) >>> 1] + axis];
+
+            int i = lo;
+            int j = hi;
+
+            while (i <= j) {
+                while (centers[3 * order[i] + axis] < pivot) {
+                    i++;
+                }
+                while (centers[3 * order[j] + axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Installs this culler, i.e., culling is performed before each frame.
+     */
+    public synchronized void install() {
+        if (observer >= 0) {
+            return;
+        }
+
+        vtkCullerCollection cullers = renderer.GetCullers();
+        cullers.InitTraversal();
+
+        for (int i = 0; i < cullers.GetNumberOfItems(); i++) {
+            defaultCullers.add(cullers.GetNextItem());
+        }
+
+        cullers.RemoveAllItems();
+
+        observer = renderer.AddObserver("StartEvent", this, "cull");
+        resetObserver = renderer.AddObserver(
+                "ResetCameraEvent", this, "resetCamera");
+        clippingObserver = renderer.AddObserver(
+                "ResetCameraClippingRangeEvent", this,
+                "resetCameraClippingRange");
+        dirty = true;
+    }
+
+    /**
+     * Uninstalls this culler. Culled actors are made visible again and the
+     * default cullers are restored.
+     */
+    public synchronized void uninstall() {
+        if (observer < 0) {
+            return;
+        }
+
+        renderer.RemoveObserver(observer);
+        renderer.RemoveObserver(resetObserver);
+        renderer.RemoveObserver(clippingObserver);
+        observer = -1;
+        resetObserver = -1;
+        clippingObserver = -1;
+
+        for (vtkCuller c : defaultCullers) {
+            renderer.AddCuller(c);
+        }
+        defaultCullers.clear();
+
+        for (int i = 0; i < actors.length; i++) {
+            if (enabled[i] && !visible[i]) {
+                actors[i].SetVisibility(1);
+                visible[i] = true;
+            }
+        }
+    }
+
+    /**
+     * Indicates whether this culler is installed.
+     *
+     * @return <code>true</code> if this culler is installed;
+     * <code>false</code> otherwise
+     */
+    public synchronized boolean isInstalled() {
+        return observer >= 0;
+    }
+
+    /**
+     * Resets the camera of the renderer to the bounds of all visible props
+     * including the culled actors. This method is called after the renderer
+     * has reset its camera if this culler is installed.
+     */
+    public synchronized void resetCamera() {
+        if (resetting) {
+            return;
+        }
+
+        double[] b = computeBounds();
+
+        // nothing to show
+        if (b[0] > b[1]) {
+            return;
+        }
+
+        resetting = true;
+        try {
+            renderer.ResetCamera(b);
+        } finally {
+            resetting = false;
+        }
+    }
+
+    /**
+     * Resets the clipping range of the renderer to the bounds of all visible
+     * props including the culled actors. This method is called after the
+     * renderer has reset its clipping range if this culler is installed.
+     */
+    public synchronized void resetCameraClippingRange() {
+        if (resetting) {
+            return;
+        }
+
+        double[] b = computeBounds();
+
+        // nothing to show
+        if (b[0] > b[1]) {
+            return;
+        }
+
+        resetting = true;
+        try {
+            renderer.ResetCameraClippingRange(b);
+        } finally {
+            resetting = false;
+        }
+    }
+
+    /**
+     * Returns the bounds of the visible props of the renderer and of all
+     * enabled actors (culled or not).
+     *
+     * @return the bounds (xmin, xmax, ymin, ymax, zmin, zmax), uninitialized
+     * bounds have <code>xmin &gt; xmax</code>
+     */
+    private double[] computeBounds() {
+        double[] b = renderer.ComputeVisiblePropBounds();
+
+        for (int i = 0; i < actors.length; i++) {
+            if (!enabled[i]) {
+                continue;
+            }
+
+            for (int axis = 0; axis < 3; axis++) {
+                b[2 * axis] = Math.min(b[2 * axis], bounds[6 * i + 2 * axis]);
+                b[2 * axis + 1] = Math.max(b[2 * axis + 1],
+                        bounds[6 * i + 2 * axis + 1]);
+            }
+        }
+
+        return b;
+    }
+
+    /**
+     * Culls the managed actors if the camera or the size of the renderer has
+     * changed. This method is called before each frame.
+     */
+    public synchronized void cull() {
+        vtkCamera cam = renderer.GetActiveCamera();
+        vtkRenderWindow rw = renderer.GetRenderWindow();
+
+        int[] size = rw.GetSize();
+        double[] vp = renderer.GetViewport();
+
+        int width = (int) Math.round(size[0] * (vp[2] - vp[0]));
+        int height = (int) Math.round(size[1] * (vp[3] - vp[1]));
+
+        int mTime = cam.GetMTime();
+
+        if (!dirty && mTime == lastCameraMTime
+                && width == lastWidth && height == lastHeight) {
+            return;
+        }
+
+        lastCameraMTime = mTime;
+        lastWidth = width;
+        lastHeight = height;
+        dirty = false;
+
+        computePlanes(cam, renderer.GetTiledAspectRatio());
+
+        // projected diameter = 2 * r * scale / distance (perspective) or
+        // 2 * r * scale (parallel)
+        boolean parallel = cam.GetParallelProjection() != 0;
+        double scale;
+
+        if (parallel) {
+            scale = height / 2.0 / cam.GetParallelScale();
+        } else {
+            scale = height / 2.0
+                    / Math.tan(Math.toRadians(cam.GetViewAngle()) / 2);
+        }
+
+        double[] eye = cam.GetPosition();
+        double[] dir = cam.GetDirectionOfProjection();
+
+        frustumCulled = 0;
+        smallCulled = 0;
+
+        if (numberOfNodes > 0) {
+            cullNode(0, false, eye, dir, scale, parallel);
+        }
+
+        // apply in one batch
+        numberOfVisible = 0;
+
+        for (int i = 0; i < actors.length; i++) {
+            boolean v = enabled[i] && result[i];
+
+            if (v != visible[i]) {
+                actors[i].SetVisibility(v ? 1 : 0);
+                visible[i] = v;
+            }
+
+            if (v) {
+                numberOfVisible++;
+            }
+        }
+
+        numberOfPasses++;
+    }
+
+    /**
+     * Culls the specified subtree.
+     *
+     * @param node node index
+     * @param inside defines whether the node is known to be inside of the
+     * frustum
+     */
+    private void cullNode(int node, boolean inside, double[] eye,
+            double[] dir, double scale, boolean parallel) {
+
+        int nb = 6 * node;
+
+        if (!inside) {
+            int state = classify(nodeBounds, nb);
+
+            if (state < 0) {
+                markNode(node, false);
+                frustumCulled += nodeCount[node];
+                return;
+            }
+
+            inside = state > 0;
+        }
+
+        // all actors of this node are too small
+        if (pixelThreshold > 0) {
+            double minDistance = 1;
+
+            if (!parallel) {
+                double cx = (nodeBounds[nb] + nodeBounds[nb + 1]) / 2;
+                double cy = (nodeBounds[nb + 2] + nodeBounds[nb + 3]) / 2;
+                double cz = (nodeBounds[nb + 4] + nodeBounds[nb + 5]) / 2;
+                double dx = nodeBounds[nb + 1] - nodeBounds[nb];
+                double dy = nodeBounds[nb + 3] - nodeBounds[nb + 2];
+                double dz = nodeBounds[nb + 5] - nodeBounds[nb + 4];
+                double r = Math.sqrt(dx * dx + dy * dy + dz * dz) / 2;
+
+                minDistance = (cx - eye[0]) * dir[0] + (cy - eye[1]) * dir[1]
+                        + (cz - eye[2]) * dir[2] - r;
+            }
+
+            if (minDistance > 0 && 2 * nodeMaxRadius[node] * scale
+                    / minDistance < pixelThreshold) {
+                markNode(node, false);
+                smallCulled += nodeCount[node];
+                return;
+            }
+        }
+
+        if (nodeLeft[node] >= 0) {
+            cullNode(nodeLeft[node], inside, eye, dir, scale, parallel);
+            cullNode(nodeRight[node], inside, eye, dir, scale, parallel);
+            return;
+        }
+
+        // leaf
+        int end = nodeStart[node] + nodeCount[node];
+
+        for (int k = nodeStart[node]; k < end; k++) {
+            int i = order[k];
+
+            if (!inside && classify(bounds, 6 * i) < 0) {
+                result[i] = false;
+                frustumCulled++;
+                continue;
+            }
+
+            if (pixelThreshold > 0) {
+                double distance = 1;
+
+                if (!parallel) {
+                    distance = (centers[3 * i] - eye[0]) * dir[0]
+                            + (centers[3 * i + 1] - eye[1]) * dir[1]
+                            + (centers[3 * i + 2] - eye[2]) * dir[2];
+                }
+
+                if (distance > 0
+                        && 2 * radii[i] * scale / distance < pixelThreshold) {
+                    result[i] = false;
+                    smallCulled++;
+                    continue;
+                }
+            }
+
+            result[i] = true;
+        }
+    }
+
+    /**
+     * Defines the visibility of all actors of the specified subtree.
+     */
+    private void markNode(int node, boolean v) {
+        int end = nodeStart[node] + nodeCount[node];
+
+        for (int k = nodeStart[node]; k < end; k++) {
+            result[order[k]] = v;
+        }
+    }
+
+    /**
+     * Classifies the specified box against the frustum.
+     *
+     * @param b array that contains the box
+     * @param offset offset of the box
+     * @return <code>-1</code> if the box is outside, <code>1</code> if it
+     * is inside and <code>0</code> if it intersects the frustum
+     */
+    private int classify(double[] b, int offset) {
+        boolean inside = true;
+
+        // near and far planes are not tested (see class description)
+        for (int p = 0; p < 16; p += 4) {
+            double a = planes[p];
+            double bb = planes[p + 1];
+            double c = planes[p + 2];
+            double d = planes[p + 3];
+
+            // corner that is farthest along the plane normal
+            double px = a >= 0 ? b[offset + 1] : b[offset];
+            double py = bb >= 0 ? b[offset + 3] : b[offset + 2];
+            double pz = c >= 0 ? b[offset + 5] : b[offset + 4];
+
+            if (a * px + bb * py + c * pz + d < 0) {
+                return -1;
+            }
+
+            // opposite corner
+            double nx = a >= 0 ? b[offset] : b[offset + 1];
+            double ny = bb >= 0 ? b[offset + 2] : b[offset + 3];
+            double nz = c >= 0 ? b[offset + 4] : b[offset + 5];
+
+            if (a * nx + bb * ny + c * nz + d < 0) {
+                inside = false;
+            }
+        }
+
+        return inside ? 1 : 0;
+    }
+
+    /**
+     * Computes the frustum planes from the composite projection matrix.
+     */
+    private void computePlanes(vtkCamera cam, double aspect) {
+        vtkMatrix4x4 m =
+                cam.GetCompositeProjectionTransformMatrix(aspect, -1, 1);
+
+        double[] r = new double[16];
+
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                r[4 * i + j] = m.GetElement(i, j);
+            }
+        }
+
+        // left, right, bottom, top, near, far
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 4; j++) {
+                planes[8 * i + j] = r[12 + j] + r[4 * i + j];
+                planes[8 * i + 4 + j] = r[12 + j] - r[4 * i + j];
+            }
+        }
+    }
+
+    /**
+     * Defines the visibility of a managed actor.
+     *
+     * @param a actor
+     * @param v defines whether the actor shall be visible
+     */
+    public synchronized void setVisible(vtkActor a, boolean v) {
+        Integer i = indices.get(a);
+
+        if (i == null) {
+            a.SetVisibility(v ? 1 : 0);
+            return;
+        }
+
+        enabled[i] = v;
+
+        if (!v && visible[i]) {
+            a.SetVisibility(0);
+            visible[i] = false;
+        }
+
+        dirty = true;
+    }
+
+    /**
+     * Defines the minimum projected diameter of actors (in pixels, default is
+     * <code>1</code>). Smaller actors are culled. A value of <code>0</code>
+     * disables small feature culling.
+     *
+     * @param threshold the threshold to set
+     */
+    public synchronized void setPixelThreshold(double threshold) {
+        this.pixelThreshold = threshold;
+        dirty = true;
+    }
+
+    /**
+     * Returns the minimum projected diameter of actors (in pixels).
+     *
+     * @return the pixel threshold
+     */
+    public synchronized double getPixelThreshold() {
+        return pixelThreshold;
+    }
+
+    /**
+     * Returns the number of actors that have been culled by the last pass
+     * because they are outside of the view frustum.
+     *
+     * @return the number of frustum culled actors
+     */
+    public synchronized int getFrustumCulledCount() {
+        return frustumCulled;
+    }
+
+    /**
+     * Returns the number of actors that have been culled by the last pass
+     * because they are smaller than the pixel threshold.
+     *
+     * @return the number of small feature culled actors
+     */
+    public synchronized int getSmallFeatureCulledCount() {
+        return smallCulled;
+    }
+
+    /**
+     * Returns the number of visible managed actors after the last pass.
+     *
+     * @return the number of visible managed actors
+     */
+    public synchronized int getVisibleCount() {
+        return numberOfVisible;
+    }
+
+    /**
+     * Returns the number of culling passes (frames with camera changes).
+     *
+     * @return the number of culling passes
+     */
+    public synchronized int getNumberOfPasses() {
+        return numberOfPasses;
+    }
+
+    /**
+     * Returns the number of managed actors.
+     *
+     * @return the number of managed actors
+     */
+    public synchronized int getNumberOfActors() {
+        return actors.length;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import vtk.vtkPolyData;
+import vtk.vtkPolyDataAlgorithm;
+import vtk.vtkPolyDataMapper;
+import vtk.vtkRenderer;
+
+/**
+ * Executes vtk pipeline updates in the background. Mappers that are managed
+ * by this class are detached from the pipeline, i.e., they render a static
+ * copy of the pipeline output. Rendering does therefore not trigger pipeline
+ * execution on the event dispatch thread. When a background update has
+ * finished, its output is swapped into the mapper as one scene transaction
+ * (see {@link VTKJPanel#update(eu.mihosoft.vtk.SceneTransaction) }).
+ *
+ * <p>Updates are executed one after another by a dedicated thread since
+ * pipelines often share upstream algorithms that must not execute
+ * concurrently. If a new update is submitted for a mapper, a pending update
+ * of this mapper is cancelled.</p>
+ *
+ * <p>Example:</p>
+ * <pre>
+ * contour.GenerateValues(10, 0, 1);
+ * PipelineUpdate u = pipeline.submit(contour, isoMapper);
+ * </pre>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class BackgroundPipeline {
+
+    private final VTKJPanel panel;
+    private final ExecutorService executor;
+    //
+    // latest update of each managed (i.e. detached) mapper
+    private final Map<vtkPolyDataMapper, PipelineUpdate> latest =
+            new IdentityHashMap<vtkPolyDataMapper, PipelineUpdate>();
+    //
+    // persistent cache for outputs (optional)
+    private volatile PipelineCache cache;
+
+    /**
+     * Constructor.
+     *
+     * @param panel panel that renders the mappers
+     */
+    public BackgroundPipeline(VTKJPanel panel) {
+        this.panel = panel;
+        this.executor = Executors.newSingleThreadExecutor(
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "jvtk-pipeline");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    /**
+     * Updates the specified algorithm in the background and swaps its output
+     * into the specified mapper. The mapper is detached from the pipeline.
+     * Until the update has finished it renders its previous input (or
+     * nothing if the mapper had no static input).
+     *
+     * <p><b>Note:</b> the parameters of the algorithm and of its upstream
+     * algorithms must not be modified while the update is running (see
+     * {@link #submit(vtk.vtkPolyDataAlgorithm, vtk.vtkPolyDataMapper, java.lang.Runnable) }).</p>
+     *
+     * @param algorithm algorithm to update
+     * @param mapper mapper that shall render the output
+     * @return future of the update
+     */
+    public PipelineUpdate submit(vtkPolyDataAlgorithm algorithm,
+            vtkPolyDataMapper mapper) {
+        return submit(algorithm, mapper, null);
+    }
+
+    /**
+     * Updates the specified algorithm in the background and swaps its output
+     * into the specified mapper. The specified parameter changes are
+     * executed by the update thread right before the update. This is the
+     * safe way to change parameters of algorithms that may currently be
+     * updated. Parameter changes of updates that are cancelled before they
+     * have been started are not applied. Thus, they should set absolute
+     * values.
+     *
+     * @param algorithm algorithm to update
+     * @param mapper mapper that shall render the output
+     * @param parameters changes the parameters of the pipeline (may be
+     * <code>null</code>)
+     * @return future of the update
+     */
+    public PipelineUpdate submit(vtkPolyDataAlgorithm algorithm,
+            vtkPolyDataMapper mapper, Runnable parameters) {
+
+        synchronized (latest) {
+            PipelineUpdate previous = latest.get(mapper);
+
+            if (previous != null) {
+                previous.cancel(false);
+            } else {
+                detach(mapper);
+            }
+
+            PipelineUpdate update = new PipelineUpdate(
+                    this, algorithm, mapper, parameters);
+            latest.put(mapper, update);
+
+            executor.execute(update);
+
+            return update;
+        }
+    }
+
+    /**
+     * Detaches the specified mapper from its pipeline.
+     *
+     * @param mapper mapper to detach
+     */
+    private void detach(final vtkPolyDataMapper mapper) {
+        panel.update(new SceneTransaction() {
+            @Override
+            public void run(vtkRenderer renderer) {
+                vtkPolyData current = mapper.GetInput();
+                vtkPolyData copy = new vtkPolyData();
+
+                // the current output (if any) stays visible until the
+                // update has finished. no pipeline execution is triggered
+                if (current != null) {
+                    copy.ShallowCopy(current);
+                }
+
+                mapper.SetInput(copy);
+            }
+        });
+    }
+
+    /**
+     * Swaps the output of the specified update into the mapper if the update
+     * is still the latest update of the mapper.
+     *
+     * @param update update
+     * @param mapper mapper
+     * @param swap transaction that performs the swap
+     */
+    void swap(PipelineUpdate update, vtkPolyDataMapper mapper,
+            SceneTransaction swap) {
+        synchronized (latest) {
+            if (latest.get(mapper) != update || update.isCancelled()) {
+                return;
+            }
+        }
+
+        panel.update(swap);
+    }
+
+    /**
+     * Defines the cache for outputs. If an output is cached, the algorithm
+     * is not executed. Outputs of executed algorithms are stored in the
+     * cache.
+     *
+     * @param cache cache (may be <code>null</code>)
+     */
+    public void setCache(PipelineCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the cache for outputs.
+     *
+     * @return the cache for outputs or <code>null</code> if no cache has
+     * been defined
+     */
+    public PipelineCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Cancels all pending updates and stops the update thread.
+     */
+    public void dispose() {
+        synchronized (latest) {
+            for (PipelineUpdate u : latest.values()) {
+                u.cancel(false);
+            }
+            latest.clear();
+        }
+
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,676 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import vtk.vtkCamera;
+import vtk.vtkDataArray;
+import vtk.vtkFloatArray;
+import vtk.vtkImageData;
+import vtk.vtkRenderer;
+import vtk.vtkShortArray;
+import vtk.vtkUnsignedCharArray;
+import vtk.vtkUnsignedShortArray;
+
+/**
+ * Volume that is stored as bricks in a memory mapped file (see
+ * {@link BrickedVolumeWriter} for the file format). Bricks are loaded on
+ * demand as separate <code>vtkImageData</code> objects. Loaded bricks are
+ * kept in a cache whose size is bounded (see {@link #setCacheSize(long) }).
+ * The least recently used bricks are evicted first. Thus, volumes that are
+ * larger than the main memory can be explored by loading only the bricks
+ * that intersect the view or a region of interest (see
+ * {@link #getVisibleBricks(vtk.vtkRenderer, double[]) }).
+ *
+ * <p>Neighbouring bricks share one layer of points. Thus, interpolation is
+ * continuous across brick boundaries.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class BrickedVolume {
+
+    static final byte[] MAGIC = {'J', 'V', 'T', 'K', 'B', 'R', 'I', 'K'};
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 128;
+    //
+    // supported scalar types (vtk type ids)
+    static final int VTK_UNSIGNED_CHAR = 3;
+    static final int VTK_SHORT = 4;
+    static final int VTK_UNSIGNED_SHORT = 5;
+    static final int VTK_FLOAT = 10;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int scalarType;
+    private final int[] dimensions = new int[3];
+    private final int brickSize;
+    private final double[] origin = new double[3];
+    private final double[] spacing = new double[3];
+    //
+    // number of bricks per axis
+    private final int[] numberOfBricks = new int[3];
+    //
+    // size of a brick in the file (in bytes)
+    private final long brickBytes;
+    //
+    // loaded bricks (brick index -> image), least recently used first
+    private final Map<Integer, vtkImageData> cache =
+            new LinkedHashMap<Integer, vtkImageData>(16, 0.75f, true);
+    //
+    // maximum size of the cache (in bytes)
+    private long cacheSize = 1024L * 1024 * 1024;
+    //
+    // pinned bricks (brick index -> additional memory, e.g. of mappers)
+    private final Map<Integer, Long> pinned = new HashMap<Integer, Long>();
+    //
+    // current size of the cache (in bytes), includes the additional memory
+    // of pinned bricks
+    private long cacheUsage;
+    private int numberOfLoadedBricks;
+
+    /**
+     * Constructor. Opens the specified brick file.
+     *
+     * @param f file to open
+     * @throws IOException if the file cannot be read or has an unsupported
+     * format
+     */
+    public BrickedVolume(File f) throws IOException {
+        this.file = new RandomAccessFile(f, "r");
+        this.channel = file.getChannel();
+
+        try {
+            if (file.length() < HEADER_SIZE) {
+                throw new IOException("Not a brick file: " + f);
+            }
+
+            ByteBuffer header = map(0, HEADER_SIZE);
+
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+
+            if (!Arrays.equals(magic, MAGIC)
+                    || header.getInt() != VERSION) {
+                throw new IOException("Unsupported file format: " + f);
+            }
+
+            scalarType = header.getInt();
+
+            for (int i = 0; i < 3; i++) {
+                dimensions[i] = header.getInt();
+            }
+
+            brickSize = header.getInt();
+
+            for (int i = 0; i < 3; i++) {
+                origin[i] = header.getDouble();
+            }
+
+            for (int i = 0; i < 3; i++) {
+                spacing[i] = header.getDouble();
+            }
+
+            if (brickSize < 1 || getElementSize(scalarType) < 0) {
+                throw new IOException("Corrupt header: " + f);
+            }
+
+            for (int i = 0; i < 3; i++) {
+                numberOfBricks[i] =
+                        getNumberOfBricks(dimensions[i], brickSize);
+            }
+
+            brickBytes = getBrickBytes(brickSize, scalarType);
+
+            if (HEADER_SIZE + brickBytes * numberOfBricks[0]
+                    * numberOfBricks[1] * numberOfBricks[2] > file.length()) {
+                throw new IOException("Truncated brick file: " + f);
+            }
+        } catch (IOException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the number of bytes per scalar.
+     *
+     * @param scalarType vtk scalar type
+     * @return number of bytes per scalar or <code>-1</code> if the type is
+     * not supported
+     */
+    static int getElementSize(int scalarType) {
+        switch (scalarType) {
+            case VTK_UNSIGNED_CHAR:
+                return 1;
+            case VTK_SHORT:
+            case VTK_UNSIGNED_SHORT:
+                return 2;
+            case VTK_FLOAT:
+                return 4;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the number of bricks along an axis.
+     *
+     * @param dimension number of points along the axis
+     * @param brickSize number of cells per brick along the axis
+     * @return number of bricks
+     */
+    static int getNumberOfBricks(int dimension, int brickSize) {
+        return Math.max(1, (dimension - 1 + brickSize - 1) / brickSize);
+    }
+
+    /**
+     * Returns the size of a brick in the file (the bricks at the volume
+     * boundary are padded).
+     *
+     * @param brickSize number of cells per brick along each axis
+     * @param scalarType vtk scalar type
+     * @return size of a brick (in bytes)
+     */
+    static long getBrickBytes(int brickSize, int scalarType) {
+        long n = brickSize + 1;
+        return n * n * n * getElementSize(scalarType);
+    }
+
+    /**
+     * Maps the specified region of the file (little endian).
+     */
+    private MappedByteBuffer map(long offset, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(
+                FileChannel.MapMode.READ_ONLY, offset, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Returns the number of points of the specified brick along the
+     * specified axis.
+     */
+    private int getBrickDimension(int b, int axis) {
+        return Math.min(brickSize, dimensions[axis] - 1 - b * brickSize) + 1;
+    }
+
+    /**
+     * Returns the specified brick. The brick is loaded if it is not cached.
+     * The brick is released when it is evicted from the cache. Thus, it must
+     * not be used afterwards (other vtk objects, e.g. mappers, may keep a
+     * reference to it). Bricks that are in use must be pinned (see
+     * {@link #pinBrick(int, long) }).
+     *
+     * @param bx x index of the brick
+     * @param by y index of the brick
+     * @param bz z index of the brick
+     * @return the brick
+     * @throws IOException if the brick cannot be read
+     */
+    public synchronized vtkImageData getBrick(int bx, int by, int bz)
+            throws IOException {
+
+        int index = getBrickIndex(bx, by, bz);
+
+        vtkImageData brick = cache.get(index);
+
+        if (brick != null) {
+            return brick;
+        }
+
+        int nx = getBrickDimension(bx, 0);
+        int ny = getBrickDimension(by, 1);
+        int nz = getBrickDimension(bz, 2);
+        int n = nx * ny * nz;
+
+        ByteBuffer in = map(HEADER_SIZE + index * brickBytes,
+                (long) n * getElementSize(scalarType));
+
+        vtkDataArray scalars;
+
+        switch (scalarType) {
+            case VTK_UNSIGNED_CHAR: {
+                byte[] values = new byte[n];
+                in.get(values);
+                vtkUnsignedCharArray a = new vtkUnsignedCharArray();
+                a.SetJavaArray(values);
+                scalars = a;
+                break;
+            }
+            case VTK_SHORT: {
+                short[] values = new short[n];
+                in.asShortBuffer().get(values);
+                vtkShortArray a = new vtkShortArray();
+                a.SetJavaArray(values);
+                scalars = a;
+                break;
+            }
+            case VTK_UNSIGNED_SHORT: {
+                short[] values = new short[n];
+                in.asShortBuffer().get(values);
+                vtkUnsignedShortArray a = new vtkUnsignedShortArray();
+                a.SetJavaArray(values);
+                scalars = a;
+                break;
+            }
+            default: {
+                float[] values = new float[n];
+                in.asFloatBuffer().get(values);
+                vtkFloatArray a = new vtkFloatArray();
+                a.SetJavaArray(values);
+                scalars = a;
+            }
+        }
+
+        scalars.SetName("Scalars");
+
+        double[] bounds = getBrickBounds(bx, by, bz);
+
+        brick = new vtkImageData();
+        brick.SetDimensions(nx, ny, nz);
+        brick.SetWholeExtent(brick.GetExtent());
+        brick.SetOrigin(bounds[0], bounds[2], bounds[4]);
+        brick.SetSpacing(spacing);
+        brick.SetScalarType(scalarType);
+        brick.SetNumberOfScalarComponents(1);
+        brick.GetPointData().SetScalars(scalars);
+
+        // the point data keeps the scalars alive
+        scalars.Delete();
+
+        cache.put(index, brick);
+        cacheUsage += (long) n * getElementSize(scalarType);
+        numberOfLoadedBricks++;
+
+        evict();
+
+        return brick;
+    }
+
+    /**
+     * Returns the index of the specified brick.
+     *
+     * @param bx x index of the brick
+     * @param by y index of the brick
+     * @param bz z index of the brick
+     * @return the brick index
+     */
+    public int getBrickIndex(int bx, int by, int bz) {
+        return bx + numberOfBricks[0] * (by + numberOfBricks[1] * bz);
+    }
+
+    /**
+     * Pins the specified brick, i.e., it is not evicted from the cache until
+     * it is unpinned. Additional memory that is used for the brick (e.g. by
+     * a mapper) counts towards the cache size until the brick is unpinned.
+     *
+     * @param index brick index (see {@link #getBrickIndex(int, int, int) })
+     * @param additionalBytes additional memory used for the brick (in bytes)
+     * @throws IllegalStateException if the brick is not loaded
+     */
+    public synchronized void pinBrick(int index, long additionalBytes) {
+        if (!cache.containsKey(index)) {
+            throw new IllegalStateException("Brick not loaded: " + index);
+        }
+
+        Long old = pinned.put(index, additionalBytes);
+
+        cacheUsage += additionalBytes - (old == null ? 0 : old);
+
+        evict();
+    }
+
+    /**
+     * Unpins the specified brick (see {@link #pinBrick(int, long) }).
+     *
+     * @param index brick index (see {@link #getBrickIndex(int, int, int) })
+     */
+    public synchronized void unpinBrick(int index) {
+        Long additionalBytes = pinned.remove(index);
+
+        if (additionalBytes != null) {
+            cacheUsage -= additionalBytes;
+            evict();
+        }
+    }
+
+    /**
+     * Evicts least recently used bricks until the cache does not exceed its
+     * maximum size. Pinned bricks and the most recently used brick are never
+     * evicted. Evicted bricks are released, i.e., their memory is freed as
+     * soon as they are not referenced by other vtk objects anymore.
+     */
+    private void evict() {
+        Iterator<Map.Entry<Integer, vtkImageData>> it =
+                cache.entrySet().iterator();
+
+        for (int i = cache.size() - 1; i > 0 && cacheUsage > cacheSize; i--) {
+            Map.Entry<Integer, vtkImageData> e = it.next();
+
+            if (pinned.containsKey(e.getKey())) {
+                continue;
+            }
+
+            vtkImageData brick = e.getValue();
+
+            cacheUsage -= (long) brick.GetNumberOfPoints()
+                    * getElementSize(scalarType);
+            it.remove();
+            brick.Delete();
+        }
+    }
+
+    /**
+     * Returns the bounds of the specified brick.
+     *
+     * @param bx x index of the brick
+     * @param by y index of the brick
+     * @param bz z index of the brick
+     * @return the bounds (xmin, xmax, ymin, ymax, zmin, zmax)
+     */
+    public double[] getBrickBounds(int bx, int by, int bz) {
+        int[] b = {bx, by, bz};
+        double[] bounds = new double[6];
+
+        for (int axis = 0; axis < 3; axis++) {
+            int first = b[axis] * brickSize;
+            int last = first + getBrickDimension(b[axis], axis) - 1;
+
+            bounds[2 * axis] = origin[axis] + first * spacing[axis];
+            bounds[2 * axis + 1] = origin[axis] + last * spacing[axis];
+        }
+
+        return bounds;
+    }
+
+    /**
+     * Returns the bounds of the volume.
+     *
+     * @return the bounds (xmin, xmax, ymin, ymax, zmin, zmax)
+     */
+    public double[] getBounds() {
+        double[] bounds = new double[6];
+
+        for (int axis = 0; axis < 3; axis++) {
+            bounds[2 * axis] = origin[axis];
+            bounds[2 * axis + 1] = origin[axis]
+                    + (dimensions[axis] - 1) * spacing[axis];
+        }
+
+        return bounds;
+    }
+
+    /**
+     * Returns the indices of all bricks that intersect the specified region.
+     *
+     * @param region region of interest (xmin, xmax, ymin, ymax, zmin, zmax)
+     * @return brick indices (bx, by, bz)
+     */
+    public List<int[]> getBricks(double[] region) {
+        return getVisibleBricks(null, region);
+    }
+
+    /**
+     * Returns the indices of all bricks that intersect the view frustum of
+     * the specified renderer and the specified region. The bricks are
+     * sorted by their distance to the camera (nearest first).
+     *
+     * @param renderer renderer (may be <code>null</code>)
+     * @param region region of interest (xmin, xmax, ymin, ymax, zmin, zmax,
+     * may be <code>null</code>)
+     * @return brick indices (bx, by, bz)
+     */
+    public List<int[]> getVisibleBricks(vtkRenderer renderer,
+            double[] region) {
+
+        double[] planes = null;
+        double[] eye = null;
+
+        if (renderer != null) {
+            vtkCamera cam = renderer.GetActiveCamera();
+            planes = new double[24];
+            cam.GetFrustumPlanes(renderer.GetTiledAspectRatio(), planes);
+            eye = cam.GetPosition();
+        }
+
+        List<int[]> result = new ArrayList<int[]>();
+        final List<Double> distances = new ArrayList<Double>();
+
+        for (int bz = 0; bz < numberOfBricks[2]; bz++) {
+            for (int by = 0; by < numberOfBricks[1]; by++) {
+                for (int bx = 0; bx < numberOfBricks[0]; bx++) {
+
+                    double[] b = getBrickBounds(bx, by, bz);
+
+                    if (region != null && !intersects(b, region)) {
+                        continue;
+                    }
+
+                    if (planes != null && isOutside(b, planes)) {
+                        continue;
+                    }
+
+                    double d = 0;
+
+                    if (eye != null) {
+                        for (int axis = 0; axis < 3; axis++) {
+                            double c = 0.5 * (b[2 * axis] + b[2 * axis + 1]);
+                            d += (c - eye[axis]) * (c - eye[axis]);
+                        }
+                    }
+
+                    result.add(new int[]{bx, by, bz, result.size()});
+                    distances.add(d);
+                }
+            }
+        }
+
+        // nearest bricks first (the last element is the insertion index)
+        Collections.sort(result, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] b1, int[] b2) {
+                return Double.compare(
+                        distances.get(b1[3]), distances.get(b2[3]));
+            }
+        });
+
+        for (int i = 0; i < result.size(); i++) {
+            result.set(i, Arrays.copyOf(result.get(i), 3));
+        }
+
+        return result;
+    }
+
+    private static boolean intersects(double[] b, double[] region) {
+        for (int axis = 0; axis < 3; axis++) {
+            if (b[2 * axis] > region[2 * axis + 1]
+                    || b[2 * axis + 1] < region[2 * axis]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Determines whether the specified box is outside of the frustum
+     * (planes point inwards).
+     */
+    private static boolean isOutside(double[] b, double[] planes) {
+        for (int p = 0; p < 24; p += 4) {
+
+            // corner that is farthest along the plane normal
+            double px = planes[p] >= 0 ? b[1] : b[0];
+            double py = planes[p + 1] >= 0 ? b[3] : b[2];
+            double pz = planes[p + 2] >= 0 ? b[5] : b[4];
+
+            if (planes[p] * px + planes[p + 1] * py + planes[p + 2] * pz
+                    + planes[p + 3] < 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the number of points along each axis.
+     *
+     * @return the number of points along each axis
+     */
+    public int[] getDimensions() {
+        return dimensions.clone();
+    }
+
+    /**
+     * Returns the number of bricks along each axis.
+     *
+     * @return the number of bricks along each axis
+     */
+    public int[] getNumberOfBricks() {
+        return numberOfBricks.clone();
+    }
+
+    /**
+     * Returns the number of cells per brick along each axis.
+     *
+     * @return the number of cells per brick along each axis
+     */
+    public int getBrickSize() {
+        return brickSize;
+    }
+
+    /**
+     * Returns the scalar type.
+     *
+     * @return the scalar type (vtk type id)
+     */
+    public int getScalarType() {
+        return scalarType;
+    }
+
+    /**
+     * Returns the size of a brick in memory.
+     *
+     * @return the maximum size of a brick (in bytes)
+     */
+    public long getBrickBytes() {
+        return brickBytes;
+    }
+
+    /**
+     * Defines the maximum size of the brick cache (1 GB by default).
+     *
+     * @param cacheSize maximum size (in bytes)
+     */
+    public synchronized void setCacheSize(long cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException(
+                    "Cache size must be positive: " + cacheSize);
+        }
+
+        this.cacheSize = cacheSize;
+        evict();
+    }
+
+    /**
+     * Returns the maximum size of the brick cache.
+     *
+     * @return the maximum size (in bytes)
+     */
+    public synchronized long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Returns the current size of the brick cache.
+     *
+     * @return the current size (in bytes)
+     */
+    public synchronized long getCacheUsage() {
+        return cacheUsage;
+    }
+
+    /**
+     * Returns the number of bricks that have been loaded from the file
+     * (cache misses).
+     *
+     * @return the number of loaded bricks
+     */
+    public synchronized int getNumberOfLoadedBricks() {
+        return numberOfLoadedBricks;
+    }
+
+    /**
+     * Removes all bricks that are not pinned from the cache and releases
+     * them.
+     */
+    public synchronized void clearCache() {
+        Iterator<Map.Entry<Integer, vtkImageData>> it =
+                cache.entrySet().iterator();
+
+        while (it.hasNext()) {
+            Map.Entry<Integer, vtkImageData> e = it.next();
+
+            if (pinned.containsKey(e.getKey())) {
+                continue;
+            }
+
+            vtkImageData brick = e.getValue();
+
+            cacheUsage -= (long) brick.GetNumberOfPoints()
+                    * getElementSize(scalarType);
+            it.remove();
+            brick.Delete();
+        }
+    }
+
+    /**
+     * Closes the file. Loaded bricks stay valid.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    public synchronized void close() throws IOException {
+        clearCache();
+        file.close();
+    }
+}
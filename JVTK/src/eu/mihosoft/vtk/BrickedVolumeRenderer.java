@@ -0,0 +1,255 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import vtk.vtkCuller;
+import vtk.vtkCullerCollection;
+import vtk.vtkFixedPointVolumeRayCastMapper;
+import vtk.vtkFrustumCoverageCuller;
+import vtk.vtkImageData;
+import vtk.vtkRenderer;
+import vtk.vtkVolume;
+import vtk.vtkVolumeProperty;
+
+/**
+ * Renders a {@link BrickedVolume}. Before each frame the bricks that
+ * intersect the view frustum and the region of interest are determined.
+ * These bricks are loaded nearest first until the cache size of the volume
+ * is reached (including the memory of the mappers). Each brick is rendered
+ * as a separate volume and is pinned in the brick cache while it is
+ * rendered. Bricks that are not needed anymore are removed from the
+ * renderer (they may stay in the brick cache).
+ *
+ * <p>Volumes are composited in the order of the default cullers. Thus,
+ * back to front sorting is enabled on the frustum coverage culler of the
+ * renderer.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class BrickedVolumeRenderer {
+
+    //
+    // memory of vtkFixedPointVolumeRayCastMapper per point (encoded normal
+    // and gradient magnitude)
+    private static final int MAPPER_BYTES_PER_POINT = 3;
+    private final BrickedVolume volume;
+    private final vtkRenderer renderer;
+    private final vtkVolumeProperty property;
+    //
+    // brick volumes that are currently added to the renderer
+    // (brick index -> volume)
+    private final Map<Integer, vtkVolume> volumes =
+            new HashMap<Integer, vtkVolume>();
+    //
+    // region of interest (null means whole volume)
+    private double[] region;
+    private int observer = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param volume volume to render
+     * @param renderer renderer
+     * @param property volume property that is shared by all bricks
+     */
+    public BrickedVolumeRenderer(BrickedVolume volume, vtkRenderer renderer,
+            vtkVolumeProperty property) {
+        this.volume = volume;
+        this.renderer = renderer;
+        this.property = property;
+    }
+
+    /**
+     * Installs this renderer, i.e., bricks are updated before each frame.
+     */
+    public synchronized void install() {
+        if (observer >= 0) {
+            return;
+        }
+
+        vtkCullerCollection cullers = renderer.GetCullers();
+        cullers.InitTraversal();
+
+        for (int i = 0; i < cullers.GetNumberOfItems(); i++) {
+            vtkCuller c = cullers.GetNextItem();
+
+            if (c instanceof vtkFrustumCoverageCuller) {
+                ((vtkFrustumCoverageCuller) c).SetSortingStyleToBackToFront();
+            }
+        }
+
+        observer = renderer.AddObserver("StartEvent", this, "update");
+    }
+
+    /**
+     * Uninstalls this renderer. All brick volumes are removed from the
+     * renderer.
+     */
+    public synchronized void uninstall() {
+        if (observer < 0) {
+            return;
+        }
+
+        renderer.RemoveObserver(observer);
+        observer = -1;
+
+        for (Map.Entry<Integer, vtkVolume> e : volumes.entrySet()) {
+            release(e.getKey(), e.getValue());
+        }
+
+        volumes.clear();
+    }
+
+    /**
+     * Removes the specified brick volume from the renderer, releases it and
+     * its mapper and unpins the brick. Thus, the brick is freed once it has
+     * been evicted from the brick cache.
+     */
+    private void release(int index, vtkVolume v) {
+        renderer.RemoveVolume(v);
+        v.GetMapper().Delete();
+        v.Delete();
+        volume.unpinBrick(index);
+    }
+
+    /**
+     * Returns the memory of the mapper of a brick.
+     */
+    private long getMapperBytes() {
+        long n = volume.getBrickSize() + 1;
+        return n * n * n * MAPPER_BYTES_PER_POINT;
+    }
+
+    /**
+     * Defines the region of interest. Only bricks that intersect this region
+     * are rendered.
+     *
+     * @param region region of interest (xmin, xmax, ymin, ymax, zmin, zmax),
+     * <code>null</code> means the whole volume
+     */
+    public synchronized void setRegionOfInterest(double[] region) {
+        this.region = region == null ? null : region.clone();
+    }
+
+    /**
+     * Returns the region of interest.
+     *
+     * @return the region of interest or <code>null</code> if the whole
+     * volume is rendered
+     */
+    public synchronized double[] getRegionOfInterest() {
+        return region == null ? null : region.clone();
+    }
+
+    /**
+     * Returns the number of bricks that are currently rendered.
+     *
+     * @return the number of rendered bricks
+     */
+    public synchronized int getNumberOfRenderedBricks() {
+        return volumes.size();
+    }
+
+    /**
+     * Updates the rendered bricks. This method is called before each frame
+     * if this renderer is installed.
+     */
+    public synchronized void update() {
+        List<int[]> bricks = volume.getVisibleBricks(renderer, region);
+
+        long mapperBytes = getMapperBytes();
+        long budget = volume.getCacheSize();
+        long used = 0;
+
+        // bricks to render, nearest first (brick index -> brick)
+        Map<Integer, int[]> visible = new LinkedHashMap<Integer, int[]>();
+
+        for (int[] b : bricks) {
+
+            // always render at least the nearest brick
+            if (used > 0
+                    && used + volume.getBrickBytes() + mapperBytes > budget) {
+                break;
+            }
+
+            visible.put(volume.getBrickIndex(b[0], b[1], b[2]), b);
+            used += volume.getBrickBytes() + mapperBytes;
+        }
+
+        // remove bricks that are not visible anymore (before new bricks
+        // are loaded)
+        for (Iterator<Map.Entry<Integer, vtkVolume>> it =
+                volumes.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Integer, vtkVolume> e = it.next();
+
+            if (!visible.containsKey(e.getKey())) {
+                release(e.getKey(), e.getValue());
+                it.remove();
+            }
+        }
+
+        for (Map.Entry<Integer, int[]> e : visible.entrySet()) {
+            int[] b = e.getValue();
+            vtkImageData image;
+
+            try {
+                // rendered bricks are marked as recently used
+                image = volume.getBrick(b[0], b[1], b[2]);
+            } catch (IOException ex) {
+                Logger.getLogger(BrickedVolumeRenderer.class.getName()).
+                        log(Level.WARNING, "Cannot load brick", ex);
+                break;
+            }
+
+            if (volumes.containsKey(e.getKey())) {
+                continue;
+            }
+
+            vtkFixedPointVolumeRayCastMapper mapper =
+                    new vtkFixedPointVolumeRayCastMapper();
+            mapper.SetInput(image);
+
+            vtkVolume v = new vtkVolume();
+            v.SetMapper(mapper);
+            v.SetProperty(property);
+
+            renderer.AddVolume(v);
+            volumes.put(e.getKey(), v);
+
+            volume.pinBrick(e.getKey(), mapperBytes);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Converts raw volumes to the brick format of {@link BrickedVolume}. The raw
+ * volume is read slab by slab, i.e., it never has to be kept in memory
+ * completely.
+ *
+ * <p>File layout (little endian):</p>
+ * <pre>
+ * header (128 bytes):
+ *   "JVTKBRIK", version (int), scalar type (int, vtk type id),
+ *   dimensions (3 ints), brick size (int), origin (3 doubles),
+ *   spacing (3 doubles), reserved
+ * bricks (x index varies fastest):
+ *   scalars (x varies fastest), each brick padded to
+ *   (brick size + 1)^3 scalars
+ * </pre>
+ *
+ * <p>A brick covers <code>brick size</code> cells along each axis, i.e.,
+ * neighbouring bricks share one layer of points.</p>
+ *
+ * <p>Bricks are written plane by plane. Only one plane of the raw volume is
+ * mapped and only one plane of one brick is buffered at a time, i.e., memory
+ * usage does not depend on the size of the volume.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class BrickedVolumeWriter {
+
+    // no instanciation allowed
+    private BrickedVolumeWriter() {
+        throw new AssertionError(); // not in this class either!
+    }
+
+    /**
+     * Converts the specified raw volume. The raw file must contain the
+     * scalars without header (little endian, x varies fastest). An existing
+     * output file is overwritten.
+     *
+     * @param raw raw volume
+     * @param dimensions number of points along each axis
+     * @param scalarType scalar type (vtk type id, supported are unsigned
+     * char, short, unsigned short and float)
+     * @param origin origin of the volume
+     * @param spacing spacing of the volume
+     * @param brickSize number of cells per brick along each axis
+     * @param out output file
+     * @throws IOException if the volume cannot be converted
+     */
+    public static void convert(File raw, int[] dimensions, int scalarType,
+            double[] origin, double[] spacing, int brickSize, File out)
+            throws IOException {
+
+        int es = BrickedVolume.getElementSize(scalarType);
+
+        if (es < 0) {
+            throw new IllegalArgumentException(
+                    "Unsupported scalar type: " + scalarType);
+        }
+
+        if (brickSize < 1) {
+            throw new IllegalArgumentException(
+                    "Brick size must be positive: " + brickSize);
+        }
+
+        int nx = dimensions[0];
+        int ny = dimensions[1];
+        int nz = dimensions[2];
+
+        if (nx < 1 || ny < 1 || nz < 1) {
+            throw new IllegalArgumentException("Invalid dimensions: "
+                    + nx + ", " + ny + ", " + nz);
+        }
+
+        long planeBytes = (long) nx * ny * es;
+
+        if (planeBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "Slices larger than 2 GB are not supported");
+        }
+
+        if (BrickedVolume.getBrickBytes(brickSize, scalarType)
+                > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "Bricks larger than 2 GB are not supported");
+        }
+
+        int nbx = BrickedVolume.getNumberOfBricks(nx, brickSize);
+        int nby = BrickedVolume.getNumberOfBricks(ny, brickSize);
+        int nbz = BrickedVolume.getNumberOfBricks(nz, brickSize);
+        long brickBytes = BrickedVolume.getBrickBytes(brickSize, scalarType);
+
+        RandomAccessFile in = new RandomAccessFile(raw, "r");
+        RandomAccessFile output = new RandomAccessFile(out, "rw");
+
+        try {
+            if (in.length() < planeBytes * nz) {
+                throw new IOException("Raw file too small: " + raw);
+            }
+
+            FileChannel inChannel = in.getChannel();
+            FileChannel outChannel = output.getChannel();
+
+            output.setLength(BrickedVolume.HEADER_SIZE
+                    + brickBytes * nbx * nby * nbz);
+
+            ByteBuffer header = ByteBuffer.allocate(
+                    BrickedVolume.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(BrickedVolume.MAGIC);
+            header.putInt(BrickedVolume.VERSION);
+            header.putInt(scalarType);
+            header.putInt(nx).putInt(ny).putInt(nz);
+            header.putInt(brickSize);
+
+            for (int i = 0; i < 3; i++) {
+                header.putDouble(origin[i]);
+            }
+
+            for (int i = 0; i < 3; i++) {
+                header.putDouble(spacing[i]);
+            }
+
+            header.clear();
+            writeFully(outChannel, header, 0);
+
+            // one plane of one brick is buffered at a time. planes on brick
+            // boundaries belong to two bricks
+            int b1 = brickSize + 1;
+            ByteBuffer slice = ByteBuffer.allocate(b1 * b1 * es);
+
+            for (int z = 0; z < nz; z++) {
+                MappedByteBuffer plane = inChannel.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        z * planeBytes, planeBytes);
+
+                for (int bz = Math.min(z / brickSize, nbz - 1);
+                        bz >= 0 && bz * brickSize + brickSize >= z; bz--) {
+
+                    int dz = z - bz * brickSize;
+
+                    for (int by = 0; by < nby; by++) {
+                        int y0 = by * brickSize;
+                        int y1 = Math.min(y0 + brickSize, ny - 1);
+
+                        for (int bx = 0; bx < nbx; bx++) {
+                            int x0 = bx * brickSize;
+                            int x1 = Math.min(x0 + brickSize, nx - 1);
+                            int rowBytes = (x1 - x0 + 1) * es;
+
+                            slice.clear();
+
+                            for (int y = y0; y <= y1; y++) {
+                                int offset = (y * nx + x0) * es;
+                                plane.limit(offset + rowBytes);
+                                plane.position(offset);
+                                slice.put(plane);
+                                plane.limit(plane.capacity());
+                            }
+
+                            slice.flip();
+
+                            long index = bx + (long) nbx * (by + nby * bz);
+
+                            writeFully(outChannel, slice,
+                                    BrickedVolume.HEADER_SIZE
+                                    + index * brickBytes
+                                    + (long) dz * slice.limit());
+                        }
+                    }
+                }
+            }
+        } finally {
+            in.close();
+            output.close();
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of the specified buffer.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer,
+            long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import vtk.vtkActor;
+import vtk.vtkAppendPolyData;
+import vtk.vtkDataArray;
+import vtk.vtkIntArray;
+import vtk.vtkMatrix4x4;
+import vtk.vtkPolyData;
+import vtk.vtkPolyDataMapper;
+import vtk.vtkProperty;
+import vtk.vtkRenderer;
+import vtk.vtkTransform;
+import vtk.vtkTransformPolyDataFilter;
+
+/**
+ * Result of a scene compaction (see {@link SceneCompactor}). Each batch
+ * replaces a group of original actors by one merged actor. The identity of
+ * the original actors is preserved: picks on merged actors can be mapped to
+ * the original actor (see {@link #getOriginalActor(vtk.vtkActor, int) }) and
+ * the visibility of original actors can still be toggled (see
+ * {@link #setVisible(vtk.vtkActor, boolean) }). Additionally, the merged
+ * geometry contains the cell array {@link #ORIGINAL_ACTOR_ID} with the index
+ * of the original actor within its batch.
+ *
+ * <p><b>Note:</b> all methods that modify the scene must be called while
+ * holding the render lock, e.g., inside a {@link SceneTransaction}.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class CompactedScene {
+
+    /**
+     * Name of the cell array that contains the index of the original actor.
+     */
+    public static final String ORIGINAL_ACTOR_ID = "OriginalActorId";
+    private final vtkRenderer renderer;
+    private final List<Batch> batches;
+    //
+    // batch of each original actor
+    private final Map<vtkActor, Batch> batchesByOriginal =
+            new IdentityHashMap<vtkActor, Batch>();
+    //
+    // batch of each merged actor
+    private final Map<vtkActor, Batch> batchesByMerged =
+            new IdentityHashMap<vtkActor, Batch>();
+    //
+    // indicates whether this compaction is applied to the scene
+    private boolean applied;
+
+    /**
+     * Constructor.
+     *
+     * @param renderer renderer
+     * @param batches batches (already built)
+     */
+    CompactedScene(vtkRenderer renderer, List<Batch> batches) {
+        this.renderer = renderer;
+        this.batches = batches;
+
+        for (Batch b : batches) {
+            for (vtkActor a : b.actors) {
+                batchesByOriginal.put(a, b);
+            }
+            batchesByMerged.put(b.mergedActor, b);
+        }
+    }
+
+    /**
+     * Applies this compaction, i.e., hides the original actors and adds the
+     * merged actors to the renderer.
+     */
+    public void apply() {
+        if (applied) {
+            return;
+        }
+
+        for (Batch b : batches) {
+            for (vtkActor a : b.actors) {
+                a.SetVisibility(0);
+            }
+            renderer.AddActor(b.mergedActor);
+        }
+
+        applied = true;
+    }
+
+    /**
+     * Reverts this compaction, i.e., removes the merged actors and restores
+     * the visibility of the original actors.
+     */
+    public void revert() {
+        if (!applied) {
+            return;
+        }
+
+        for (Batch b : batches) {
+            renderer.RemoveActor(b.mergedActor);
+            for (int i = 0; i < b.actors.size(); i++) {
+                b.actors.get(i).SetVisibility(b.visible[i] ? 1 : 0);
+            }
+        }
+
+        applied = false;
+    }
+
+    /**
+     * Indicates whether this compaction is applied to the scene.
+     *
+     * @return <code>true</code> if this compaction is applied;
+     * <code>false</code> otherwise
+     */
+    public boolean isApplied() {
+        return applied;
+    }
+
+    /**
+     * Returns the original actor of the specified cell of a merged actor.
+     * The actor is looked up in the {@link #ORIGINAL_ACTOR_ID} array of the
+     * merged geometry since the append filter does not keep the cells of
+     * each original actor contiguous.
+     *
+     * @param actor picked actor
+     * @param cellId picked cell id
+     * @return the original actor, <code>actor</code> if it is not a merged
+     * actor of this compaction or <code>null</code> if the cell id is invalid
+     */
+    public vtkActor getOriginalActor(vtkActor actor, int cellId) {
+        Batch b = batchesByMerged.get(actor);
+
+        if (b == null) {
+            return actor;
+        }
+
+        return b.getOriginalActor(cellId);
+    }
+
+    /**
+     * Defines the visibility of an original actor. The merged geometry of
+     * its batch is rebuilt on the next render.
+     *
+     * @param actor original actor
+     * @param v defines whether the actor shall be visible
+     */
+    public void setVisible(vtkActor actor, boolean v) {
+        Batch b = batchesByOriginal.get(actor);
+
+        if (b == null) {
+            actor.SetVisibility(v ? 1 : 0);
+            return;
+        }
+
+        b.setVisible(actor, v);
+    }
+
+    /**
+     * Indicates whether the specified original actor is visible.
+     *
+     * @param actor original actor
+     * @return <code>true</code> if the actor is visible; <code>false</code>
+     * otherwise
+     */
+    public boolean isVisible(vtkActor actor) {
+        Batch b = batchesByOriginal.get(actor);
+
+        if (b == null) {
+            return actor.GetVisibility() != 0;
+        }
+
+        return b.visible[b.actors.indexOf(actor)];
+    }
+
+    /**
+     * Returns the merged actors.
+     *
+     * @return the merged actors
+     */
+    public List<vtkActor> getMergedActors() {
+        List<vtkActor> result = new ArrayList<vtkActor>();
+
+        for (Batch b : batches) {
+            result.add(b.mergedActor);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of original actors that have been merged.
+     *
+     * @return the number of original actors that have been merged
+     */
+    public int getNumberOfOriginalActors() {
+        return batchesByOriginal.size();
+    }
+
+    /**
+     * Returns the original actors of the specified merged actor.
+     *
+     * @param merged merged actor
+     * @return the original actors (empty if <code>merged</code> is not a
+     * merged actor of this compaction)
+     */
+    public List<vtkActor> getOriginalActors(vtkActor merged) {
+        Batch b = batchesByMerged.get(merged);
+
+        if (b == null) {
+            return Collections.emptyList();
+        }
+
+        return Collections.unmodifiableList(b.actors);
+    }
+
+    /**
+     * Group of compatible actors that is merged into one actor.
+     */
+    static class Batch {
+
+        private final vtkProperty property;
+        //
+        // mapper of the merged actor (color mapping of the original actors)
+        private final vtkPolyDataMapper mapper;
+        //
+        // original actors
+        private final List<vtkActor> actors = new ArrayList<vtkActor>();
+        //
+        // geometry snapshots (released after build)
+        private List<vtkPolyData> geometries = new ArrayList<vtkPolyData>();
+        //
+        // transform snapshots (released after build)
+        private List<vtkMatrix4x4> matrices = new ArrayList<vtkMatrix4x4>();
+        //
+        // transformed geometry of each original actor
+        private vtkPolyData[] pieces;
+        //
+        // number of cells of each original actor
+        private final List<Integer> cellCounts = new ArrayList<Integer>();
+        //
+        // visibility of the original actors
+        private boolean[] visible;
+        //
+        // total number of cells
+        private int numberOfCells;
+        private vtkAppendPolyData append;
+        private vtkActor mergedActor;
+
+        Batch(vtkProperty property, vtkPolyDataMapper mapper) {
+            this.property = property;
+            this.mapper = mapper;
+        }
+
+        void add(vtkActor a, vtkPolyData geometry, vtkMatrix4x4 matrix,
+                int numberOfCells) {
+            actors.add(a);
+            geometries.add(geometry);
+            matrices.add(matrix);
+            cellCounts.add(numberOfCells);
+            this.numberOfCells += numberOfCells;
+        }
+
+        int getNumberOfActors() {
+            return actors.size();
+        }
+
+        int getNumberOfCells() {
+            return numberOfCells;
+        }
+
+        /**
+         * Transforms and merges the geometry (executed by the worker pool).
+         */
+        void build() {
+            int n = actors.size();
+
+            pieces = new vtkPolyData[n];
+            visible = new boolean[n];
+            Arrays.fill(visible, true);
+
+            vtkTransform transform = new vtkTransform();
+            vtkTransformPolyDataFilter filter =
+                    new vtkTransformPolyDataFilter();
+            filter.SetTransform(transform);
+
+            for (int i = 0; i < n; i++) {
+                transform.SetMatrix(matrices.get(i));
+                filter.SetInput(geometries.get(i));
+                filter.Update();
+
+                vtkPolyData piece = new vtkPolyData();
+                piece.ShallowCopy(filter.GetOutput());
+
+                vtkIntArray ids = new vtkIntArray();
+                ids.SetName(ORIGINAL_ACTOR_ID);
+                ids.SetNumberOfTuples(cellCounts.get(i));
+                ids.FillComponent(0, i);
+                piece.GetCellData().AddArray(ids);
+
+                pieces[i] = piece;
+            }
+
+            filter.Delete();
+            transform.Delete();
+
+            for (vtkMatrix4x4 m : matrices) {
+                m.Delete();
+            }
+
+            geometries = null;
+            matrices = null;
+
+            append = new vtkAppendPolyData();
+            updateInputs();
+            append.Update();
+
+            mapper.SetInputConnection(append.GetOutputPort());
+
+            mergedActor = new vtkActor();
+            mergedActor.SetMapper(mapper);
+            mergedActor.SetProperty(property);
+        }
+
+        /**
+         * Connects the visible pieces to the append filter.
+         */
+        private void updateInputs() {
+            append.RemoveAllInputs();
+
+            int numberOfVisible = 0;
+
+            for (int i = 0; i < pieces.length; i++) {
+                if (visible[i]) {
+                    append.AddInput(pieces[i]);
+                    numberOfVisible++;
+                }
+            }
+
+            // an append filter without inputs produces errors
+            setMergedActorVisible(numberOfVisible > 0);
+        }
+
+        private void setMergedActorVisible(boolean v) {
+            if (mergedActor != null) {
+                mergedActor.SetVisibility(v ? 1 : 0);
+            }
+        }
+
+        void setVisible(vtkActor a, boolean v) {
+            int i = actors.indexOf(a);
+
+            if (visible[i] == v) {
+                return;
+            }
+
+            visible[i] = v;
+            updateInputs();
+        }
+
+        vtkActor getOriginalActor(int cellId) {
+            if (cellId < 0 || append == null) {
+                return null;
+            }
+
+            vtkDataArray ids = append.GetOutput().GetCellData().
+                    GetArray(ORIGINAL_ACTOR_ID);
+
+            if (ids == null || cellId >= ids.GetNumberOfTuples()) {
+                return null;
+            }
+
+            return actors.get((int) ids.GetTuple1(cellId));
+        }
+
+        void dispose() {
+            if (mergedActor == null) {
+                mapper.Delete();
+            }
+
+            if (geometries != null) {
+                for (vtkPolyData g : geometries) {
+                    g.Delete();
+                }
+                for (vtkMatrix4x4 m : matrices) {
+                    m.Delete();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.awt.Rectangle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import vtk.vtkCamera;
+import vtk.vtkFloatArray;
+import vtk.vtkMatrix4x4;
+import vtk.vtkRenderWindow;
+import vtk.vtkRenderer;
+
+/**
+ * Depth buffer of the visible part of a {@link VTKJPanel}. The depth values
+ * are captured together with the color content (see
+ * {@link VTKJPanel#setDepthCapture(boolean) }). All coordinates are
+ * component coordinates of the panel, i.e., the origin is the upper left
+ * corner.
+ *
+ * <p>Depth values are in the range <code>[0,1]</code>. Pixels that are not
+ * covered by any geometry have the depth <code>1</code>. Unprojection uses
+ * the camera of the captured frame, i.e., results are consistent with the
+ * image that is currently shown.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class DepthBuffer {
+
+    //
+    // depth values (vtk layout, i.e., bottom row first, reused across frames)
+    private float[] data = new float[0];
+    //
+    // direct buffer used by the native helper (created on demand)
+    private FloatBuffer buffer;
+    //
+    // used if the native helper is unavailable
+    private vtkFloatArray zbuffer;
+    //
+    // captured region (component coordinates)
+    private Rectangle region = new Rectangle();
+    //
+    // height of the render window
+    private int renderHeight;
+    //
+    // width of the render window
+    private int renderWidth;
+    //
+    // viewport of the renderer
+    private double[] viewport = {0, 0, 1, 1};
+    //
+    // inverse of the composite projection matrix (row major)
+    private final double[] invProjection = new double[16];
+    //
+    // temporary matrix for the inversion
+    private vtkMatrix4x4 matrix;
+    //
+    // indicates whether a frame has been captured
+    private boolean valid;
+
+    /**
+     * Constructor. Depth buffers are created by {@link VTKJPanel}.
+     */
+    DepthBuffer() {
+    }
+
+    /**
+     * Captures the depth values of the specified region.
+     *
+     * <p><b>Note:</b> must be called while holding the render lock.</p>
+     *
+     * @param rw render window
+     * @param ren renderer that defines the camera
+     * @param region region to capture (component coordinates)
+     * @param renderWidth width of the render window
+     * @param renderHeight height of the render window
+     */
+    synchronized void capture(vtkRenderWindow rw, vtkRenderer ren,
+            Rectangle region, int renderWidth, int renderHeight) {
+
+        int w = region.width;
+        int h = region.height;
+        int size = w * h;
+
+        // vtk coordinates start at the lower left corner
+        int x0 = region.x;
+        int y0 = renderHeight - region.y - h;
+
+        if (data.length != size) {
+            data = new float[size];
+        }
+
+        rw.MakeCurrent();
+
+        boolean read = false;
+
+        if (NativeReadback.isAvailable()) {
+            if (buffer == null || buffer.capacity() < size) {
+                buffer = ByteBuffer.allocateDirect(size * 4).
+                        order(ByteOrder.nativeOrder()).asFloatBuffer();
+            }
+
+            read = NativeReadback.readDepth(x0, y0, w, h, buffer);
+
+            if (read) {
+                buffer.clear();
+                buffer.get(data, 0, size);
+            }
+        }
+
+        if (!read) {
+            if (zbuffer == null) {
+                zbuffer = new vtkFloatArray();
+            }
+
+            // bounds are inclusive
+            rw.GetZbufferData(x0, y0, x0 + w - 1, y0 + h - 1, zbuffer);
+
+            // the wrapper returns a temporary array. the values are copied
+            // to keep the reused array stable
+            float[] values = zbuffer.GetJavaArray();
+
+            read = values.length == size;
+
+            if (read) {
+                System.arraycopy(values, 0, data, 0, size);
+            }
+        }
+
+        this.region = new Rectangle(region);
+        this.renderWidth = renderWidth;
+        this.renderHeight = renderHeight;
+        this.viewport = ren.GetViewport();
+
+        captureProjection(ren);
+
+        valid = read;
+    }
+
+    /**
+     * Stores the inverse of the composite projection matrix of the specified
+     * renderer. The near and far planes are mapped to <code>0</code> and
+     * <code>1</code> which matches the range of the depth values (see
+     * <code>vtkRenderer::ViewToWorld()</code>).
+     *
+     * @param ren renderer
+     */
+    private void captureProjection(vtkRenderer ren) {
+        if (matrix == null) {
+            matrix = new vtkMatrix4x4();
+        }
+
+        vtkCamera cam = ren.GetActiveCamera();
+
+        matrix.DeepCopy(cam.GetCompositeProjectionTransformMatrix(
+                ren.GetTiledAspectRatio(), 0, 1));
+        matrix.Invert();
+
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                invProjection[i * 4 + j] = matrix.GetElement(i, j);
+            }
+        }
+    }
+
+    /**
+     * Invalidates this depth buffer.
+     */
+    synchronized void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Releases the vtk objects of this depth buffer.
+     */
+    synchronized void dispose() {
+        if (zbuffer != null) {
+            zbuffer.Delete();
+            zbuffer = null;
+        }
+        if (matrix != null) {
+            matrix.Delete();
+            matrix = null;
+        }
+        buffer = null;
+        data = new float[0];
+        valid = false;
+    }
+
+    /**
+     * Indicates whether this depth buffer contains a captured frame.
+     *
+     * @return <code>true</code> if a frame has been captured;
+     * <code>false</code> otherwise
+     */
+    public synchronized boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Returns the captured region (component coordinates).
+     *
+     * @return the captured region
+     */
+    public synchronized Rectangle getRegion() {
+        return new Rectangle(region);
+    }
+
+    /**
+     * Returns the depth value at the specified location.
+     *
+     * @param x x coordinate (component coordinates)
+     * @param y y coordinate (component coordinates)
+     * @return the depth value in the range <code>[0,1]</code> or
+     * <code>1</code> if the location is outside of the captured region
+     */
+    public synchronized float getDepth(int x, int y) {
+        int i = index(x, y);
+        return i < 0 ? 1.f : data[i];
+    }
+
+    /**
+     * Indicates whether the specified location is covered by geometry.
+     *
+     * @param x x coordinate (component coordinates)
+     * @param y y coordinate (component coordinates)
+     * @return <code>true</code> if the location is covered by geometry;
+     * <code>false</code> otherwise
+     */
+    public boolean isCovered(int x, int y) {
+        return getDepth(x, y) < 1.f;
+    }
+
+    /**
+     * Indicates whether a point at the specified location and depth is
+     * occluded by the rendered geometry. This can be used to clip Swing
+     * overlays.
+     *
+     * @param x x coordinate (component coordinates)
+     * @param y y coordinate (component coordinates)
+     * @param depth depth of the point in the range <code>[0,1]</code>
+     * @return <code>true</code> if the point is occluded; <code>false</code>
+     * otherwise
+     */
+    public boolean isOccluded(int x, int y, float depth) {
+        return getDepth(x, y) < depth;
+    }
+
+    /**
+     * Returns the world coordinates of the geometry at the specified
+     * location.
+     *
+     * @param x x coordinate (component coordinates)
+     * @param y y coordinate (component coordinates)
+     * @return world coordinates or <code>null</code> if the location is not
+     * covered by geometry
+     */
+    public double[] unproject(int x, int y) {
+        double[] result = new double[3];
+        return unproject(x, y, result) ? result : null;
+    }
+
+    /**
+     * Computes the world coordinates of the geometry at the specified
+     * location. This method does not allocate memory.
+     *
+     * @param x x coordinate (component coordinates)
+     * @param y y coordinate (component coordinates)
+     * @param result array that receives the world coordinates (length must
+     * be at least 3)
+     * @return <code>true</code> if the location is covered by geometry;
+     * <code>false</code> otherwise (<code>result</code> is not modified)
+     */
+    public synchronized boolean unproject(int x, int y, double[] result) {
+        int i = index(x, y);
+
+        if (i < 0 || data[i] >= 1.f) {
+            return false;
+        }
+
+        unproject(x, y, data[i], result);
+
+        return true;
+    }
+
+    /**
+     * Computes the world coordinates of the specified location and depth.
+     *
+     * @param x x coordinate (component coordinates)
+     * @param y y coordinate (component coordinates)
+     * @param depth depth value in the range <code>[0,1]</code>
+     * @param result array that receives the world coordinates (length must
+     * be at least 3)
+     */
+    public synchronized void unproject(double x, double y, double depth,
+            double[] result) {
+
+        // display coordinates (vtk coordinates start at the lower left
+        // corner)
+        double dx = x;
+        double dy = renderHeight - y - 1;
+
+        // view coordinates (see vtkViewport::DisplayToView())
+        double vx = 2.0 * (dx - renderWidth * viewport[0])
+                / (renderWidth * (viewport[2] - viewport[0])) - 1.0;
+        double vy = 2.0 * (dy - renderHeight * viewport[1])
+                / (renderHeight * (viewport[3] - viewport[1])) - 1.0;
+        double vz = depth;
+
+        // world coordinates (see vtkRenderer::ViewToWorld())
+        double[] m = invProjection;
+
+        double wx = m[0] * vx + m[1] * vy + m[2] * vz + m[3];
+        double wy = m[4] * vx + m[5] * vy + m[6] * vz + m[7];
+        double wz = m[8] * vx + m[9] * vy + m[10] * vz + m[11];
+        double ww = m[12] * vx + m[13] * vy + m[14] * vz + m[15];
+
+        if (ww != 0.0) {
+            wx /= ww;
+            wy /= ww;
+            wz /= ww;
+        }
+
+        result[0] = wx;
+        result[1] = wy;
+        result[2] = wz;
+    }
+
+    /**
+     * Returns a read-only view of the depth values. Rows are stored bottom
+     * row first (vtk layout). The returned buffer is only valid until the
+     * next frame is captured.
+     *
+     * @return depth values
+     */
+    public synchronized FloatBuffer getData() {
+        return FloatBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the array index of the specified location.
+     *
+     * @param x x coordinate (component coordinates)
+     * @param y y coordinate (component coordinates)
+     * @return array index or <code>-1</code> if the location is outside of
+     * the captured region
+     */
+    private int index(int x, int y) {
+        if (!valid || !region.contains(x, y)) {
+            return -1;
+        }
+
+        int col = x - region.x;
+        int row = region.height - 1 - (y - region.y);
+
+        return row * region.width + col;
+    }
+}
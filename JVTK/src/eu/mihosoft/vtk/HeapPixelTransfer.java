@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import vtk.vtkRenderWindow;
+import vtk.vtkUnsignedCharArray;
+
+/**
+ * Pixel transfer that reads pixels into a vtk array and copies them to a
+ * new Java array via {@link vtkUnsignedCharArray#GetJavaArray() }. This is
+ * always available but allocates a new array for each frame.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class HeapPixelTransfer implements PixelTransfer {
+
+    @Override
+    public String getName() {
+        return "heap";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public byte[] readPixels(vtkRenderWindow rw,
+            int x, int y, int w, int h, int components, byte[] dest) {
+
+        vtkUnsignedCharArray vtkPixelData = new vtkUnsignedCharArray();
+
+        // vtk bounds are inclusive
+        if (components == 3) {
+            rw.GetPixelData(x, y, x + w - 1, y + h - 1, 1, vtkPixelData);
+        } else {
+            rw.GetRGBACharPixelData(x, y, x + w - 1, y + h - 1,
+                    1, vtkPixelData);
+        }
+
+        byte[] result = vtkPixelData.GetJavaArray();
+
+        vtkPixelData.Delete();
+
+        return result;
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import vtk.vtkActor;
+import vtk.vtkMapper;
+import vtk.vtkProp;
+import vtk.vtkPropCollection;
+import vtk.vtkProperty;
+import vtk.vtkRenderWindow;
+import vtk.vtkRenderer;
+import vtk.vtkTexture;
+import vtk.vtkUnsignedCharArray;
+
+/**
+ * Picker that renders color coded actor ids to an offscreen buffer. Picks are
+ * simple array lookups. The id buffer is rebuilt lazily, i.e., on the first
+ * pick after the scene has changed (see {@link VTKCanvas#getSceneVersion() }).
+ * This makes hover picking feasible for scenes with tens of thousands of
+ * actors.
+ *
+ * <p>The id pass renders to the back buffer without swapping buffers, i.e.,
+ * it is never visible. Only visible actors are pickable. Other props (e.g.
+ * volumes and 2D actors) are hidden during the id pass. If multisampling is
+ * enabled, ids at silhouette pixels may be blended and thus unreliable.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class IdBufferPicker {
+
+    private final VTKCanvas panel;
+    //
+    // actor ids (index + 1) of the last id pass, bottom row first. 0 means
+    // no actor (reused across passes)
+    private int[] ids = new int[0];
+    //
+    // actors of the last id pass
+    private vtkActor[] actors = new vtkActor[0];
+    //
+    // size of the render window during the last id pass
+    private int width;
+    private int height;
+    //
+    // scene version of the last id pass
+    private long version = -1;
+    //
+    // properties used during the id pass (one per actor, reused)
+    private final List<vtkProperty> idProperties = new ArrayList<vtkProperty>();
+    //
+    // used if the native helper is unavailable
+    private vtkUnsignedCharArray pixelData;
+    //
+    // used by the native helper
+    private ByteBuffer buffer;
+    //
+    // number of id passes (for diagnostics)
+    private int passes;
+
+    /**
+     * Constructor.
+     *
+     * @param panel panel to pick from
+     */
+    public IdBufferPicker(VTKCanvas panel) {
+        this.panel = panel;
+    }
+
+    /**
+     * Returns the actor at the specified location.
+     *
+     * @param x x coordinate (component coordinates)
+     * @param y y coordinate (component coordinates)
+     * @return the actor at the specified location or <code>null</code> if
+     * no actor is visible at this location
+     */
+    public synchronized vtkActor pick(int x, int y) {
+        int id = pickId(x, y);
+        return id < 0 ? null : actors[id];
+    }
+
+    /**
+     * Returns the index of the actor at the specified location. The index
+     * refers to the actor collection of the renderer at the time of the last
+     * id pass (visible actors only, see {@link #getActors() }).
+     *
+     * @param x x coordinate (component coordinates)
+     * @param y y coordinate (component coordinates)
+     * @return the index of the actor at the specified location or
+     * <code>-1</code> if no actor is visible at this location
+     */
+    public synchronized int pickId(int x, int y) {
+        update();
+
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return -1;
+        }
+
+        // vtk coordinates start at the lower left corner
+        int id = ids[(height - 1 - y) * width + x] - 1;
+
+        // ignore blended silhouette pixels
+        return id < actors.length ? id : -1;
+    }
+
+    /**
+     * Returns the actors of the last id pass.
+     *
+     * @return the actors of the last id pass
+     */
+    public synchronized vtkActor[] getActors() {
+        return actors.clone();
+    }
+
+    /**
+     * Returns the number of id passes that have been rendered so far.
+     *
+     * @return the number of id passes
+     */
+    public synchronized int getNumberOfPasses() {
+        return passes;
+    }
+
+    /**
+     * Invalidates the id buffer. It will be rebuilt on the next pick.
+     */
+    public synchronized void invalidate() {
+        version = -1;
+    }
+
+    /**
+     * Rebuilds the id buffer if the scene has changed since the last id pass.
+     */
+    public synchronized void update() {
+        if (version == panel.getSceneVersion() || !panel.isWindowSet()) {
+            return;
+        }
+
+        panel.lock();
+        try {
+            render();
+        } finally {
+            panel.unlock();
+        }
+
+        // the id pass itself increments the scene version
+        version = panel.getSceneVersion();
+        passes++;
+    }
+
+    /**
+     * Renders the id pass and reads it back.
+     *
+     * <p><b>Note:</b> must be called while holding the render lock.</p>
+     */
+    private void render() {
+        vtkRenderWindow rw = panel.GetRenderWindow();
+        vtkRenderer ren = panel.GetRenderer();
+
+        List<vtkActor> visibleActors = new ArrayList<vtkActor>();
+        List<vtkProp> hiddenProps = new ArrayList<vtkProp>();
+
+        vtkPropCollection props = ren.GetViewProps();
+        props.InitTraversal();
+
+        for (int i = 0; i < props.GetNumberOfItems(); i++) {
+            vtkProp p = props.GetNextProp();
+
+            if (p == null || p.GetVisibility() == 0) {
+                continue;
+            }
+
+            if (p instanceof vtkActor && ((vtkActor) p).GetMapper() != null) {
+                visibleActors.add((vtkActor) p);
+            } else {
+                hiddenProps.add(p);
+            }
+        }
+
+        int n = visibleActors.size();
+
+        // state that is changed during the id pass
+        vtkProperty[] properties = new vtkProperty[n];
+        vtkTexture[] textures = new vtkTexture[n];
+        int[] scalarVisibility = new int[n];
+
+        double[] background = ren.GetBackground();
+        boolean gradientBackground = ren.GetGradientBackground();
+        int swapBuffers = rw.GetSwapBuffers();
+
+        for (vtkProp p : hiddenProps) {
+            p.SetVisibility(0);
+        }
+
+        while (idProperties.size() < n) {
+            idProperties.add(new vtkProperty());
+        }
+
+        for (int i = 0; i < n; i++) {
+            vtkActor a = visibleActors.get(i);
+            vtkMapper m = a.GetMapper();
+
+            properties[i] = a.GetProperty();
+            textures[i] = a.GetTexture();
+            scalarVisibility[i] = m.GetScalarVisibility();
+
+            vtkProperty idProp = idProperties.get(i);
+
+            // keep representation, line width, point size etc.
+            idProp.DeepCopy(properties[i]);
+            setIdColor(idProp, i + 1);
+
+            a.SetProperty(idProp);
+            a.SetTexture(null);
+            m.SetScalarVisibility(0);
+        }
+
+        ren.SetBackground(0, 0, 0);
+        ren.SetGradientBackground(false);
+        rw.SwapBuffersOff();
+
+        rw.Render();
+
+        int[] size = rw.GetSize();
+        readIds(rw, size[0], size[1]);
+
+        // restore in reverse order (actors may share mappers)
+        rw.SetSwapBuffers(swapBuffers);
+        ren.SetGradientBackground(gradientBackground);
+        ren.SetBackground(background);
+
+        for (int i = n - 1; i >= 0; i--) {
+            vtkActor a = visibleActors.get(i);
+            a.GetMapper().SetScalarVisibility(scalarVisibility[i]);
+            a.SetTexture(textures[i]);
+            a.SetProperty(properties[i]);
+        }
+
+        for (vtkProp p : hiddenProps) {
+            p.SetVisibility(1);
+        }
+
+        actors = visibleActors.toArray(new vtkActor[n]);
+    }
+
+    /**
+     * Defines the color of the specified property so that it encodes the
+     * specified id.
+     *
+     * @param p property
+     * @param id id (24 bit)
+     */
+    private static void setIdColor(vtkProperty p, int id) {
+        p.LightingOff();
+        p.SetAmbient(1.0);
+        p.SetDiffuse(0.0);
+        p.SetSpecular(0.0);
+        p.SetOpacity(1.0);
+        p.SetEdgeVisibility(0);
+        p.SetColor(
+                ((id >> 16) & 0xff) / 255.0,
+                ((id >> 8) & 0xff) / 255.0,
+                (id & 0xff) / 255.0);
+    }
+
+    /**
+     * Reads the id pass from the back buffer and decodes the ids.
+     *
+     * @param rw render window
+     * @param w width of the render window
+     * @param h height of the render window
+     */
+    private void readIds(vtkRenderWindow rw, int w, int h) {
+        int size = w * h;
+
+        if (ids.length != size) {
+            ids = new int[size];
+        }
+
+        width = w;
+        height = h;
+
+        rw.MakeCurrent();
+
+        if (NativeReadback.isAvailable()) {
+            if (buffer == null || buffer.capacity() < size * 3) {
+                buffer = ByteBuffer.allocateDirect(size * 3);
+            }
+
+            if (NativeReadback.readPixels(0, 0, w, h, 3, false, buffer)) {
+                buffer.clear();
+                for (int i = 0; i < size; i++) {
+                    int r = buffer.get() & 0xff;
+                    int g = buffer.get() & 0xff;
+                    int b = buffer.get() & 0xff;
+                    ids[i] = (r << 16) | (g << 8) | b;
+                }
+                return;
+            }
+        }
+
+        if (pixelData == null) {
+            pixelData = new vtkUnsignedCharArray();
+        }
+
+        // vtk bounds are inclusive, 0 selects the back buffer
+        rw.GetPixelData(0, 0, w - 1, h - 1, 0, pixelData);
+
+        byte[] data = pixelData.GetJavaArray();
+
+        for (int i = 0, j = 0; i < size; i++) {
+            int r = data[j++] & 0xff;
+            int g = data[j++] & 0xff;
+            int b = data[j++] & 0xff;
+            ids[i] = (r << 16) | (g << 8) | b;
+        }
+    }
+
+    /**
+     * Releases the vtk objects used by this picker.
+     */
+    public synchronized void dispose() {
+        for (vtkProperty p : idProperties) {
+            p.Delete();
+        }
+        idProperties.clear();
+
+        if (pixelData != null) {
+            pixelData.Delete();
+            pixelData = null;
+        }
+
+        buffer = null;
+        actors = new vtkActor[0];
+        ids = new int[0];
+        width = 0;
+        height = 0;
+        version = -1;
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import vtk.vtkActor;
+import vtk.vtkAlgorithmOutput;
+import vtk.vtkDoubleArray;
+import vtk.vtkGlyph3DMapper;
+import vtk.vtkPoints;
+import vtk.vtkPolyData;
+import vtk.vtkUnsignedCharArray;
+
+/**
+ * Renders many instances of one template geometry with a single actor and a
+ * {@link vtkGlyph3DMapper}. Instances are defined by primitive arrays of
+ * positions, orientations, scales and colors. Arrays can be updated in place,
+ * i.e., instances can be moved without rebuilding the actor graph and
+ * without creating Java wrapper objects per instance.
+ *
+ * <p>Example:</p>
+ * <pre>
+ * InstancedGlyphs glyphs = new InstancedGlyphs(sphere.GetOutputPort());
+ * glyphs.setPositions(positions);
+ * renderer.AddActor(glyphs.getActor());
+ * // ...
+ * glyphs.getPositions()[3 * i] += dx;
+ * glyphs.positionsChanged();
+ * </pre>
+ *
+ * <p><b>Note:</b> updates must be performed while holding the render lock,
+ * e.g., inside a {@link SceneTransaction}.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class InstancedGlyphs {
+
+    private static final String ORIENTATION_ARRAY = "Orientation";
+    private static final String SCALE_ARRAY = "Scale";
+    private static final String COLOR_ARRAY = "Colors";
+    //
+    // instance data
+    private final vtkPolyData instances = new vtkPolyData();
+    private final vtkDoubleArray positionData = new vtkDoubleArray();
+    private final vtkDoubleArray orientationData = new vtkDoubleArray();
+    private final vtkDoubleArray scaleData = new vtkDoubleArray();
+    private final vtkUnsignedCharArray colorData = new vtkUnsignedCharArray();
+    private final vtkGlyph3DMapper mapper = new vtkGlyph3DMapper();
+    private final vtkActor actor = new vtkActor();
+    //
+    // java side copies of the instance data (may be modified in place)
+    private double[] positions = new double[0];
+    private double[] orientations;
+    private double[] scales;
+    private double[] colors;
+    //
+    // converted colors (reused)
+    private byte[] colorBytes = new byte[0];
+
+    /**
+     * Constructor.
+     *
+     * @param template output port of the template geometry
+     */
+    public InstancedGlyphs(vtkAlgorithmOutput template) {
+        mapper.SetSourceConnection(template);
+        init();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param template template geometry
+     */
+    public InstancedGlyphs(vtkPolyData template) {
+        mapper.SetSource(template);
+        init();
+    }
+
+    /**
+     * Initializes the instance data and the mapper.
+     */
+    private void init() {
+        positionData.SetNumberOfComponents(3);
+        orientationData.SetNumberOfComponents(3);
+        orientationData.SetName(ORIENTATION_ARRAY);
+        scaleData.SetName(SCALE_ARRAY);
+        colorData.SetNumberOfComponents(3);
+        colorData.SetName(COLOR_ARRAY);
+
+        vtkPoints points = new vtkPoints();
+        points.SetData(positionData);
+        instances.SetPoints(points);
+
+        mapper.SetInputConnection(instances.GetProducerPort());
+        mapper.SetOrientationArray(ORIENTATION_ARRAY);
+        mapper.SetOrientationModeToRotation();
+        mapper.OrientOff();
+        mapper.SetScaleArray(SCALE_ARRAY);
+        mapper.ScalingOff();
+        mapper.ScalarVisibilityOff();
+
+        actor.SetMapper(mapper);
+    }
+
+    /**
+     * Returns the actor that renders the instances.
+     *
+     * @return the actor
+     */
+    public vtkActor getActor() {
+        return actor;
+    }
+
+    /**
+     * Returns the glyph mapper.
+     *
+     * @return the glyph mapper
+     */
+    public vtkGlyph3DMapper getMapper() {
+        return mapper;
+    }
+
+    /**
+     * Returns the number of instances.
+     *
+     * @return the number of instances
+     */
+    public int getNumberOfInstances() {
+        return positions.length / 3;
+    }
+
+    /**
+     * Defines the instance positions. The number of instances is defined by
+     * this array. Orientation, scale and color arrays that do not match the
+     * new number of instances are disabled.
+     *
+     * @param positions positions (<code>x, y, z</code> per instance)
+     */
+    public void setPositions(double[] positions) {
+        if (positions.length % 3 != 0) {
+            throw new IllegalArgumentException(
+                    "Number of position values must be a multiple of 3: "
+                    + positions.length);
+        }
+
+        boolean resized = positions.length != this.positions.length;
+
+        this.positions = positions;
+        positionsChanged();
+
+        if (resized) {
+            if (orientations != null
+                    && orientations.length != positions.length) {
+                setOrientations(null);
+            }
+            // the layout of the scales (1 or 3 per instance) must still match
+            if (scales != null && scales.length
+                    != positions.length / 3 * scaleData.GetNumberOfComponents()) {
+                setScales(null);
+            }
+            if (colors != null && colors.length != positions.length) {
+                setColors(null);
+            }
+        }
+    }
+
+    /**
+     * Returns the instance positions. The returned array may be modified in
+     * place. Changes become visible after calling
+     * {@link #positionsChanged() }.
+     *
+     * @return the instance positions
+     */
+    public double[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * Indicates that the instance positions have been modified.
+     */
+    public void positionsChanged() {
+        positionData.SetJavaArray(positions);
+        positionData.Modified();
+        instances.GetPoints().Modified();
+        instances.Modified();
+    }
+
+    /**
+     * Defines the instance orientations (rotation angles in degrees around
+     * the x, y and z axes, applied in the order z, x, y like
+     * {@link vtkActor#SetOrientation(double, double, double) }).
+     *
+     * @param orientations orientations (3 values per instance) or
+     * <code>null</code> to disable orientation
+     */
+    public void setOrientations(double[] orientations) {
+        if (orientations != null) {
+            checkLength(orientations, 3 * getNumberOfInstances(),
+                    "orientations");
+            instances.GetPointData().AddArray(orientationData);
+            mapper.OrientOn();
+        } else {
+            instances.GetPointData().RemoveArray(ORIENTATION_ARRAY);
+            mapper.OrientOff();
+        }
+
+        this.orientations = orientations;
+        orientationsChanged();
+    }
+
+    /**
+     * Returns the instance orientations. The returned array may be modified
+     * in place. Changes become visible after calling
+     * {@link #orientationsChanged() }.
+     *
+     * @return the instance orientations or <code>null</code> if orientation
+     * is disabled
+     */
+    public double[] getOrientations() {
+        return orientations;
+    }
+
+    /**
+     * Indicates that the instance orientations have been modified.
+     */
+    public void orientationsChanged() {
+        if (orientations != null) {
+            orientationData.SetJavaArray(orientations);
+            orientationData.Modified();
+        }
+        instances.Modified();
+    }
+
+    /**
+     * Defines the instance scales. Either one uniform scale or three scale
+     * factors (x, y and z) per instance can be specified.
+     *
+     * @param scales scales (1 or 3 values per instance) or <code>null</code>
+     * to disable scaling
+     */
+    public void setScales(double[] scales) {
+        if (scales != null) {
+            int n = getNumberOfInstances();
+
+            if (scales.length == n) {
+                scaleData.SetNumberOfComponents(1);
+                mapper.SetScaleModeToScaleByMagnitude();
+            } else if (scales.length == 3 * n) {
+                scaleData.SetNumberOfComponents(3);
+                mapper.SetScaleModeToScaleByVectorComponents();
+            } else {
+                throw new IllegalArgumentException(
+                        "Number of scales must be either " + n + " or "
+                        + 3 * n + ": " + scales.length);
+            }
+
+            instances.GetPointData().AddArray(scaleData);
+            mapper.ScalingOn();
+        } else {
+            instances.GetPointData().RemoveArray(SCALE_ARRAY);
+            mapper.ScalingOff();
+        }
+
+        this.scales = scales;
+        scalesChanged();
+    }
+
+    /**
+     * Returns the instance scales. The returned array may be modified in
+     * place. Changes become visible after calling {@link #scalesChanged() }.
+     *
+     * @return the instance scales or <code>null</code> if scaling is disabled
+     */
+    public double[] getScales() {
+        return scales;
+    }
+
+    /**
+     * Indicates that the instance scales have been modified.
+     */
+    public void scalesChanged() {
+        if (scales != null) {
+            scaleData.SetJavaArray(scales);
+            scaleData.Modified();
+        }
+        instances.Modified();
+    }
+
+    /**
+     * Defines the instance colors. If no colors are specified, the color of
+     * the actor property is used.
+     *
+     * @param colors colors (<code>r, g, b</code> in the range
+     * <code>[0,1]</code> per instance) or <code>null</code> to disable
+     * instance colors
+     */
+    public void setColors(double[] colors) {
+        if (colors != null) {
+            checkLength(colors, 3 * getNumberOfInstances(), "colors");
+            instances.GetPointData().SetScalars(colorData);
+            mapper.ScalarVisibilityOn();
+        } else {
+            instances.GetPointData().RemoveArray(COLOR_ARRAY);
+            mapper.ScalarVisibilityOff();
+        }
+
+        this.colors = colors;
+        colorsChanged();
+    }
+
+    /**
+     * Returns the instance colors. The returned array may be modified in
+     * place. Changes become visible after calling {@link #colorsChanged() }.
+     *
+     * @return the instance colors or <code>null</code> if instance colors
+     * are disabled
+     */
+    public double[] getColors() {
+        return colors;
+    }
+
+    /**
+     * Indicates that the instance colors have been modified.
+     */
+    public void colorsChanged() {
+        if (colors != null) {
+            if (colorBytes.length != colors.length) {
+                colorBytes = new byte[colors.length];
+            }
+
+            for (int i = 0; i < colors.length; i++) {
+                double c = Math.max(0, Math.min(1, colors[i]));
+                colorBytes[i] = (byte) Math.round(c * 255);
+            }
+
+            colorData.SetJavaArray(colorBytes);
+            colorData.Modified();
+        }
+        instances.Modified();
+    }
+
+    /**
+     * Checks the length of the specified array.
+     *
+     * @param a array to check
+     * @param length expected length
+     * @param name name of the array (used for the error message)
+     */
+    private static void checkLength(double[] a, int length, String name) {
+        if (a.length != length) {
+            throw new IllegalArgumentException("Number of " + name
+                    + " values must be " + length + ": " + a.length);
+        }
+    }
+
+    /**
+     * Releases the vtk objects of this instance set.
+     */
+    public void dispose() {
+        actor.Delete();
+        mapper.Delete();
+        instances.Delete();
+        positionData.Delete();
+        orientationData.Delete();
+        scaleData.Delete();
+        colorData.Delete();
+    }
+}
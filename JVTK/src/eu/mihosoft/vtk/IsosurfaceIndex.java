@@ -0,0 +1,444 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import vtk.vtkImageData;
+import vtk.vtkPolyData;
+
+/**
+ * Span space index for fast isosurface extraction. The index is built once
+ * per image. It classifies the cells by the minimum and maximum of their
+ * scalars. For a new iso value only the cells whose range contains the value
+ * are processed (see {@link MarchingCubes}). Thus, changing the iso value
+ * (e.g. via a slider) is fast even for large images.
+ *
+ * <p>The span space (minimum, maximum) is divided into a lattice of buckets.
+ * Cells are sorted by their bucket. For an iso value, all cells of buckets
+ * whose minimum range lies completely below and whose maximum range lies
+ * completely above the value are active without further tests. Only cells
+ * in the buckets of the value have to be tested.</p>
+ *
+ * <p>The output can be used like the output of any poly data source. It is
+ * updated when the iso value is changed:</p>
+ * <pre>
+ * sample.Update();
+ * IsosurfaceIndex index = new IsosurfaceIndex(sample.GetOutput());
+ * mapper.SetInput(index.getOutput());
+ * ...
+ * // e.g. in a slider listener (on the event dispatch thread)
+ * index.setValue(slider.getValue() / 100.0);
+ * panel.contentChanged();
+ * </pre>
+ *
+ * <p><b>Note:</b> the scalars of the image are copied when the index is
+ * built. Later changes of the image are not considered.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class IsosurfaceIndex {
+
+    //
+    // number of buckets per span space axis
+    private static final int NUMBER_OF_BUCKETS = 64;
+    //
+    // minimum number of active cells per task
+    private static final int MIN_CELLS_PER_TASK = 4096;
+    private final float[] scalars;
+    private final int[] dims;
+    private final double[] origin;
+    private final double[] spacing;
+    private final String scalarName;
+    //
+    // number of cells per axis
+    private final int cx;
+    private final int cy;
+    private final int cz;
+    //
+    // scalar range of the image
+    private float rangeMin = Float.MAX_VALUE;
+    private float rangeMax = -Float.MAX_VALUE;
+    //
+    // cell ids sorted by bucket
+    private int[] cellIds;
+    //
+    // first cell of each bucket (index = minBucket * NUMBER_OF_BUCKETS +
+    // maxBucket)
+    private final int[] bucketOffsets =
+            new int[NUMBER_OF_BUCKETS * NUMBER_OF_BUCKETS + 1];
+    //
+    // pooled vtk arrays of the output
+    private final MeshBuilder builder = new MeshBuilder();
+    private double value = Double.NaN;
+    private boolean computeNormals = true;
+    private int numberOfActiveCells;
+    //
+    // duration of the last extraction (in nanoseconds)
+    private long extractionTime;
+
+    /**
+     * Constructor. Builds the index of the specified image. The image must
+     * be up to date and must have single component point scalars.
+     *
+     * @param image image
+     */
+    public IsosurfaceIndex(vtkImageData image) {
+        this.scalars = ParallelContourFilter.getScalars(image);
+        this.dims = image.GetDimensions();
+        this.origin = ParallelContourFilter.getOrigin(image);
+        this.spacing = image.GetSpacing();
+        this.scalarName = image.GetPointData().GetScalars().GetName();
+
+        this.cx = Math.max(0, dims[0] - 1);
+        this.cy = Math.max(0, dims[1] - 1);
+        this.cz = Math.max(0, dims[2] - 1);
+
+        build();
+    }
+
+    /**
+     * Builds the index.
+     */
+    private void build() {
+
+        for (float s : scalars) {
+            rangeMin = Math.min(rangeMin, s);
+            rangeMax = Math.max(rangeMax, s);
+        }
+
+        // bucket of each cell (computed in parallel, one task per layer
+        // range)
+        final int[] buckets = new int[cx * cy * cz];
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        int numberOfTasks = Math.max(1,
+                Math.min(cz, 4 * WorkerPool.getNumberOfThreads()));
+
+        for (int t = 0; t < numberOfTasks; t++) {
+            final int kMin = t * cz / numberOfTasks;
+            final int kMax = (t + 1) * cz / numberOfTasks;
+
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int k = kMin; k < kMax; k++) {
+                        for (int j = 0; j < cy; j++) {
+                            for (int i = 0; i < cx; i++) {
+                                int id = i + cx * (j + cy * k);
+                                buckets[id] = getBucket(i, j, k);
+                            }
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        invokeAll(tasks);
+
+        // counting sort
+        for (int b : buckets) {
+            bucketOffsets[b + 1]++;
+        }
+
+        for (int b = 0; b < bucketOffsets.length - 1; b++) {
+            bucketOffsets[b + 1] += bucketOffsets[b];
+        }
+
+        int[] positions = Arrays.copyOf(bucketOffsets, bucketOffsets.length);
+        cellIds = new int[buckets.length];
+
+        for (int id = 0; id < buckets.length; id++) {
+            cellIds[positions[buckets[id]]++] = id;
+        }
+    }
+
+    /**
+     * Returns the bucket of the specified cell.
+     */
+    private int getBucket(int i, int j, int k) {
+        int p0 = i + dims[0] * (j + dims[1] * k);
+        int dx = 1;
+        int dy = dims[0];
+        int dz = dims[0] * dims[1];
+
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+
+        for (int c = 0; c < 8; c++) {
+            float s = scalars[p0 + (c & 1) * dx + ((c >> 1) & 1) * dy
+                    + ((c >> 2) & 1) * dz];
+            min = Math.min(min, s);
+            max = Math.max(max, s);
+        }
+
+        return bucket(min) * NUMBER_OF_BUCKETS + bucket(max);
+    }
+
+    /**
+     * Returns the bucket of the specified scalar value (monotonic).
+     */
+    private int bucket(double s) {
+        if (rangeMax <= rangeMin) {
+            return 0;
+        }
+
+        int b = (int) ((s - rangeMin) / (rangeMax - rangeMin)
+                * NUMBER_OF_BUCKETS);
+
+        return Math.max(0, Math.min(NUMBER_OF_BUCKETS - 1, b));
+    }
+
+    /**
+     * Determines whether the range of the specified cell contains the
+     * specified value.
+     */
+    private boolean isActive(int id, float v) {
+        int i = id % cx;
+        int j = (id / cx) % cy;
+        int k = id / (cx * cy);
+        int p0 = i + dims[0] * (j + dims[1] * k);
+        int dy = dims[0];
+        int dz = dims[0] * dims[1];
+
+        boolean below = false;
+        boolean above = false;
+
+        for (int c = 0; c < 8; c++) {
+            float s = scalars[p0 + (c & 1) + ((c >> 1) & 1) * dy
+                    + ((c >> 2) & 1) * dz];
+            below |= s <= v;
+            above |= s >= v;
+        }
+
+        return below && above;
+    }
+
+    /**
+     * Returns the ids of all cells whose range contains the specified value.
+     */
+    private int[] getActiveCells(float v) {
+
+        if (cellIds.length == 0 || v < rangeMin || v > rangeMax) {
+            return new int[0];
+        }
+
+        int b = bucket(v);
+
+        // number of active cells is unknown in advance (upper bound)
+        int capacity = 0;
+
+        for (int minBucket = 0; minBucket <= b; minBucket++) {
+            capacity += bucketOffsets[minBucket * NUMBER_OF_BUCKETS
+                    + NUMBER_OF_BUCKETS] - bucketOffsets[minBucket
+                    * NUMBER_OF_BUCKETS + b];
+        }
+
+        int[] result = new int[capacity];
+        int n = 0;
+
+        for (int minBucket = 0; minBucket <= b; minBucket++) {
+            for (int maxBucket = b; maxBucket < NUMBER_OF_BUCKETS;
+                    maxBucket++) {
+
+                int bucket = minBucket * NUMBER_OF_BUCKETS + maxBucket;
+                int start = bucketOffsets[bucket];
+                int end = bucketOffsets[bucket + 1];
+
+                if (minBucket < b && maxBucket > b) {
+                    // all cells of this bucket are active
+                    System.arraycopy(cellIds, start, result, n, end - start);
+                    n += end - start;
+                } else {
+                    for (int c = start; c < end; c++) {
+                        if (isActive(cellIds[c], v)) {
+                            result[n++] = cellIds[c];
+                        }
+                    }
+                }
+            }
+        }
+
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Defines the iso value and updates the output. Only the active cells
+     * are processed (in parallel).
+     *
+     * <p><b>Note:</b> this method modifies the output. It must be called
+     * from the thread that renders the output (or inside a scene
+     * transaction, see
+     * {@link VTKJPanel#update(eu.mihosoft.vtk.SceneTransaction) }).</p>
+     *
+     * @param value iso value
+     */
+    public void setValue(double value) {
+
+        long start = System.nanoTime();
+
+        final float v = (float) value;
+        final int[] active = getActiveCells(v);
+        final float[] values = {v};
+
+        int numberOfTasks = Math.max(1, Math.min(
+                4 * WorkerPool.getNumberOfThreads(),
+                active.length / MIN_CELLS_PER_TASK));
+
+        final List<MarchingCubes> parts = new ArrayList<MarchingCubes>();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+        for (int t = 0; t < numberOfTasks; t++) {
+            final int first = t * active.length / numberOfTasks;
+            final int last = (t + 1) * active.length / numberOfTasks;
+
+            // arbitrary cells, i.e., all vertices may be shared
+            final MarchingCubes part = new MarchingCubes(scalars, dims,
+                    origin, spacing, values, computeNormals, -1, -1);
+            parts.add(part);
+
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int c = first; c < last; c++) {
+                        int id = active[c];
+                        part.contourCell(id % cx, (id / cx) % cy,
+                                id / (cx * cy));
+                    }
+                    return null;
+                }
+            });
+        }
+
+        invokeAll(tasks);
+
+        ParallelContourFilter.toPolyData(
+                MarchingCubes.merge(parts), builder, scalarName, true);
+
+        this.value = value;
+        this.numberOfActiveCells = active.length;
+        this.extractionTime = System.nanoTime() - start;
+    }
+
+    /**
+     * Executes the specified tasks via the worker pool.
+     */
+    private static void invokeAll(List<Callable<Void>> tasks) {
+        try {
+            for (Future<Void> f : WorkerPool.getExecutor().invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * Returns the output. The output object does not change, i.e., it can
+     * be used as input of a mapper.
+     *
+     * @return the isosurface
+     */
+    public vtkPolyData getOutput() {
+        return builder.getOutput();
+    }
+
+    /**
+     * Returns the current iso value.
+     *
+     * @return the current iso value (<code>NaN</code> if no value has been
+     * defined)
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the scalar range of the image.
+     *
+     * @return the scalar range (min, max)
+     */
+    public double[] getRange() {
+        return new double[]{rangeMin, rangeMax};
+    }
+
+    /**
+     * Defines whether to compute normals (enabled by default). Takes effect
+     * on the next call of {@link #setValue(double) }.
+     *
+     * @param computeNormals the state to set
+     */
+    public void setComputeNormals(boolean computeNormals) {
+        this.computeNormals = computeNormals;
+    }
+
+    /**
+     * Indicates whether normals are computed.
+     *
+     * @return <code>true</code> if normals are computed;
+     * <code>false</code> otherwise
+     */
+    public boolean isComputeNormals() {
+        return computeNormals;
+    }
+
+    /**
+     * Returns the number of cells of the image.
+     *
+     * @return the number of cells
+     */
+    public int getNumberOfCells() {
+        return cellIds.length;
+    }
+
+    /**
+     * Returns the number of cells that were processed for the current iso
+     * value.
+     *
+     * @return the number of active cells
+     */
+    public int getNumberOfActiveCells() {
+        return numberOfActiveCells;
+    }
+
+    /**
+     * Returns the duration of the last extraction.
+     *
+     * @return the duration of the last extraction (in seconds)
+     */
+    public double getExtractionTime() {
+        return extractionTime / 1e9;
+    }
+}
@@ -0,0 +1,679 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import vtk.vtkActor;
+import vtk.vtkCellArray;
+import vtk.vtkGenericRenderWindowInteractor;
+import vtk.vtkMapper;
+import vtk.vtkMaskPoints;
+import vtk.vtkPolyData;
+import vtk.vtkPolyDataAlgorithm;
+import vtk.vtkPolyDataMapper;
+import vtk.vtkQuadricClustering;
+import vtk.vtkQuadricDecimation;
+import vtk.vtkTriangleFilter;
+
+/**
+ * Generates level of detail (LOD) representations of registered actors and
+ * switches to them during interaction. Decimated and point cloud
+ * representations are generated by the worker pool. While the user drags
+ * the mouse, registered actors are rendered with the decimated
+ * representation (or with point clouds if rendering is still too slow).
+ * Full detail is restored when the mouse button is released.
+ *
+ * <p>Generated representations are kept in a cache whose size is bounded
+ * (see {@link #setCacheSize(long) }). Actors that share the same input
+ * geometry share the cached representations. If a representation has been
+ * evicted, it is regenerated on demand.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class LODManager {
+
+    /**
+     * Level of detail.
+     */
+    public static enum Level {
+
+        /**
+         * Full detail (original mapper).
+         */
+        FULL,
+        /**
+         * Decimated surface.
+         */
+        DECIMATED,
+        /**
+         * Point cloud.
+         */
+        POINTS
+    }
+    private final VTKCanvas panel;
+    private final vtkGenericRenderWindowInteractor iren;
+    //
+    // observer tags (used to remove the observers)
+    private final List<Integer> observers = new ArrayList<Integer>();
+    //
+    // registered actors
+    private final Map<vtkActor, Entry> entries =
+            new IdentityHashMap<vtkActor, Entry>();
+    //
+    // generated representations, least recently used first
+    private final Map<Key, LOD> cache =
+            new LinkedHashMap<Key, LOD>(16, 0.75f, true);
+    //
+    // representations that are currently generated
+    private final Map<Key, Future<?>> pending =
+            new HashMap<Key, Future<?>>();
+    //
+    // maximum size of the cache (in bytes)
+    private long cacheSize = 256L * 1024 * 1024;
+    //
+    // current size of the cache (in bytes)
+    private long cacheUsage;
+    //
+    // fraction of cells to remove for the decimated representation
+    private double targetReduction = 0.9;
+    //
+    // maximum number of points of the point cloud representation
+    private int maxPoints = 20000;
+    //
+    // meshes with more cells are simplified via clustering
+    private int clusteringThreshold = 500000;
+    //
+    // maximum render time during interaction before point clouds are used
+    // (in seconds)
+    private double maxInteractiveRenderTime = 1.0 / 15;
+    //
+    // current level
+    private Level level = Level.FULL;
+    //
+    // level used during interaction
+    private Level interactiveLevel = Level.DECIMATED;
+    //
+    // indicates whether to choose the interactive level automatically
+    private boolean autoLevel = true;
+    //
+    // indicates whether this manager has been disposed
+    private boolean disposed;
+
+    /**
+     * Constructor. Switches representations when a mouse button is pressed
+     * or released in the specified panel.
+     *
+     * @param panel panel
+     */
+    public LODManager(VTKCanvas panel) {
+        this.panel = panel;
+        this.iren = panel.getRenderWindowInteractor();
+
+        String[] start = {"LeftButtonPressEvent", "MiddleButtonPressEvent",
+            "RightButtonPressEvent"};
+        String[] end = {"LeftButtonReleaseEvent", "MiddleButtonReleaseEvent",
+            "RightButtonReleaseEvent"};
+
+        for (String e : start) {
+            observers.add(iren.AddObserver(e, this, "startInteraction"));
+        }
+
+        for (String e : end) {
+            observers.add(iren.AddObserver(e, this, "endInteraction"));
+        }
+    }
+
+    /**
+     * Registers the specified actor. Its LOD representations are generated
+     * in the background. Only actors with a {@link vtkPolyDataMapper} are
+     * supported.
+     *
+     * <p><b>Note:</b> must be called while holding the render lock.</p>
+     *
+     * @param actor actor to register
+     */
+    public synchronized void register(vtkActor actor) {
+        if (entries.containsKey(actor)) {
+            return;
+        }
+
+        vtkMapper m = actor.GetMapper();
+
+        if (!(m instanceof vtkPolyDataMapper)
+                || ((vtkPolyDataMapper) m).GetInput() == null) {
+            throw new IllegalArgumentException(
+                    "Actor must have a vtkPolyDataMapper with input.");
+        }
+
+        vtkPolyDataMapper lodMapper = new vtkPolyDataMapper();
+
+        // scalar visibility, lookup table, scalar range etc.
+        lodMapper.ShallowCopy(m);
+
+        Entry entry = new Entry(actor, m, lodMapper);
+        entries.put(actor, entry);
+
+        generate(entry);
+    }
+
+    /**
+     * Unregisters the specified actor and restores its original mapper.
+     *
+     * @param actor actor to unregister
+     */
+    public synchronized void unregister(vtkActor actor) {
+        Entry entry = entries.remove(actor);
+
+        if (entry != null) {
+            actor.SetMapper(entry.fullMapper);
+            entry.lodMapper.Delete();
+        }
+    }
+
+    /**
+     * Returns the key of the current input geometry of the specified entry.
+     */
+    private static Key key(Entry entry) {
+        vtkPolyData input = ((vtkPolyDataMapper) entry.fullMapper).GetInput();
+        return new Key(input, input.GetMTime());
+    }
+
+    /**
+     * Generates the representations of the specified entry if they are
+     * neither cached nor pending.
+     *
+     * <p><b>Note:</b> must be called while holding the render lock.</p>
+     */
+    private void generate(Entry entry) {
+        final Key key = key(entry);
+
+        if (disposed || cache.containsKey(key) || pending.containsKey(key)) {
+            return;
+        }
+
+        // snapshot. the cell arrays are copied since traversing them changes
+        // their state. points and attributes are only read and are shared
+        final vtkPolyData input = new vtkPolyData();
+        input.SetPoints(key.input.GetPoints());
+        input.SetVerts(copyCells(key.input.GetVerts()));
+        input.SetLines(copyCells(key.input.GetLines()));
+        input.SetPolys(copyCells(key.input.GetPolys()));
+        input.SetStrips(copyCells(key.input.GetStrips()));
+        input.GetPointData().PassData(key.input.GetPointData());
+        input.GetCellData().PassData(key.input.GetCellData());
+
+        final double reduction = targetReduction;
+        final int points = maxPoints;
+        final int threshold = clusteringThreshold;
+
+        Future<?> f = WorkerPool.getExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                LOD lod = createLOD(input, reduction, points, threshold);
+                input.Delete();
+                added(key, lod);
+            }
+        });
+
+        pending.put(key, f);
+    }
+
+    /**
+     * Returns a deep copy of the specified cell array.
+     */
+    private static vtkCellArray copyCells(vtkCellArray cells) {
+        vtkCellArray copy = new vtkCellArray();
+        copy.DeepCopy(cells);
+        return copy;
+    }
+
+    /**
+     * Creates the representations of the specified geometry (executed by the
+     * worker pool).
+     */
+    private static LOD createLOD(vtkPolyData input,
+            double reduction, int maxPoints, int clusteringThreshold) {
+
+        vtkPolyDataAlgorithm simplifier;
+
+        int numberOfCells = input.GetNumberOfCells();
+
+        if (numberOfCells > clusteringThreshold) {
+            // linear time, suitable for very large meshes. a surface with
+            // n divisions per axis has roughly 2 * n * n triangles
+            int targetCells = (int) (numberOfCells * (1 - reduction));
+            int divisions = Math.max(8,
+                    (int) Math.ceil(Math.sqrt(targetCells / 2.0)));
+
+            vtkQuadricClustering clustering = new vtkQuadricClustering();
+            clustering.SetNumberOfDivisions(divisions, divisions, divisions);
+            clustering.SetInput(input);
+            simplifier = clustering;
+        } else {
+            vtkTriangleFilter triangles = new vtkTriangleFilter();
+            triangles.SetInput(input);
+
+            vtkQuadricDecimation decimation = new vtkQuadricDecimation();
+            decimation.SetTargetReduction(reduction);
+            decimation.SetInputConnection(triangles.GetOutputPort());
+            simplifier = decimation;
+        }
+
+        simplifier.Update();
+
+        vtkPolyData decimated = new vtkPolyData();
+        decimated.ShallowCopy(simplifier.GetOutput());
+        simplifier.Delete();
+
+        vtkMaskPoints mask = new vtkMaskPoints();
+        mask.SetInput(input);
+        mask.SetOnRatio(Math.max(1, input.GetNumberOfPoints() / maxPoints));
+        mask.SetMaximumNumberOfPoints(maxPoints);
+        mask.RandomModeOn();
+        mask.SetGenerateVertices(1);
+        mask.SetSingleVertexPerCell(1);
+        mask.Update();
+
+        vtkPolyData points = new vtkPolyData();
+        points.ShallowCopy(mask.GetOutput());
+        mask.Delete();
+
+        return new LOD(decimated, points);
+    }
+
+    /**
+     * Adds generated representations to the cache.
+     */
+    private synchronized void added(Key key, LOD lod) {
+
+        // running generations are not stopped by dispose()
+        if (disposed) {
+            lod.dispose();
+            return;
+        }
+
+        pending.remove(key);
+
+        cache.put(key, lod);
+        cacheUsage += lod.bytes;
+
+        evict();
+    }
+
+    /**
+     * Removes the least recently used representations until the cache size
+     * is not exceeded.
+     */
+    private void evict() {
+        Iterator<Map.Entry<Key, LOD>> it = cache.entrySet().iterator();
+
+        while (cacheUsage > cacheSize && it.hasNext()) {
+            LOD lod = it.next().getValue();
+            it.remove();
+            cacheUsage -= lod.bytes;
+            lod.dispose();
+        }
+    }
+
+    /**
+     * Switches the registered actors to the interactive representation. This
+     * method is called when a mouse button is pressed.
+     */
+    public void startInteraction() {
+        setLevel(interactiveLevel);
+    }
+
+    /**
+     * Restores full detail and renders. This method is called when a mouse
+     * button is released.
+     */
+    public void endInteraction() {
+        if (getLevel() == Level.FULL) {
+            return;
+        }
+
+        // render time of the last interactive frame
+        double renderTime = panel.GetRenderer().GetLastRenderTimeInSeconds();
+
+        synchronized (this) {
+            if (autoLevel && level == Level.DECIMATED
+                    && renderTime > maxInteractiveRenderTime) {
+                // even the decimated representation is too slow
+                interactiveLevel = Level.POINTS;
+            } else if (autoLevel && level == Level.POINTS
+                    && renderTime < maxInteractiveRenderTime / 4) {
+                interactiveLevel = Level.DECIMATED;
+            }
+        }
+
+        setLevel(Level.FULL);
+
+        panel.GetRenderWindow().Render();
+    }
+
+    /**
+     * Switches all registered actors to the specified level. Actors whose
+     * representations are not available yet keep full detail.
+     *
+     * <p><b>Note:</b> must be called while holding the render lock.</p>
+     *
+     * @param l level to set
+     */
+    public synchronized void setLevel(Level l) {
+        for (Entry entry : entries.values()) {
+
+            LOD lod = null;
+
+            if (l != Level.FULL) {
+                lod = cache.get(key(entry));
+
+                if (lod == null) {
+                    // evicted or input changed
+                    generate(entry);
+                }
+            }
+
+            if (lod == null) {
+                entry.actor.SetMapper(entry.fullMapper);
+            } else {
+                entry.lodMapper.SetInput(
+                        l == Level.DECIMATED ? lod.decimated : lod.points);
+                entry.actor.SetMapper(entry.lodMapper);
+            }
+        }
+
+        level = l;
+    }
+
+    /**
+     * Returns the current level.
+     *
+     * @return the current level
+     */
+    public synchronized Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Defines the level used during interaction (default is
+     * {@link Level#DECIMATED}).
+     *
+     * @param l the level to set
+     */
+    public synchronized void setInteractiveLevel(Level l) {
+        this.interactiveLevel = l;
+    }
+
+    /**
+     * Returns the level used during interaction.
+     *
+     * @return the level used during interaction
+     */
+    public synchronized Level getInteractiveLevel() {
+        return interactiveLevel;
+    }
+
+    /**
+     * Defines whether to choose the interactive level automatically (enabled
+     * by default). If enabled, point clouds are used if the decimated
+     * representation renders slower than the maximum interactive render
+     * time.
+     *
+     * @param v defines whether to choose the interactive level automatically
+     */
+    public synchronized void setAutoLevel(boolean v) {
+        this.autoLevel = v;
+    }
+
+    /**
+     * Indicates whether the interactive level is chosen automatically.
+     *
+     * @return <code>true</code> if the interactive level is chosen
+     * automatically; <code>false</code> otherwise
+     */
+    public synchronized boolean isAutoLevel() {
+        return autoLevel;
+    }
+
+    /**
+     * Defines the maximum render time during interaction (in seconds,
+     * default is <code>1/15</code>).
+     *
+     * @param t the render time to set
+     */
+    public synchronized void setMaxInteractiveRenderTime(double t) {
+        this.maxInteractiveRenderTime = t;
+    }
+
+    /**
+     * Returns the maximum render time during interaction (in seconds).
+     *
+     * @return the maximum render time during interaction
+     */
+    public synchronized double getMaxInteractiveRenderTime() {
+        return maxInteractiveRenderTime;
+    }
+
+    /**
+     * Defines the fraction of cells that shall be removed by decimation
+     * (default is <code>0.9</code>). Applies to representations that are
+     * generated after calling this method.
+     *
+     * @param reduction the target reduction to set (<code>[0,1)</code>)
+     */
+    public synchronized void setTargetReduction(double reduction) {
+        if (reduction < 0 || reduction >= 1) {
+            throw new IllegalArgumentException(
+                    "Target reduction must be in [0,1): " + reduction);
+        }
+        this.targetReduction = reduction;
+    }
+
+    /**
+     * Returns the fraction of cells that shall be removed by decimation.
+     *
+     * @return the target reduction
+     */
+    public synchronized double getTargetReduction() {
+        return targetReduction;
+    }
+
+    /**
+     * Defines the maximum number of points of point cloud representations
+     * (default is <code>20000</code>). Applies to representations that are
+     * generated after calling this method.
+     *
+     * @param n the maximum number of points to set
+     */
+    public synchronized void setMaxPoints(int n) {
+        this.maxPoints = Math.max(1, n);
+    }
+
+    /**
+     * Returns the maximum number of points of point cloud representations.
+     *
+     * @return the maximum number of points
+     */
+    public synchronized int getMaxPoints() {
+        return maxPoints;
+    }
+
+    /**
+     * Defines the number of cells above which meshes are simplified via
+     * quadric clustering instead of quadric decimation (default is
+     * <code>500000</code>). Clustering is faster but of lower quality.
+     *
+     * @param n the threshold to set
+     */
+    public synchronized void setClusteringThreshold(int n) {
+        this.clusteringThreshold = n;
+    }
+
+    /**
+     * Returns the number of cells above which meshes are simplified via
+     * quadric clustering.
+     *
+     * @return the clustering threshold
+     */
+    public synchronized int getClusteringThreshold() {
+        return clusteringThreshold;
+    }
+
+    /**
+     * Defines the maximum size of the representation cache (in bytes,
+     * default is 256 MB).
+     *
+     * @param size the cache size to set
+     */
+    public synchronized void setCacheSize(long size) {
+        this.cacheSize = size;
+        evict();
+    }
+
+    /**
+     * Returns the maximum size of the representation cache (in bytes).
+     *
+     * @return the cache size
+     */
+    public synchronized long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Returns the current size of the representation cache (in bytes).
+     *
+     * @return the current size of the representation cache
+     */
+    public synchronized long getCacheUsage() {
+        return cacheUsage;
+    }
+
+    /**
+     * Restores full detail, removes the observers and releases the cached
+     * representations. Pending generations are cancelled.
+     */
+    public synchronized void dispose() {
+        disposed = true;
+
+        for (int tag : observers) {
+            iren.RemoveObserver(tag);
+        }
+        observers.clear();
+
+        for (Future<?> f : pending.values()) {
+            f.cancel(false);
+        }
+        pending.clear();
+
+        for (vtkActor a : new ArrayList<vtkActor>(entries.keySet())) {
+            unregister(a);
+        }
+
+        for (LOD lod : cache.values()) {
+            lod.dispose();
+        }
+        cache.clear();
+        cacheUsage = 0;
+    }
+
+    /**
+     * Registered actor.
+     */
+    private static class Entry {
+
+        private final vtkActor actor;
+        private final vtkMapper fullMapper;
+        private final vtkPolyDataMapper lodMapper;
+
+        public Entry(vtkActor actor, vtkMapper fullMapper,
+                vtkPolyDataMapper lodMapper) {
+            this.actor = actor;
+            this.fullMapper = fullMapper;
+            this.lodMapper = lodMapper;
+        }
+    }
+
+    /**
+     * Cache key (input geometry compared by identity and modification time).
+     */
+    private static class Key {
+
+        private final vtkPolyData input;
+        private final int mTime;
+
+        public Key(vtkPolyData input, int mTime) {
+            this.input = input;
+            this.mTime = mTime;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return input == other.input && mTime == other.mTime;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(input) * 31 + mTime;
+        }
+    }
+
+    /**
+     * Generated representations of one geometry.
+     */
+    private static class LOD {
+
+        private final vtkPolyData decimated;
+        private final vtkPolyData points;
+        private final long bytes;
+
+        public LOD(vtkPolyData decimated, vtkPolyData points) {
+            this.decimated = decimated;
+            this.points = points;
+
+            // actual memory size is measured in kilobytes
+            this.bytes = 1024L * (decimated.GetActualMemorySize()
+                    + points.GetActualMemorySize());
+        }
+
+        void dispose() {
+            decimated.Delete();
+            points.Delete();
+        }
+    }
+}
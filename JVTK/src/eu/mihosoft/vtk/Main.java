@@ -54,6 +54,16 @@ public class Main extends JPanel implements ActionListener {
     private JPanel buttons;
     private JToggleButton slicesButton;
     private JToggleButton isoButton;
+    private vtkContourFilter contour;
+    private vtkPolyDataMapper isoMapper;
+    private int numberOfContours = 3;
+    private static final int MAX_NUMBER_OF_CONTOURS = 15;
+    //
+    // directory of the pipeline cache (the cache is disabled by default)
+    private static final String CACHE_PROPERTY_NAME = "eu.mihosoft.vtk.cache";
+    //
+    // updates the contour and cutter pipelines in the background
+    private BackgroundPipeline pipeline;
     
     // we need global reference to widgets that are not explicitly
     // added to renderer. otherwise the VTK GC will delete related memory
@@ -93,15 +103,15 @@ public class Main extends JPanel implements ActionListener {
         /*
          * contour filter - will generate isosurfaces from 3D data
          */
-        vtkContourFilter contour = new vtkContourFilter();
+        contour = new vtkContourFilter();
         contour.SetInputConnection(sample.GetOutputPort());
-        contour.GenerateValues(3, 0, 1);
+        contour.GenerateValues(numberOfContours, 0, 1);
 
         /*
-         * mapper, translates polygonal representation to graphics primitives
+         * mapper, translates polygonal representation to graphics primitives.
+         * the input is provided by the background pipeline (see below)
          */
-        vtkPolyDataMapper isoMapper = new vtkPolyDataMapper();
-        isoMapper.SetInputConnection(contour.GetOutputPort());
+        isoMapper = new vtkPolyDataMapper();
 
         /*
          * isosurface actor
@@ -141,10 +151,10 @@ public class Main extends JPanel implements ActionListener {
         lut.SetNumberOfTableValues(5);
 
         /*
-         * mapper, using our custom LUT
+         * mapper, using our custom LUT. the input is provided by the
+         * background pipeline (see below)
          */
         vtkPolyDataMapper cutMapper = new vtkPolyDataMapper();
-        cutMapper.SetInputConnection(planeCut.GetOutputPort());
         cutMapper.SetLookupTable(lut);
 
         /*
@@ -223,6 +233,35 @@ public class Main extends JPanel implements ActionListener {
 
         renWin.setOpaque(false);
 
+        /*
+         * contour and cutter are executed in the background. thus, parameter
+         * changes do not block the ui
+         */
+        pipeline = new BackgroundPipeline(renWin);
+
+        /*
+         * warm starts load the outputs from the cache (only if a cache
+         * directory has been specified). vtk does not print the implicit
+         * functions, i.e., we have to declare them
+         */
+        String cacheDirectory = System.getProperty(CACHE_PROPERTY_NAME);
+
+        if (cacheDirectory != null) {
+            try {
+                PipelineCache cache =
+                        new PipelineCache(new File(cacheDirectory));
+                cache.addDependency(sample, sphere);
+                cache.addDependency(planeCut, plane);
+                pipeline.setCache(cache);
+            } catch (IOException ex) {
+                System.err.println(
+                        "Pipeline cache disabled: " + ex.getMessage());
+            }
+        }
+
+        pipeline.submit(contour, isoMapper);
+        pipeline.submit(planeCut, cutMapper);
+
         /*
          * add the surface geometry plus the isosurface
          */
@@ -275,6 +314,7 @@ public class Main extends JPanel implements ActionListener {
         slicesButton = new JToggleButton("Slices");
         slicesButton.addActionListener(this);
 
+        JButton contoursBtn = new JButton("More Isosurfaces");
         JButton incBtn = new JButton("Increase Alpha");
         JButton decBtn = new JButton("Decrease Alpha");
 
@@ -283,9 +323,34 @@ public class Main extends JPanel implements ActionListener {
          */
         buttons.add(isoButton);
         buttons.add(slicesButton);
+        buttons.add(contoursBtn);
         buttons.add(incBtn);
         buttons.add(decBtn);
 
+        contoursBtn.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+
+                numberOfContours = Math.min(numberOfContours + 1,
+                        MAX_NUMBER_OF_CONTOURS);
+
+                // no more isosurfaces available
+                if (numberOfContours == MAX_NUMBER_OF_CONTOURS) {
+                    ((JButton) e.getSource()).setEnabled(false);
+                }
+
+                final int n = numberOfContours;
+
+                pipeline.submit(contour, isoMapper, new Runnable() {
+                    @Override
+                    public void run() {
+                        contour.GenerateValues(n, 0, 1);
+                    }
+                });
+            }
+        });
+
         incBtn.addActionListener(new ActionListener() {
 
             @Override
@@ -329,23 +394,31 @@ public class Main extends JPanel implements ActionListener {
          * cutting planes button, add or remove cutActor
          */
         if (e.getSource().equals(slicesButton)) {
-            if (slicesButton.isSelected()) {
-                renWin.getRenderer().AddActor(cutActor);
-            } else {
-                renWin.getRenderer().RemoveActor(cutActor);
-            }
-            renWin.contentChanged();
-            renWin.repaint();
+            final boolean selected = slicesButton.isSelected();
+            renWin.update(new SceneTransaction() {
+                @Override
+                public void run(vtkRenderer renderer) {
+                    if (selected) {
+                        renderer.AddActor(cutActor);
+                    } else {
+                        renderer.RemoveActor(cutActor);
+                    }
+                }
+            });
         } /*
          * isosurface button, add or remove isoActor
          */ else if (e.getSource().equals(isoButton)) {
-            if (isoButton.isSelected()) {
-                renWin.getRenderer().AddActor(isoActor);
-            } else {
-                renWin.getRenderer().RemoveActor(isoActor);
-            }
-            renWin.contentChanged();
-            renWin.repaint();
+            final boolean selected = isoButton.isSelected();
+            renWin.update(new SceneTransaction() {
+                @Override
+                public void run(vtkRenderer renderer) {
+                    if (selected) {
+                        renderer.AddActor(isoActor);
+                    } else {
+                        renderer.RemoveActor(isoActor);
+                    }
+                }
+            });
         }
     }
 
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import vtk.vtkMultiBlockDataSet;
+import vtk.vtkPolyData;
+
+/**
+ * Loads large meshes chunk by chunk via memory mapped files (see
+ * {@link MappedMeshWriter} for the file format). Each chunk is mapped, copied
+ * into reused Java buffers and transferred to vtk with one bulk copy per
+ * array (see {@link MeshBuilder}). Thus, the Java heap usage is bounded by
+ * the chunk size and does not depend on the size of the mesh. Each chunk
+ * becomes a separate poly data object; the chunks are never merged into one
+ * native array (which would double the peak memory).
+ *
+ * <p><b>Note:</b> the values are copied twice: from the mapped file into
+ * the Java buffers and from the Java buffers into native arrays (the Java
+ * wrappers cannot create native arrays from direct buffers). The
+ * connectivity is additionally converted to <code>vtkIdType</code> by vtk.
+ * The intermediate native int array is released right after the
+ * conversion. Thus, the native memory holds one copy of the mesh.</p>
+ *
+ * <p>Example:</p>
+ * <pre>
+ * MappedMeshLoader loader = new MappedMeshLoader(new File("mesh.jvtkmesh"));
+ * vtkCompositePolyDataMapper mapper = new vtkCompositePolyDataMapper();
+ * mapper.SetInputConnection(loader.load().GetProducerPort());
+ * loader.close();
+ * </pre>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class MappedMeshLoader {
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int flags;
+    private final long[] chunkOffsets;
+    //
+    // reused buffers (heap usage is bounded by the largest chunk)
+    private float[] points = new float[0];
+    private float[] normals = new float[0];
+    private float[] scalars = new float[0];
+    private int[] cells = new int[0];
+    //
+    // statistics
+    private long loadedBytes;
+    private long loadTime;
+
+    /**
+     * Constructor. Opens the specified file and reads the chunk table.
+     *
+     * @param f file to load
+     * @throws IOException if the file cannot be read or has an unsupported
+     * format
+     */
+    public MappedMeshLoader(File f) throws IOException {
+        this.file = new RandomAccessFile(f, "r");
+        this.channel = file.getChannel();
+
+        try {
+            long length = file.length();
+
+            if (length < MappedMeshWriter.HEADER_SIZE) {
+                throw new IOException("Not a mesh file: " + f);
+            }
+
+            ByteBuffer header = map(0, MappedMeshWriter.HEADER_SIZE);
+
+            byte[] magic = new byte[MappedMeshWriter.MAGIC.length];
+            header.get(magic);
+
+            if (!Arrays.equals(magic, MappedMeshWriter.MAGIC)
+                    || header.getInt() != MappedMeshWriter.VERSION) {
+                throw new IOException("Unsupported file format: " + f);
+            }
+
+            flags = header.getInt();
+
+            int numberOfChunks = header.getInt();
+            header.getInt(); // reserved
+            long tableOffset = header.getLong();
+
+            if (numberOfChunks < 0
+                    || tableOffset + 8L * numberOfChunks > length) {
+                throw new IOException("Corrupt chunk table: " + f);
+            }
+
+            chunkOffsets = new long[numberOfChunks];
+            map(tableOffset, 8L * numberOfChunks).asLongBuffer().
+                    get(chunkOffsets);
+        } catch (IOException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Maps the specified region of the file (little endian).
+     */
+    private MappedByteBuffer map(long offset, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(
+                FileChannel.MapMode.READ_ONLY, offset, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Returns the number of chunks.
+     *
+     * @return the number of chunks
+     */
+    public int getNumberOfChunks() {
+        return chunkOffsets.length;
+    }
+
+    /**
+     * Loads all chunks, one after another.
+     *
+     * @return data set with one block per chunk
+     * @throws IOException if a chunk cannot be read
+     */
+    public vtkMultiBlockDataSet load() throws IOException {
+        vtkMultiBlockDataSet result = new vtkMultiBlockDataSet();
+        result.SetNumberOfBlocks(chunkOffsets.length);
+
+        long bytes = 0;
+        long time = 0;
+
+        for (int i = 0; i < chunkOffsets.length; i++) {
+            result.SetBlock(i, loadChunk(i));
+            bytes += loadedBytes;
+            time += loadTime;
+        }
+
+        loadedBytes = bytes;
+        loadTime = time;
+
+        return result;
+    }
+
+    /**
+     * Loads the specified chunk.
+     *
+     * @param i index of the chunk
+     * @return the chunk
+     * @throws IOException if the chunk cannot be read
+     */
+    public vtkPolyData loadChunk(int i) throws IOException {
+
+        long start = System.nanoTime();
+
+        ByteBuffer chunkHeader = map(chunkOffsets[i],
+                MappedMeshWriter.CHUNK_HEADER_SIZE);
+
+        int numberOfPoints = chunkHeader.getInt();
+        int numberOfCells = chunkHeader.getInt();
+        int connectivityLength = chunkHeader.getInt();
+
+        long size = MappedMeshWriter.chunkSize(
+                numberOfPoints, connectivityLength, flags);
+
+        if (numberOfPoints < 0 || numberOfCells < 0 || connectivityLength < 0
+                || chunkOffsets[i] + size > file.length()) {
+            throw new IOException("Corrupt chunk: " + i);
+        }
+
+        ByteBuffer in = map(chunkOffsets[i], size);
+        in.position(MappedMeshWriter.CHUNK_HEADER_SIZE);
+
+        MeshBuilder builder = new MeshBuilder();
+
+        points = getFloats(in, points, 3 * numberOfPoints);
+        builder.setPoints(points);
+
+        if ((flags & MappedMeshWriter.NORMALS) != 0) {
+            normals = getFloats(in, normals, 3 * numberOfPoints);
+            builder.setPointNormals(normals);
+        }
+
+        if ((flags & MappedMeshWriter.SCALARS) != 0) {
+            scalars = getFloats(in, scalars, numberOfPoints);
+            builder.setPointScalars("Scalars", scalars, 1);
+        }
+
+        if (cells.length != connectivityLength) {
+            cells = new int[connectivityLength];
+        }
+
+        in.asIntBuffer().get(cells);
+
+        if (!isValid(cells, numberOfCells, numberOfPoints)) {
+            throw new IOException("Corrupt chunk: " + i);
+        }
+
+        builder.setPolys(cells, numberOfCells);
+
+        vtkPolyData result = builder.build();
+
+        loadedBytes = size;
+        loadTime = System.nanoTime() - start;
+
+        return result;
+    }
+
+    /**
+     * Indicates whether the specified connectivity (vtk layout) contains the
+     * specified number of cells and references existing points only.
+     */
+    private static boolean isValid(int[] cells, int numberOfCells,
+            int numberOfPoints) {
+        int n = 0;
+        int i = 0;
+
+        while (i < cells.length) {
+            int size = cells[i];
+
+            if (size < 0 || size >= cells.length - i) {
+                return false;
+            }
+
+            for (int j = i + 1; j <= i + size; j++) {
+                if (cells[j] < 0 || cells[j] >= numberOfPoints) {
+                    return false;
+                }
+            }
+
+            i += size + 1;
+            n++;
+        }
+
+        return n == numberOfCells;
+    }
+
+    /**
+     * Reads floats into the specified buffer (reallocated if it does not
+     * have the requested size).
+     */
+    private static float[] getFloats(ByteBuffer in, float[] buffer, int n) {
+        if (buffer.length != n) {
+            buffer = new float[n];
+        }
+
+        in.asFloatBuffer().get(buffer);
+        in.position(in.position() + 4 * n);
+
+        return buffer;
+    }
+
+    /**
+     * Returns the number of bytes read by the last load operation.
+     *
+     * @return the number of bytes read by the last load operation
+     */
+    public long getLoadedBytes() {
+        return loadedBytes;
+    }
+
+    /**
+     * Returns the read bandwidth of the last load operation.
+     *
+     * @return the read bandwidth (in MB/s)
+     */
+    public double getLoadRate() {
+        if (loadTime == 0) {
+            return 0;
+        }
+
+        return loadedBytes / (1024.0 * 1024.0) / (loadTime / 1e9);
+    }
+
+    /**
+     * Closes the file. Loaded chunks stay valid.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes triangle meshes in the chunked raw format of
+ * {@link MappedMeshLoader}. Meshes are written chunk by chunk, i.e., a mesh
+ * never has to be kept in memory completely. Each chunk is self-contained:
+ * it has its own points and its cells reference these points only. Points
+ * on chunk boundaries are duplicated.
+ *
+ * <p>File layout (little endian):</p>
+ * <pre>
+ * header (32 bytes):
+ *   "JVTKMESH", version (int), flags (int, 1 = normals, 2 = scalars),
+ *   number of chunks (int), reserved (int), chunk table offset (long)
+ * chunk:
+ *   number of points (int), number of cells (int),
+ *   connectivity length (int), reserved (int),
+ *   points (3 floats per point), normals (3 floats per point, optional),
+ *   scalars (1 float per point, optional), cells (ints, vtk layout)
+ * chunk table:
+ *   offset of each chunk (long)
+ * </pre>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class MappedMeshWriter {
+
+    static final byte[] MAGIC = {'J', 'V', 'T', 'K', 'M', 'E', 'S', 'H'};
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int CHUNK_HEADER_SIZE = 16;
+    static final int NORMALS = 1;
+    static final int SCALARS = 2;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int flags;
+    private final List<Long> chunkOffsets = new ArrayList<Long>();
+    private long position = HEADER_SIZE;
+
+    /**
+     * Constructor. An existing file is overwritten.
+     *
+     * @param f file to write
+     * @param normals defines whether chunks contain point normals
+     * @param scalars defines whether chunks contain point scalars
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedMeshWriter(File f, boolean normals, boolean scalars)
+            throws IOException {
+        this.file = new RandomAccessFile(f, "rw");
+        this.channel = file.getChannel();
+        this.flags = (normals ? NORMALS : 0) | (scalars ? SCALARS : 0);
+
+        file.setLength(0);
+    }
+
+    /**
+     * Appends a chunk to the mesh.
+     *
+     * @param points coordinates (x, y, z per point)
+     * @param cells cells (vtk layout, point ids refer to the points of this
+     * chunk)
+     * @param normals normals (x, y, z per point, ignored if the file does
+     * not contain normals)
+     * @param scalars scalars (one per point, ignored if the file does not
+     * contain scalars)
+     * @throws IOException if the chunk cannot be written
+     */
+    public void addChunk(float[] points, int[] cells, float[] normals,
+            float[] scalars) throws IOException {
+
+        int numberOfPoints = points.length / 3;
+        boolean hasNormals = (flags & NORMALS) != 0;
+        boolean hasScalars = (flags & SCALARS) != 0;
+
+        if (hasNormals && normals.length != 3 * numberOfPoints) {
+            throw new IllegalArgumentException(
+                    "Number of normals does not match number of points.");
+        }
+
+        if (hasScalars && scalars.length != numberOfPoints) {
+            throw new IllegalArgumentException(
+                    "Number of scalars does not match number of points.");
+        }
+
+        int numberOfCells = 0;
+
+        for (int i = 0; i < cells.length; i += cells[i] + 1) {
+            numberOfCells++;
+        }
+
+        long size = chunkSize(numberOfPoints, cells.length, flags);
+
+        // chunks are mapped by the loader
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "Chunk too large: " + size + " bytes");
+        }
+
+        MappedByteBuffer out = channel.map(
+                FileChannel.MapMode.READ_WRITE, position, size);
+        out.order(ByteOrder.LITTLE_ENDIAN);
+
+        out.putInt(numberOfPoints);
+        out.putInt(numberOfCells);
+        out.putInt(cells.length);
+        out.putInt(0);
+
+        putFloats(out, points);
+
+        if (hasNormals) {
+            putFloats(out, normals);
+        }
+
+        if (hasScalars) {
+            putFloats(out, scalars);
+        }
+
+        out.asIntBuffer().put(cells);
+
+        chunkOffsets.add(position);
+        position += size;
+    }
+
+    private static void putFloats(ByteBuffer out, float[] values) {
+        out.asFloatBuffer().put(values);
+        out.position(out.position() + 4 * values.length);
+    }
+
+    /**
+     * Returns the size of a chunk.
+     *
+     * @param numberOfPoints number of points
+     * @param connectivityLength length of the connectivity array
+     * @param flags optional arrays
+     * @return the size of the chunk (in bytes)
+     */
+    static long chunkSize(int numberOfPoints, int connectivityLength,
+            int flags) {
+        long floatsPerPoint = 3 + ((flags & NORMALS) != 0 ? 3 : 0)
+                + ((flags & SCALARS) != 0 ? 1 : 0);
+
+        return CHUNK_HEADER_SIZE + 4L * floatsPerPoint * numberOfPoints
+                + 4L * connectivityLength;
+    }
+
+    /**
+     * Writes the chunk table and the header and closes the file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void close() throws IOException {
+        try {
+            ByteBuffer table = ByteBuffer.allocate(8 * chunkOffsets.size()).
+                    order(ByteOrder.LITTLE_ENDIAN);
+
+            for (long offset : chunkOffsets) {
+                table.putLong(offset);
+            }
+
+            table.flip();
+            write(table, position);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).
+                    order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(flags);
+            header.putInt(chunkOffsets.size());
+            header.putInt(0);
+            header.putLong(position);
+            header.flip();
+            write(header, 0);
+        } finally {
+            file.close();
+        }
+    }
+
+    private void write(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+}
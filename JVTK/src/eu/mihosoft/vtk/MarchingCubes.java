@@ -0,0 +1,670 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Marching cubes isosurface extraction on regular grids. One instance
+ * extracts the surface of a set of cells (e.g. a slab of the volume) into
+ * its own buffers. Vertices are shared within an instance. The surfaces of
+ * several instances are joined via
+ * {@link #merge(java.util.List) }. Thus, instances can be processed in
+ * parallel.
+ *
+ * <p>The case table is generated from the cube faces: on ambiguous faces the
+ * corners above the iso value are always separated. Neighbouring cells
+ * therefore agree on their common face and the surface is closed. This is
+ * not the case table of <code>vtkMarchingCubes</code>, i.e., cells with
+ * ambiguous faces may be triangulated differently than by vtk. Vertices
+ * are placed on cell edges via linear interpolation (like
+ * <code>vtkContourFilter</code>). Normals are the negated, interpolated
+ * gradients of the scalar field.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+final class MarchingCubes {
+
+    //
+    // first corner and axis of the cube edges (vtk voxel order, i.e.,
+    // corner c is at (c & 1, (c >> 1) & 1, (c >> 2) & 1))
+    private static final int[] EDGE_CORNER = new int[12];
+    private static final int[] EDGE_AXIS = new int[12];
+    //
+    // triangles of the 256 cases (three edge indices per triangle)
+    private static final int[][] TRIANGLES = new int[256][];
+
+    static {
+        int[][] edgeIndex = new int[8][8];
+        int numberOfEdges = 0;
+
+        for (int c = 0; c < 8; c++) {
+            for (int axis = 0; axis < 3; axis++) {
+                if ((c & (1 << axis)) == 0) {
+                    EDGE_CORNER[numberOfEdges] = c;
+                    EDGE_AXIS[numberOfEdges] = axis;
+                    edgeIndex[c][c | (1 << axis)] = numberOfEdges;
+                    edgeIndex[c | (1 << axis)][c] = numberOfEdges;
+                    numberOfEdges++;
+                }
+            }
+        }
+
+        // faces of the cube, counterclockwise seen from outside
+        int[][] faces = {{0, 4, 6, 2}, {1, 3, 7, 5}, {0, 1, 5, 4},
+            {2, 6, 7, 3}, {0, 2, 3, 1}, {4, 5, 7, 6}};
+
+        // faces of each edge (bit mask)
+        int[] edgeFaces = new int[12];
+
+        for (int f = 0; f < faces.length; f++) {
+            for (int k = 0; k < 4; k++) {
+                edgeFaces[edgeIndex[faces[f][k]][faces[f][(k + 1) % 4]]] |=
+                        1 << f;
+            }
+        }
+
+        for (int index = 0; index < 256; index++) {
+
+            // successor of each intersected edge on the contour loops
+            int[] next = new int[12];
+            Arrays.fill(next, -1);
+
+            for (int[] f : faces) {
+                for (int k = 0; k < 4; k++) {
+
+                    // the contour enters the face on edge (k, k+1)
+                    if (isAbove(index, f[k]) || !isAbove(index, f[(k + 1) % 4])) {
+                        continue;
+                    }
+
+                    // and leaves it on the next edge (m, m+1) with corner m
+                    // above and corner m+1 below, i.e., the corners above
+                    // are separated from each other
+                    int m = (k + 1) % 4;
+
+                    while (isAbove(index, f[(m + 1) % 4])) {
+                        m = (m + 1) % 4;
+                    }
+
+                    next[edgeIndex[f[k]][f[(k + 1) % 4]]] =
+                            edgeIndex[f[m]][f[(m + 1) % 4]];
+                }
+            }
+
+            // triangulate the loops (fans)
+            int[] triangles = new int[36];
+            int numberOfTriangleIndices = 0;
+            boolean[] visited = new boolean[12];
+
+            for (int e = 0; e < 12; e++) {
+                if (next[e] < 0 || visited[e]) {
+                    continue;
+                }
+
+                int[] loop = new int[12];
+                int n = 0;
+
+                for (int current = e; !visited[current];
+                        current = next[current]) {
+                    visited[current] = true;
+                    loop[n++] = current;
+                }
+
+                int apex = fanApex(loop, n, edgeFaces);
+
+                for (int i = 1; i < n - 1; i++) {
+                    triangles[numberOfTriangleIndices++] = loop[apex];
+                    triangles[numberOfTriangleIndices++] =
+                            loop[(apex + i) % n];
+                    triangles[numberOfTriangleIndices++] =
+                            loop[(apex + i + 1) % n];
+                }
+            }
+
+            TRIANGLES[index] = Arrays.copyOf(
+                    triangles, numberOfTriangleIndices);
+        }
+    }
+
+    private final float[] scalars;
+    private final int nx;
+    private final int ny;
+    private final int nz;
+    private final double[] origin;
+    private final double[] spacing;
+    private final float[] values;
+    private final boolean computeNormals;
+    //
+    // index offsets of the cube corners
+    private final int[] cornerOffsets = new int[8];
+    //
+    // range of cell layers processed by this instance (vertices on the
+    // first and last plane may be shared with other instances). if no range
+    // is defined, all vertices may be shared
+    private final int zMin;
+    private final int zMax;
+    //
+    // vertex buffers
+    private final LongIntMap vertexIds = new LongIntMap();
+    private long[] keys = new long[1024];
+    private float[] points = new float[3 * 1024];
+    private float[] normals;
+    private float[] pointScalars = new float[1024];
+    private int numberOfPoints;
+    //
+    // triangles (three vertex ids per triangle)
+    private int[] triangles = new int[3 * 2048];
+    private int numberOfTriangleIndices;
+
+    /**
+     * Constructor.
+     *
+     * @param scalars scalars of the grid points (x varies fastest)
+     * @param dimensions number of grid points (x, y, z)
+     * @param origin location of the first grid point
+     * @param spacing distance between grid points
+     * @param values iso values
+     * @param computeNormals defines whether to compute normals
+     * @param zMin first cell layer processed by this instance (-1 if
+     * arbitrary cells are processed)
+     * @param zMax last cell layer processed by this instance (exclusive)
+     */
+    public MarchingCubes(float[] scalars, int[] dimensions,
+            double[] origin, double[] spacing, float[] values,
+            boolean computeNormals, int zMin, int zMax) {
+        this.scalars = scalars;
+        this.nx = dimensions[0];
+        this.ny = dimensions[1];
+        this.nz = dimensions[2];
+        this.origin = origin;
+        this.spacing = spacing;
+        this.values = values;
+        this.computeNormals = computeNormals;
+        this.zMin = zMin;
+        this.zMax = zMax;
+
+        if (computeNormals) {
+            normals = new float[3 * 1024];
+        }
+
+        for (int c = 0; c < 8; c++) {
+            cornerOffsets[c] = (c & 1) + ((c >> 1) & 1) * nx
+                    + ((c >> 2) & 1) * nx * ny;
+        }
+    }
+
+    /**
+     * Returns the apex of the fan triangulation of the specified loop. If
+     * possible, no diagonal of the fan lies on a cube face. Otherwise, the
+     * neighbouring cell could contain the same edge and the surface would
+     * not be manifold.
+     */
+    private static int fanApex(int[] loop, int n, int[] edgeFaces) {
+        for (int apex = 0; apex < n; apex++) {
+            boolean valid = true;
+
+            for (int i = 2; i < n - 1 && valid; i++) {
+                valid = (edgeFaces[loop[apex]]
+                        & edgeFaces[loop[(apex + i) % n]]) == 0;
+            }
+
+            if (valid) {
+                return apex;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Returns whether the specified corner is above the iso value.
+     */
+    private static boolean isAbove(int index, int corner) {
+        return (index & (1 << corner)) != 0;
+    }
+
+    /**
+     * Extracts the surface of all cells in the specified cell layers.
+     *
+     * @param kMin first layer
+     * @param kMax last layer (exclusive)
+     */
+    public void contourLayers(int kMin, int kMax) {
+        for (int k = kMin; k < kMax; k++) {
+            for (int j = 0; j < ny - 1; j++) {
+                for (int i = 0; i < nx - 1; i++) {
+                    contourCell(i, j, k);
+                }
+            }
+        }
+    }
+
+    /**
+     * Extracts the surface of the specified cell.
+     *
+     * @param i x index of the cell
+     * @param j y index of the cell
+     * @param k z index of the cell
+     */
+    public void contourCell(int i, int j, int k) {
+
+        int p0 = i + nx * (j + ny * k);
+
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+
+        for (int c = 0; c < 8; c++) {
+            float s = scalars[p0 + cornerOffsets[c]];
+            min = Math.min(min, s);
+            max = Math.max(max, s);
+        }
+
+        for (int v = 0; v < values.length; v++) {
+
+            float value = values[v];
+
+            if (value < min || value > max) {
+                continue;
+            }
+
+            int index = 0;
+
+            for (int c = 0; c < 8; c++) {
+                if (scalars[p0 + cornerOffsets[c]] >= value) {
+                    index |= 1 << c;
+                }
+            }
+
+            int[] t = TRIANGLES[index];
+
+            ensureTriangleCapacity(t.length);
+
+            for (int e : t) {
+                triangles[numberOfTriangleIndices++] =
+                        vertex(p0, i, j, k, e, v, value);
+            }
+        }
+    }
+
+    /**
+     * Returns the id of the vertex on the specified cell edge (created if
+     * necessary).
+     */
+    private int vertex(int p0, int i, int j, int k, int edge,
+            int valueIndex, float value) {
+
+        int corner = EDGE_CORNER[edge];
+        int axis = EDGE_AXIS[edge];
+        int pa = p0 + cornerOffsets[corner];
+
+        long key = (((long) valueIndex * nx * ny * nz) + pa) * 3 + axis;
+
+        int id = vertexIds.get(key);
+
+        if (id >= 0) {
+            return id;
+        }
+
+        id = numberOfPoints++;
+        vertexIds.put(key, id);
+
+        ensurePointCapacity(numberOfPoints);
+
+        int pb = pa + cornerOffsets[1 << axis];
+        float sa = scalars[pa];
+        float sb = scalars[pb];
+        double t = sb == sa ? 0.5 : (value - sa) / (double) (sb - sa);
+
+        int ia = i + (corner & 1);
+        int ja = j + ((corner >> 1) & 1);
+        int ka = k + ((corner >> 2) & 1);
+
+        keys[id] = key;
+        pointScalars[id] = value;
+        points[3 * id] = (float) (origin[0]
+                + (ia + (axis == 0 ? t : 0)) * spacing[0]);
+        points[3 * id + 1] = (float) (origin[1]
+                + (ja + (axis == 1 ? t : 0)) * spacing[1]);
+        points[3 * id + 2] = (float) (origin[2]
+                + (ka + (axis == 2 ? t : 0)) * spacing[2]);
+
+        if (computeNormals) {
+            double[] ga = gradient(ia, ja, ka);
+            double[] gb = gradient(ia + (axis == 0 ? 1 : 0),
+                    ja + (axis == 1 ? 1 : 0), ka + (axis == 2 ? 1 : 0));
+
+            double nX = -(ga[0] + t * (gb[0] - ga[0]));
+            double nY = -(ga[1] + t * (gb[1] - ga[1]));
+            double nZ = -(ga[2] + t * (gb[2] - ga[2]));
+            double length = Math.sqrt(nX * nX + nY * nY + nZ * nZ);
+
+            if (length > 0) {
+                nX /= length;
+                nY /= length;
+                nZ /= length;
+            }
+
+            normals[3 * id] = (float) nX;
+            normals[3 * id + 1] = (float) nY;
+            normals[3 * id + 2] = (float) nZ;
+        }
+
+        return id;
+    }
+
+    /**
+     * Computes the gradient at the specified grid point (central
+     * differences, one-sided at the boundary).
+     */
+    private double[] gradient(int i, int j, int k) {
+        int p = i + nx * (j + ny * k);
+
+        return new double[]{
+                    difference(p, i, nx, 1, spacing[0]),
+                    difference(p, j, ny, nx, spacing[1]),
+                    difference(p, k, nz, nx * ny, spacing[2])};
+    }
+
+    private double difference(int p, int i, int n, int stride, double h) {
+        if (n == 1) {
+            return 0;
+        } else if (i == 0) {
+            return (scalars[p + stride] - scalars[p]) / h;
+        } else if (i == n - 1) {
+            return (scalars[p] - scalars[p - stride]) / h;
+        } else {
+            return (scalars[p + stride] - scalars[p - stride]) / (2 * h);
+        }
+    }
+
+    /**
+     * Returns whether the specified vertex may be shared with other
+     * instances.
+     */
+    private boolean isShared(int id) {
+        if (zMin < 0) {
+            return true;
+        }
+
+        long pointKey = keys[id] / 3;
+        int axis = (int) (keys[id] % 3);
+        int k = (int) ((pointKey % ((long) nx * ny * nz)) / (nx * ny));
+
+        return axis != 2 && (k == zMin || k == zMax);
+    }
+
+    private void ensurePointCapacity(int n) {
+        if (n > keys.length) {
+            int capacity = Math.max(n, 2 * keys.length);
+            keys = Arrays.copyOf(keys, capacity);
+            points = Arrays.copyOf(points, 3 * capacity);
+            pointScalars = Arrays.copyOf(pointScalars, capacity);
+
+            if (computeNormals) {
+                normals = Arrays.copyOf(normals, 3 * capacity);
+            }
+        }
+    }
+
+    private void ensureTriangleCapacity(int n) {
+        if (numberOfTriangleIndices + n > triangles.length) {
+            triangles = Arrays.copyOf(triangles, Math.max(
+                    numberOfTriangleIndices + n, 2 * triangles.length));
+        }
+    }
+
+    /**
+     * Returns the number of vertices.
+     *
+     * @return the number of vertices
+     */
+    public int getNumberOfPoints() {
+        return numberOfPoints;
+    }
+
+    /**
+     * Returns the number of triangles.
+     *
+     * @return the number of triangles
+     */
+    public int getNumberOfTriangles() {
+        return numberOfTriangleIndices / 3;
+    }
+
+    /**
+     * Joins the surfaces of the specified instances. Vertices on the same
+     * edge (and for the same iso value) are joined. The joined buffers are
+     * filled by the worker pool.
+     *
+     * @param parts instances to join
+     * @return joined surface
+     */
+    public static Surface merge(List<MarchingCubes> parts) {
+
+        // global vertex ids of the shared vertices
+        LongIntMap sharedIds = new LongIntMap();
+
+        int[][] globalIds = new int[parts.size()][];
+        boolean[][] owned = new boolean[parts.size()][];
+        int numberOfPoints = 0;
+        int numberOfTriangleIndices = 0;
+        boolean computeNormals = false;
+
+        for (int p = 0; p < parts.size(); p++) {
+            MarchingCubes part = parts.get(p);
+
+            globalIds[p] = new int[part.numberOfPoints];
+            owned[p] = new boolean[part.numberOfPoints];
+
+            for (int v = 0; v < part.numberOfPoints; v++) {
+
+                int id = -1;
+
+                if (part.isShared(v)) {
+                    id = sharedIds.get(part.keys[v]);
+
+                    if (id < 0) {
+                        sharedIds.put(part.keys[v], numberOfPoints);
+                    }
+                }
+
+                if (id < 0) {
+                    id = numberOfPoints++;
+                    owned[p][v] = true;
+                }
+
+                globalIds[p][v] = id;
+            }
+
+            numberOfTriangleIndices += part.numberOfTriangleIndices;
+            computeNormals |= part.computeNormals;
+        }
+
+        final Surface result = new Surface(numberOfPoints,
+                numberOfTriangleIndices / 3, computeNormals);
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        int triangleOffset = 0;
+
+        for (int p = 0; p < parts.size(); p++) {
+            final MarchingCubes part = parts.get(p);
+            final int[] partIds = globalIds[p];
+            final boolean[] partOwned = owned[p];
+            final int offset = triangleOffset;
+
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    part.copyTo(result, partIds, partOwned, offset);
+                    return null;
+                }
+            });
+
+            triangleOffset += part.numberOfTriangleIndices;
+        }
+
+        try {
+            for (Future<Void> f : WorkerPool.getExecutor().invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+
+        return result;
+    }
+
+    /**
+     * Copies the owned vertices and the triangles of this instance to the
+     * specified surface.
+     */
+    private void copyTo(Surface s, int[] globalIds, boolean[] owned,
+            int triangleOffset) {
+
+        for (int v = 0; v < numberOfPoints; v++) {
+            if (!owned[v]) {
+                continue;
+            }
+
+            int g = globalIds[v];
+
+            System.arraycopy(points, 3 * v, s.points, 3 * g, 3);
+            s.scalars[g] = pointScalars[v];
+
+            if (computeNormals) {
+                System.arraycopy(normals, 3 * v, s.normals, 3 * g, 3);
+            }
+        }
+
+        for (int i = 0; i < numberOfTriangleIndices; i++) {
+            s.triangles[triangleOffset + i] = globalIds[triangles[i]];
+        }
+    }
+
+    /**
+     * Triangle mesh.
+     */
+    static final class Surface {
+
+        //
+        // coordinates (x, y, z per vertex)
+        final float[] points;
+        //
+        // normals (x, y, z per vertex, null if not computed)
+        final float[] normals;
+        //
+        // iso value of each vertex
+        final float[] scalars;
+        //
+        // vertex ids (three per triangle)
+        final int[] triangles;
+
+        Surface(int numberOfPoints, int numberOfTriangles,
+                boolean computeNormals) {
+            points = new float[3 * numberOfPoints];
+            normals = computeNormals ? new float[3 * numberOfPoints] : null;
+            scalars = new float[numberOfPoints];
+            triangles = new int[3 * numberOfTriangles];
+        }
+    }
+
+    /**
+     * Open addressing hash map from non-negative long keys to int values.
+     */
+    private static final class LongIntMap {
+
+        private long[] keys = new long[1024];
+        private int[] values = new int[1024];
+        private int size;
+
+        LongIntMap() {
+            Arrays.fill(keys, -1);
+        }
+
+        int get(long key) {
+            int mask = keys.length - 1;
+
+            for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                } else if (keys[i] < 0) {
+                    return -1;
+                }
+            }
+        }
+
+        void put(long key, int value) {
+            if (2 * (size + 1) > keys.length) {
+                rehash(2 * keys.length);
+            }
+
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+
+            while (keys[i] >= 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+
+            if (keys[i] < 0) {
+                size++;
+            }
+
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+
+            keys = new long[capacity];
+            values = new int[capacity];
+            Arrays.fill(keys, -1);
+            size = 0;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] >= 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import vtk.vtkCellArray;
+import vtk.vtkDataArray;
+import vtk.vtkDataSetAttributes;
+import vtk.vtkDoubleArray;
+import vtk.vtkFloatArray;
+import vtk.vtkIdTypeArray;
+import vtk.vtkIntArray;
+import vtk.vtkPoints;
+import vtk.vtkPolyData;
+
+/**
+ * Builds poly data from Java arrays. Each array is transferred to vtk with
+ * one bulk copy (instead of one native call per point or cell, e.g.
+ * <code>vtkPoints.InsertNextPoint()</code>). The vtk arrays are reused
+ * across builds, i.e., updating a mesh with arrays of the same size does not
+ * allocate native memory. The transfer bandwidth of the last build can be
+ * queried via {@link #getTransferRate() }.
+ *
+ * <p>Cells are specified in vtk layout, i.e., the number of points of a cell
+ * followed by the point ids. For triangle meshes
+ * {@link #setTriangles(int[]) } accepts three point ids per triangle.</p>
+ *
+ * <p>Example:</p>
+ * <pre>
+ * MeshBuilder builder = new MeshBuilder();
+ * mapper.SetInput(builder.getOutput());
+ * ...
+ * // for each simulation step
+ * builder.setPoints(coordinates);
+ * builder.setTriangles(triangles);
+ * builder.setPointScalars("Pressure", pressure, 1);
+ * builder.build();
+ * </pre>
+ *
+ * <p><b>Note:</b> arrays are transferred by {@link #build() }, i.e., they
+ * must not be modified between setting them and building the mesh.
+ * {@link #build() } modifies the output. It must be called from the thread
+ * that renders the output (or inside a scene transaction, see
+ * {@link VTKJPanel#update(eu.mihosoft.vtk.SceneTransaction) }).</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class MeshBuilder {
+
+    private static final int VERTS = 0;
+    private static final int LINES = 1;
+    private static final int POLYS = 2;
+    private static final int STRIPS = 3;
+    private final vtkPolyData output = new vtkPolyData();
+    private final vtkPoints points = new vtkPoints();
+    private final Attribute pointData = new Attribute();
+    private final Attribute normals = new Attribute();
+    private final Attribute pointScalars = new Attribute();
+    private final Attribute cellScalars = new Attribute();
+    //
+    // verts, lines, polys and strips
+    private final Cells[] cells = {
+        new Cells(), new Cells(), new Cells(), new Cells()};
+    //
+    // buffer for the conversion of triangles to vtk layout
+    private int[] triangleBuffer = new int[0];
+    //
+    // statistics of the last build
+    private long transferredBytes;
+    private long transferTime;
+
+    /**
+     * Defines the point coordinates (x, y, z per point).
+     *
+     * @param xyz coordinates (may be <code>null</code>)
+     */
+    public void setPoints(float[] xyz) {
+        pointData.set(null, xyz, null, 3);
+    }
+
+    /**
+     * Defines the point coordinates (x, y, z per point).
+     *
+     * @param xyz coordinates (may be <code>null</code>)
+     */
+    public void setPoints(double[] xyz) {
+        pointData.set(null, null, xyz, 3);
+    }
+
+    /**
+     * Defines the vertex cells (vtk layout).
+     *
+     * @param connectivity cells (may be <code>null</code>)
+     */
+    public void setVerts(int[] connectivity) {
+        cells[VERTS].set(connectivity);
+    }
+
+    /**
+     * Defines the line cells (vtk layout).
+     *
+     * @param connectivity cells (may be <code>null</code>)
+     */
+    public void setLines(int[] connectivity) {
+        cells[LINES].set(connectivity);
+    }
+
+    /**
+     * Defines the polygon cells (vtk layout).
+     *
+     * @param connectivity cells (may be <code>null</code>)
+     */
+    public void setPolys(int[] connectivity) {
+        cells[POLYS].set(connectivity);
+    }
+
+    /**
+     * Defines the polygon cells (vtk layout). The connectivity is not
+     * traversed to count the cells, i.e., it must have been validated by the
+     * caller.
+     *
+     * @param connectivity cells (may be <code>null</code>)
+     * @param numberOfCells number of cells
+     */
+    public void setPolys(int[] connectivity, int numberOfCells) {
+        cells[POLYS].set(connectivity, numberOfCells);
+    }
+
+    /**
+     * Defines the triangle strip cells (vtk layout).
+     *
+     * @param connectivity cells (may be <code>null</code>)
+     */
+    public void setStrips(int[] connectivity) {
+        cells[STRIPS].set(connectivity);
+    }
+
+    /**
+     * Defines the polygon cells as triangles.
+     *
+     * @param ids point ids (three per triangle)
+     */
+    public void setTriangles(int[] ids) {
+        int numberOfTriangles = ids.length / 3;
+
+        if (triangleBuffer.length != 4 * numberOfTriangles) {
+            triangleBuffer = new int[4 * numberOfTriangles];
+        }
+
+        for (int t = 0; t < numberOfTriangles; t++) {
+            triangleBuffer[4 * t] = 3;
+            triangleBuffer[4 * t + 1] = ids[3 * t];
+            triangleBuffer[4 * t + 2] = ids[3 * t + 1];
+            triangleBuffer[4 * t + 3] = ids[3 * t + 2];
+        }
+
+        cells[POLYS].set(triangleBuffer, numberOfTriangles);
+    }
+
+    /**
+     * Defines the point normals (x, y, z per point).
+     *
+     * @param values normals (may be <code>null</code>)
+     */
+    public void setPointNormals(float[] values) {
+        normals.set("Normals", values, null, 3);
+    }
+
+    /**
+     * Defines the point scalars.
+     *
+     * @param name name of the scalars
+     * @param values scalars (may be <code>null</code>)
+     * @param components number of components
+     */
+    public void setPointScalars(String name, float[] values, int components) {
+        pointScalars.set(name, values, null, components);
+    }
+
+    /**
+     * Defines the point scalars.
+     *
+     * @param name name of the scalars
+     * @param values scalars (may be <code>null</code>)
+     * @param components number of components
+     */
+    public void setPointScalars(String name, double[] values,
+            int components) {
+        pointScalars.set(name, null, values, components);
+    }
+
+    /**
+     * Defines the cell scalars.
+     *
+     * @param name name of the scalars
+     * @param values scalars (may be <code>null</code>)
+     * @param components number of components
+     */
+    public void setCellScalars(String name, float[] values, int components) {
+        cellScalars.set(name, values, null, components);
+    }
+
+    /**
+     * Defines the cell scalars.
+     *
+     * @param name name of the scalars
+     * @param values scalars (may be <code>null</code>)
+     * @param components number of components
+     */
+    public void setCellScalars(String name, double[] values,
+            int components) {
+        cellScalars.set(name, null, values, components);
+    }
+
+    /**
+     * Transfers the arrays that have been defined since the last build to
+     * vtk and updates the output.
+     *
+     * @return the output
+     */
+    public vtkPolyData build() {
+
+        long start = System.nanoTime();
+        long bytes = 0;
+
+        if (pointData.dirty) {
+            bytes += pointData.transfer();
+
+            if (pointData.array != null) {
+                points.SetData(pointData.array);
+                points.Modified();
+                output.SetPoints(points);
+            } else {
+                output.SetPoints(null);
+            }
+        }
+
+        for (int i = 0; i < cells.length; i++) {
+            if (!cells[i].dirty) {
+                continue;
+            }
+
+            bytes += cells[i].transfer();
+
+            vtkCellArray c = cells[i].data == null ? null : cells[i].cells;
+
+            switch (i) {
+                case VERTS:
+                    output.SetVerts(c);
+                    break;
+                case LINES:
+                    output.SetLines(c);
+                    break;
+                case POLYS:
+                    output.SetPolys(c);
+                    break;
+                default:
+                    output.SetStrips(c);
+            }
+        }
+
+        if (normals.dirty) {
+            vtkDataSetAttributes pd = output.GetPointData();
+            normals.remove(pd);
+            bytes += normals.transfer();
+
+            if (normals.array != null) {
+                pd.SetNormals(normals.array);
+            }
+        }
+
+        if (pointScalars.dirty) {
+            vtkDataSetAttributes pd = output.GetPointData();
+            pointScalars.remove(pd);
+            bytes += pointScalars.transfer();
+
+            if (pointScalars.array != null) {
+                pd.SetScalars(pointScalars.array);
+            }
+        }
+
+        if (cellScalars.dirty) {
+            vtkDataSetAttributes cd = output.GetCellData();
+            cellScalars.remove(cd);
+            bytes += cellScalars.transfer();
+
+            if (cellScalars.array != null) {
+                cd.SetScalars(cellScalars.array);
+            }
+        }
+
+        output.Modified();
+
+        transferredBytes = bytes;
+        transferTime = System.nanoTime() - start;
+
+        return output;
+    }
+
+    /**
+     * Returns the output. The output object does not change, i.e., it can
+     * be used as input of a mapper.
+     *
+     * @return the output
+     */
+    public vtkPolyData getOutput() {
+        return output;
+    }
+
+    /**
+     * Returns the number of bytes transferred by the last build.
+     *
+     * @return the number of bytes transferred by the last build
+     */
+    public long getTransferredBytes() {
+        return transferredBytes;
+    }
+
+    /**
+     * Returns the duration of the last build.
+     *
+     * @return the duration of the last build (in seconds)
+     */
+    public double getTransferTime() {
+        return transferTime / 1e9;
+    }
+
+    /**
+     * Returns the transfer bandwidth of the last build.
+     *
+     * @return the transfer bandwidth (in MB/s)
+     */
+    public double getTransferRate() {
+        if (transferTime == 0) {
+            return 0;
+        }
+
+        return transferredBytes / (1024.0 * 1024.0) / (transferTime / 1e9);
+    }
+
+    /**
+     * Float or double data array with pooled vtk arrays.
+     */
+    private static class Attribute {
+
+        private String name;
+        private float[] floatValues;
+        private double[] doubleValues;
+        private int components;
+        private boolean dirty;
+        //
+        // pooled vtk arrays
+        private vtkFloatArray floatArray;
+        private vtkDoubleArray doubleArray;
+        //
+        // array that is currently part of the output
+        private vtkDataArray array;
+
+        void set(String name, float[] floatValues, double[] doubleValues,
+                int components) {
+            if (components < 1) {
+                throw new IllegalArgumentException(
+                        "Number of components must be positive: "
+                        + components);
+            }
+
+            this.name = name;
+            this.floatValues = floatValues;
+            this.doubleValues = doubleValues;
+            this.components = components;
+            this.dirty = true;
+        }
+
+        /**
+         * Removes the current array from the specified attributes.
+         */
+        void remove(vtkDataSetAttributes attributes) {
+            if (array != null && array.GetName() != null) {
+                attributes.RemoveArray(array.GetName());
+            }
+        }
+
+        /**
+         * Transfers the values to the pooled vtk array.
+         *
+         * @return number of transferred bytes
+         */
+        long transfer() {
+            dirty = false;
+
+            if (floatValues != null) {
+                if (floatArray == null) {
+                    floatArray = new vtkFloatArray();
+                }
+
+                floatArray.SetNumberOfComponents(components);
+                floatArray.SetJavaArray(floatValues);
+                array = floatArray;
+            } else if (doubleValues != null) {
+                if (doubleArray == null) {
+                    doubleArray = new vtkDoubleArray();
+                }
+
+                doubleArray.SetNumberOfComponents(components);
+                doubleArray.SetJavaArray(doubleValues);
+                array = doubleArray;
+            } else {
+                array = null;
+                return 0;
+            }
+
+            // the wrapper does not accept null strings
+            if (name != null) {
+                array.SetName(name);
+            }
+
+            array.Modified();
+
+            return floatValues != null
+                    ? 4L * floatValues.length : 8L * doubleValues.length;
+        }
+    }
+
+    /**
+     * Cell connectivity with pooled vtk arrays.
+     */
+    private static class Cells {
+
+        private int[] data;
+        private int numberOfCells;
+        private boolean dirty;
+        //
+        // pooled vtk arrays (ids are converted to vtkIdType by vtk since
+        // they may be 64 bit, the int ids are released after the
+        // conversion)
+        private final vtkIntArray intIds = new vtkIntArray();
+        private final vtkIdTypeArray ids = new vtkIdTypeArray();
+        private final vtkCellArray cells = new vtkCellArray();
+
+        void set(int[] data) {
+            int n = 0;
+
+            if (data != null) {
+                for (int i = 0; i < data.length; i += data[i] + 1) {
+                    if (data[i] < 0 || data[i] >= data.length - i) {
+                        throw new IllegalArgumentException(
+                                "Invalid cell size at index " + i);
+                    }
+                    n++;
+                }
+            }
+
+            set(data, n);
+        }
+
+        void set(int[] data, int numberOfCells) {
+            this.data = data;
+            this.numberOfCells = numberOfCells;
+            this.dirty = true;
+        }
+
+        /**
+         * Transfers the connectivity to the pooled vtk arrays.
+         *
+         * @return number of transferred bytes
+         */
+        long transfer() {
+            dirty = false;
+
+            if (data == null) {
+                return 0;
+            }
+
+            intIds.SetJavaArray(data);
+            ids.DeepCopy(intIds);
+            cells.SetCells(numberOfCells, ids);
+
+            // otherwise the connectivity would be kept twice
+            intIds.Initialize();
+
+            return 4L * data.length;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.io.File;
+import vtk.*;
+
+/**
+ * Compares the construction of a triangle mesh via
+ * <code>InsertNextPoint()</code>/<code>InsertNextCell()</code> with bulk
+ * transfers (see {@link MeshBuilder}).
+ *
+ * <p>Usage: <code>MeshBuilderBenchmark [gridSize [iterations]]</code></p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class MeshBuilderBenchmark {
+
+    // no instanciation allowed
+    private MeshBuilderBenchmark() {
+        throw new AssertionError(); // not in this class either!
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args optional arguments: grid size and iterations
+     */
+    public static void main(String[] args) throws Exception {
+
+        int n = 500;
+        int iterations = 5;
+
+        if (args.length >= 1) {
+            n = Integer.parseInt(args[0]);
+        }
+
+        if (args.length >= 2) {
+            iterations = Integer.parseInt(args[1]);
+        }
+
+        SysUtil.loadLibraries(new File("natives").getAbsolutePath());
+
+        // height field on a regular grid (two triangles per quad)
+        float[] points = new float[3 * n * n];
+        float[] scalars = new float[n * n];
+        int[] triangles = new int[6 * (n - 1) * (n - 1)];
+
+        for (int j = 0; j < n; j++) {
+            for (int i = 0; i < n; i++) {
+                int p = i + n * j;
+                points[3 * p] = i;
+                points[3 * p + 1] = j;
+                points[3 * p + 2] = (float) Math.sin(0.1 * i) * j / n;
+                scalars[p] = points[3 * p + 2];
+            }
+        }
+
+        int t = 0;
+
+        for (int j = 0; j < n - 1; j++) {
+            for (int i = 0; i < n - 1; i++) {
+                int p = i + n * j;
+                triangles[t++] = p;
+                triangles[t++] = p + 1;
+                triangles[t++] = p + n + 1;
+                triangles[t++] = p;
+                triangles[t++] = p + n + 1;
+                triangles[t++] = p + n;
+            }
+        }
+
+        System.out.println(">> mesh builder benchmark: " + n * n
+                + " points, " + triangles.length / 3 + " triangles, "
+                + iterations + " iterations");
+
+        long start = System.nanoTime();
+
+        for (int it = 0; it < iterations; it++) {
+            vtkPoints vtkPoints = new vtkPoints();
+            vtkCellArray polys = new vtkCellArray();
+            vtkFloatArray vtkScalars = new vtkFloatArray();
+
+            for (int p = 0; p < n * n; p++) {
+                vtkPoints.InsertNextPoint(
+                        points[3 * p], points[3 * p + 1], points[3 * p + 2]);
+                vtkScalars.InsertNextValue(scalars[p]);
+            }
+
+            for (int i = 0; i < triangles.length; i += 3) {
+                polys.InsertNextCell(3);
+                polys.InsertCellPoint(triangles[i]);
+                polys.InsertCellPoint(triangles[i + 1]);
+                polys.InsertCellPoint(triangles[i + 2]);
+            }
+
+            vtkPolyData data = new vtkPolyData();
+            data.SetPoints(vtkPoints);
+            data.SetPolys(polys);
+            data.GetPointData().SetScalars(vtkScalars);
+        }
+
+        double loopTime = (System.nanoTime() - start) / 1e6 / iterations;
+
+        System.out.println(String.format(
+                " --> per element: %8.1f ms", loopTime));
+
+        MeshBuilder builder = new MeshBuilder();
+
+        start = System.nanoTime();
+
+        for (int it = 0; it < iterations; it++) {
+            builder.setPoints(points);
+            builder.setTriangles(triangles);
+            builder.setPointScalars("Scalars", scalars, 1);
+            builder.build();
+        }
+
+        double builderTime = (System.nanoTime() - start) / 1e6 / iterations;
+
+        System.out.println(String.format(
+                " --> bulk:        %8.1f ms (%.1f MB/s)", builderTime,
+                builder.getTransferRate()));
+
+        System.out.println(String.format(
+                " --> speedup:     %8.2fx", loopTime / builderTime));
+
+        System.out.println(" --> done.");
+
+        System.exit(0);
+    }
+}
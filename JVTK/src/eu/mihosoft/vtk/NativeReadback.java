@@ -0,0 +1,184 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Java binding of the optional native readback helper (see
+ * <code>JVTK/native</code>). The helper library is loaded either via
+ * {@link SysUtil#loadLibraries(java.lang.String) } or from the native library
+ * path. If it cannot be loaded, {@link #isAvailable() } returns
+ * <code>false</code> and callers shall fall back to the default readback.
+ *
+ * <p><b>Note:</b> all methods except {@link #isAvailable() } must be called
+ * while the OpenGL context of the render window is current, i.e., while
+ * holding the render lock and after calling
+ * {@link vtk.vtkRenderWindow#MakeCurrent() }.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+final class NativeReadback {
+
+    private static final String LIBRARY_NAME = "jvtkreadback";
+    private static final boolean available;
+
+    static {
+        try {
+            System.loadLibrary(LIBRARY_NAME);
+        } catch (UnsatisfiedLinkError ex) {
+            // the library may already have been loaded by
+            // SysUtil.loadLibraries(). we check this below.
+        }
+
+        boolean loaded;
+
+        try {
+            loaded = nativeVersion() >= 1;
+        } catch (UnsatisfiedLinkError ex) {
+            loaded = false;
+        }
+
+        available = loaded;
+    }
+
+    // no instanciation allowed
+    private NativeReadback() {
+        throw new AssertionError(); // not in this class either!
+    }
+
+    /**
+     * Indicates whether the native helper library is available.
+     *
+     * @return <code>true</code> if the library is available;
+     * <code>false</code> otherwise
+     */
+    public static boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Returns the version of the native helper library.
+     *
+     * @return version of the native helper library
+     */
+    static native int nativeVersion();
+
+    /**
+     * Reads the specified region (OpenGL coordinates) to the specified
+     * direct buffer.
+     *
+     * @param x x coordinate of the lower left corner
+     * @param y y coordinate of the lower left corner
+     * @param w width
+     * @param h height
+     * @param components number of components (3 for RGB, 4 for RGBA)
+     * @param front defines whether to read from the front buffer
+     * @param dest direct destination buffer (capacity must be at least
+     * <code>w * h * components</code>)
+     * @return <code>true</code> if pixels have been read;
+     * <code>false</code> otherwise
+     */
+    static native boolean readPixels(int x, int y, int w, int h,
+            int components, boolean front, ByteBuffer dest);
+
+    /**
+     * Reads the depth values of the specified region (OpenGL coordinates) to
+     * the specified direct buffer.
+     *
+     * @param x x coordinate of the lower left corner
+     * @param y y coordinate of the lower left corner
+     * @param w width
+     * @param h height
+     * @param dest direct destination buffer in native byte order (capacity
+     * must be at least <code>w * h</code>)
+     * @return <code>true</code> if depth values have been read;
+     * <code>false</code> otherwise
+     */
+    static native boolean readDepth(int x, int y, int w, int h,
+            FloatBuffer dest);
+
+    /**
+     * Creates a reader that uses two alternating pixel buffer objects.
+     *
+     * @return handle of the reader or <code>0</code> if pixel buffer objects
+     * are not supported by the current OpenGL context
+     */
+    static native long pboCreate();
+
+    /**
+     * Deletes the specified reader.
+     *
+     * @param handle reader handle
+     */
+    static native void pboDelete(long handle);
+
+    /**
+     * Discards all pending reads of the specified reader.
+     *
+     * @param handle reader handle
+     */
+    static native void pboReset(long handle);
+
+    /**
+     * Returns the number of pending reads (0, 1 or 2).
+     *
+     * @param handle reader handle
+     * @return number of pending reads
+     */
+    static native int pboPending(long handle);
+
+    /**
+     * Starts an asynchronous read of the specified region (OpenGL
+     * coordinates). If two reads are pending, the oldest one is dropped.
+     *
+     * @param handle reader handle
+     * @param x x coordinate of the lower left corner
+     * @param y y coordinate of the lower left corner
+     * @param w width
+     * @param h height
+     * @param components number of components (3 for RGB, 4 for RGBA)
+     * @param front defines whether to read from the front buffer
+     * @return <code>true</code> if the read has been started;
+     * <code>false</code> otherwise
+     */
+    static native boolean pboRead(long handle,
+            int x, int y, int w, int h, int components, boolean front);
+
+    /**
+     * Copies the oldest pending read to the specified array. Blocks until the
+     * transfer of this read is complete.
+     *
+     * @param handle reader handle
+     * @param dest destination array
+     * @return <code>true</code> if data has been copied; <code>false</code>
+     * otherwise
+     */
+    static native boolean pboFetch(long handle, byte[] dest);
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+/**
+ * Asynchronous double-buffered readback via pixel buffer objects. While the
+ * pixels of frame N are transferred to one buffer, the pixels of frame N-1
+ * can be fetched from the other buffer. This trades one frame of latency for
+ * throughput as reading does not stall the OpenGL pipeline.
+ *
+ * <p><b>Note:</b> all methods must be called while the OpenGL context of the
+ * render window is current (see {@link NativeReadback}).</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+class PBOReadback {
+
+    private long handle;
+    //
+    // layout of the pending reads
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private int components;
+
+    /**
+     * Constructor.
+     *
+     * @param handle native reader handle
+     */
+    private PBOReadback(long handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * Creates a new pbo readback.
+     *
+     * @return new pbo readback or <code>null</code> if pixel buffer objects
+     * are not supported
+     */
+    public static PBOReadback create() {
+        if (!NativeReadback.isAvailable()) {
+            return null;
+        }
+
+        long handle = NativeReadback.pboCreate();
+
+        if (handle == 0) {
+            return null;
+        }
+
+        return new PBOReadback(handle);
+    }
+
+    /**
+     * Starts reading the specified region of the front buffer. Pending reads
+     * with a different layout are discarded.
+     *
+     * @param x x coordinate of the lower left corner
+     * @param y y coordinate of the lower left corner
+     * @param w width
+     * @param h height
+     * @param components number of components (3 for RGB, 4 for RGBA)
+     * @return <code>true</code> if the read has been started;
+     * <code>false</code> otherwise
+     */
+    public boolean read(int x, int y, int w, int h, int components) {
+        if (handle == 0) {
+            return false;
+        }
+
+        if (x != this.x || y != this.y || w != width || h != height
+                || components != this.components) {
+            NativeReadback.pboReset(handle);
+
+            this.x = x;
+            this.y = y;
+            this.width = w;
+            this.height = h;
+            this.components = components;
+        }
+
+        return NativeReadback.pboRead(handle, x, y, w, h, components, true);
+    }
+
+    /**
+     * Indicates whether pending reads have the specified layout.
+     *
+     * @param x x coordinate of the lower left corner
+     * @param y y coordinate of the lower left corner
+     * @param w width
+     * @param h height
+     * @param components number of components (3 for RGB, 4 for RGBA)
+     * @return <code>true</code> if pending reads have the specified layout;
+     * <code>false</code> otherwise
+     */
+    public boolean hasLayout(int x, int y, int w, int h, int components) {
+        return x == this.x && y == this.y && w == width && h == height
+                && components == this.components;
+    }
+
+    /**
+     * Copies the oldest pending frame to the specified array.
+     *
+     * @param dest destination array (size must be at least
+     * <code>width * height * components</code>)
+     * @return <code>true</code> if a frame has been copied;
+     * <code>false</code> otherwise
+     */
+    public boolean fetch(byte[] dest) {
+        if (handle == 0) {
+            return false;
+        }
+
+        return NativeReadback.pboFetch(handle, dest);
+    }
+
+    /**
+     * Returns the number of pending frames.
+     *
+     * @return number of pending frames
+     */
+    public int getPending() {
+        if (handle == 0) {
+            return 0;
+        }
+
+        return NativeReadback.pboPending(handle);
+    }
+
+    /**
+     * Discards all pending frames.
+     */
+    public void reset() {
+        if (handle != 0) {
+            NativeReadback.pboReset(handle);
+        }
+
+        // the next read has no predecessor
+        width = 0;
+        height = 0;
+    }
+
+    /**
+     * Releases the pixel buffer objects.
+     */
+    public void dispose() {
+        if (handle != 0) {
+            NativeReadback.pboDelete(handle);
+            handle = 0;
+        }
+    }
+}
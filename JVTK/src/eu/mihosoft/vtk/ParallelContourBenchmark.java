@@ -0,0 +1,249 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import vtk.*;
+
+/**
+ * Compares {@link ParallelContourFilter} with <code>vtkContourFilter</code>
+ * on the demo scene (see {@link Main}): execution time, number of points,
+ * number of triangles, vertex positions and number of connected surfaces.
+ *
+ * <p>Usage: <code>ParallelContourBenchmark [resolution [iterations]]</code>
+ * </p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class ParallelContourBenchmark {
+
+    // no instanciation allowed
+    private ParallelContourBenchmark() {
+        throw new AssertionError(); // not in this class either!
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args optional arguments: sample resolution and iterations
+     */
+    public static void main(String[] args) throws Exception {
+
+        int resolution = 50;
+        int iterations = 5;
+
+        if (args.length >= 1) {
+            resolution = Integer.parseInt(args[0]);
+        }
+
+        if (args.length >= 2) {
+            iterations = Integer.parseInt(args[1]);
+        }
+
+        SysUtil.loadLibraries(new File("natives").getAbsolutePath());
+
+        vtkSphere sphere = new vtkSphere();
+        sphere.SetRadius(0.8);
+
+        vtkSampleFunction sample = new vtkSampleFunction();
+        sample.SetSampleDimensions(resolution, resolution, resolution);
+        sample.SetImplicitFunction(sphere);
+        sample.Update();
+
+        System.out.println(">> parallel contour benchmark: resolution "
+                + resolution + ", " + iterations + " iterations");
+
+        vtkContourFilter contour = new vtkContourFilter();
+        contour.SetInputConnection(sample.GetOutputPort());
+        contour.GenerateValues(3, 0, 1);
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            contour.Modified();
+            contour.Update();
+        }
+
+        double vtkTime = (System.nanoTime() - start) / 1e6 / iterations;
+
+        vtkPolyData expected = contour.GetOutput();
+
+        ParallelContourFilter parallelContour = new ParallelContourFilter();
+        parallelContour.generateValues(3, 0, 1);
+
+        vtkPolyData output = null;
+
+        start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            output = parallelContour.execute(sample.GetOutput());
+        }
+
+        double parallelTime = (System.nanoTime() - start) / 1e6 / iterations;
+
+        System.out.println(String.format(
+                " --> vtkContourFilter:      %8.1f ms (%d points, "
+                + "%d triangles)", vtkTime, expected.GetNumberOfPoints(),
+                expected.GetNumberOfPolys()));
+
+        System.out.println(String.format(
+                " --> ParallelContourFilter: %8.1f ms (%d points, "
+                + "%d triangles, %d threads)", parallelTime,
+                output.GetNumberOfPoints(), output.GetNumberOfPolys(),
+                WorkerPool.getNumberOfThreads()));
+
+        System.out.println(String.format(
+                " --> speedup:               %8.2fx", vtkTime / parallelTime));
+
+        int unmatched = countUnmatchedPoints(expected, output, 1e-4);
+
+        System.out.println(" --> unmatched vertices: " + unmatched);
+
+        int expectedSurfaces = countSurfaces(expected);
+        int surfaces = countSurfaces(output);
+
+        System.out.println(" --> connected surfaces: " + expectedSurfaces
+                + " (vtkContourFilter), " + surfaces
+                + " (ParallelContourFilter)");
+
+        System.out.println(" --> equivalent: "
+                + (expected.GetNumberOfPoints() == output.GetNumberOfPoints()
+                && expected.GetNumberOfPolys() == output.GetNumberOfPolys()
+                && unmatched == 0 && expectedSurfaces == surfaces));
+
+        System.out.println(" --> done.");
+
+        System.exit(0);
+    }
+
+    /**
+     * Counts the points of <code>actual</code> that have no point of
+     * <code>expected</code> within the specified distance.
+     *
+     * @param expected expected geometry
+     * @param actual actual geometry
+     * @param tolerance maximum distance
+     * @return number of unmatched points
+     */
+    private static int countUnmatchedPoints(vtkPolyData expected,
+            vtkPolyData actual, double tolerance) {
+
+        float[] e = getPoints(expected);
+        float[] a = getPoints(actual);
+
+        // spatial hash of the expected points (cell size = tolerance)
+        Map<Long, List<Integer>> grid = new HashMap<Long, List<Integer>>();
+
+        for (int i = 0; i < e.length / 3; i++) {
+            Long key = cellKey(Math.floor(e[3 * i] / tolerance),
+                    Math.floor(e[3 * i + 1] / tolerance),
+                    Math.floor(e[3 * i + 2] / tolerance));
+
+            List<Integer> cell = grid.get(key);
+
+            if (cell == null) {
+                cell = new ArrayList<Integer>();
+                grid.put(key, cell);
+            }
+
+            cell.add(i);
+        }
+
+        int unmatched = 0;
+
+        for (int i = 0; i < a.length / 3; i++) {
+            double cx = Math.floor(a[3 * i] / tolerance);
+            double cy = Math.floor(a[3 * i + 1] / tolerance);
+            double cz = Math.floor(a[3 * i + 2] / tolerance);
+
+            boolean found = false;
+
+            for (int n = 0; n < 27 && !found; n++) {
+                List<Integer> cell = grid.get(cellKey(
+                        cx + n % 3 - 1, cy + n / 3 % 3 - 1, cz + n / 9 - 1));
+
+                if (cell == null) {
+                    continue;
+                }
+
+                for (int j : cell) {
+                    double dx = a[3 * i] - e[3 * j];
+                    double dy = a[3 * i + 1] - e[3 * j + 1];
+                    double dz = a[3 * i + 2] - e[3 * j + 2];
+
+                    if (dx * dx + dy * dy + dz * dz
+                            <= tolerance * tolerance) {
+                        found = true;
+                        break;
+                    }
+                }
+            }
+
+            if (!found) {
+                unmatched++;
+            }
+        }
+
+        return unmatched;
+    }
+
+    /**
+     * Returns the number of connected surfaces of the specified geometry.
+     *
+     * @param data geometry
+     * @return number of connected surfaces
+     */
+    private static int countSurfaces(vtkPolyData data) {
+        vtkPolyDataConnectivityFilter connectivity =
+                new vtkPolyDataConnectivityFilter();
+        connectivity.SetInput(data);
+        connectivity.SetExtractionModeToAllRegions();
+        connectivity.Update();
+
+        int result = connectivity.GetNumberOfExtractedRegions();
+
+        connectivity.Delete();
+
+        return result;
+    }
+
+    private static Long cellKey(double x, double y, double z) {
+        return (((long) x & 0x1fffff) << 42) | (((long) y & 0x1fffff) << 21)
+                | ((long) z & 0x1fffff);
+    }
+
+    private static float[] getPoints(vtkPolyData data) {
+        vtkFloatArray points = new vtkFloatArray();
+        points.DeepCopy(data.GetPoints().GetData());
+        return points.GetJavaArray();
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import vtk.vtkDataArray;
+import vtk.vtkFloatArray;
+import vtk.vtkImageData;
+import vtk.vtkPolyData;
+
+/**
+ * Extracts isosurfaces of 3D images in parallel. The volume is split into
+ * slabs (layers of cells along the z axis) that are processed by the worker
+ * pool (see {@link MarchingCubes}). The slabs are joined into one poly data
+ * object, i.e., vertices on slab boundaries are shared.
+ *
+ * <p>Vertices are located on the same cell edges as the vertices of
+ * <code>vtkContourFilter</code>. The case table is not the table of vtk
+ * (see {@link MarchingCubes}): cells with ambiguous faces may be
+ * triangulated differently, i.e., the number of triangles and the topology
+ * may differ from <code>vtkContourFilter</code> for such volumes.
+ * {@link ParallelContourBenchmark} compares the number of points and
+ * triangles, the vertex positions and the number of connected surfaces of
+ * both filters on the demo scene.</p>
+ *
+ * <p>Example:</p>
+ * <pre>
+ * sample.Update();
+ * ParallelContourFilter contour = new ParallelContourFilter();
+ * contour.generateValues(3, 0, 1);
+ * mapper.SetInput(contour.execute(sample.GetOutput()));
+ * </pre>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class ParallelContourFilter {
+
+    //
+    // transfers the output (reuses the vtk arrays of previous executions)
+    private final MeshBuilder builder = new MeshBuilder();
+    private double[] values = {0};
+    private boolean computeNormals = true;
+    private boolean computeScalars = true;
+    //
+    // number of slabs (0 means automatic)
+    private int numberOfSlabs;
+    //
+    // duration of the last execution (in nanoseconds)
+    private long executionTime;
+
+    /**
+     * Extracts the isosurfaces of the specified image. The image must be up
+     * to date and must have single component point scalars.
+     *
+     * <p><b>Note:</b> the output object is reused, i.e., each execution
+     * updates and returns the same poly data object.</p>
+     *
+     * @param input image
+     * @return isosurfaces
+     */
+    public vtkPolyData execute(vtkImageData input) {
+
+        long start = System.nanoTime();
+
+        final float[] scalars = getScalars(input);
+        final int[] dims = input.GetDimensions();
+        final double[] origin = getOrigin(input);
+        final double[] spacing = input.GetSpacing();
+        final float[] isoValues = getFloatValues();
+
+        int layers = dims[2] - 1;
+        int slabs = numberOfSlabs > 0 ? numberOfSlabs
+                : 4 * WorkerPool.getNumberOfThreads();
+        slabs = Math.max(1, Math.min(slabs, layers));
+
+        final List<MarchingCubes> parts = new ArrayList<MarchingCubes>();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+        for (int i = 0; i < slabs && layers > 0; i++) {
+            final int zMin = i * layers / slabs;
+            final int zMax = (i + 1) * layers / slabs;
+
+            final MarchingCubes slab = new MarchingCubes(scalars, dims,
+                    origin, spacing, isoValues, computeNormals, zMin, zMax);
+            parts.add(slab);
+
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    slab.contourLayers(zMin, zMax);
+                    return null;
+                }
+            });
+        }
+
+        try {
+            for (Future<Void> f : WorkerPool.getExecutor().invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return new vtkPolyData();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+
+        vtkPolyData output = toPolyData(MarchingCubes.merge(parts),
+                builder, input.GetPointData().GetScalars().
+                GetName(), computeScalars);
+
+        executionTime = System.nanoTime() - start;
+
+        return output;
+    }
+
+    /**
+     * Returns the point scalars of the specified image as float array.
+     *
+     * @param input image
+     * @return scalars of the image
+     */
+    static float[] getScalars(vtkImageData input) {
+        vtkDataArray array = input.GetPointData().GetScalars();
+
+        if (array == null || array.GetNumberOfComponents() != 1) {
+            throw new IllegalArgumentException(
+                    "Image must have single component point scalars.");
+        }
+
+        if (array instanceof vtkFloatArray) {
+            return ((vtkFloatArray) array).GetJavaArray();
+        }
+
+        vtkFloatArray converted = new vtkFloatArray();
+        converted.DeepCopy(array);
+
+        return converted.GetJavaArray();
+    }
+
+    /**
+     * Returns the location of the first point of the specified image.
+     *
+     * @param input image
+     * @return location of the first point
+     */
+    static double[] getOrigin(vtkImageData input) {
+        double[] origin = input.GetOrigin();
+        double[] spacing = input.GetSpacing();
+        int[] extent = input.GetExtent();
+
+        return new double[]{
+                    origin[0] + extent[0] * spacing[0],
+                    origin[1] + extent[2] * spacing[1],
+                    origin[2] + extent[4] * spacing[2]};
+    }
+
+    /**
+     * Transfers the specified surface to the specified mesh builder.
+     *
+     * @param surface surface
+     * @param builder mesh builder
+     * @param scalarName name of the scalar array
+     * @param computeScalars defines whether to add the scalars
+     * @return poly data
+     */
+    static vtkPolyData toPolyData(MarchingCubes.Surface surface,
+            MeshBuilder builder, String scalarName, boolean computeScalars) {
+
+        builder.setPoints(surface.points);
+        builder.setTriangles(surface.triangles);
+        builder.setPointNormals(surface.normals);
+        builder.setPointScalars(scalarName,
+                computeScalars ? surface.scalars : null, 1);
+
+        return builder.build();
+    }
+
+    /**
+     * Returns the iso values as float array.
+     */
+    private float[] getFloatValues() {
+        float[] result = new float[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (float) values[i];
+        }
+
+        return result;
+    }
+
+    /**
+     * Defines the specified iso value. The number of contours is increased
+     * if necessary.
+     *
+     * @param i index of the value
+     * @param value iso value
+     */
+    public void setValue(int i, double value) {
+        if (i >= values.length) {
+            values = Arrays.copyOf(values, i + 1);
+        }
+
+        values[i] = value;
+    }
+
+    /**
+     * Returns the specified iso value.
+     *
+     * @param i index of the value
+     * @return the iso value
+     */
+    public double getValue(int i) {
+        return values[i];
+    }
+
+    /**
+     * Returns the iso values.
+     *
+     * @return the iso values
+     */
+    public double[] getValues() {
+        return values.clone();
+    }
+
+    /**
+     * Defines the number of contours. New values are initialized with
+     * <code>0</code>.
+     *
+     * @param n number of contours
+     */
+    public void setNumberOfContours(int n) {
+        values = Arrays.copyOf(values, n);
+    }
+
+    /**
+     * Returns the number of contours.
+     *
+     * @return the number of contours
+     */
+    public int getNumberOfContours() {
+        return values.length;
+    }
+
+    /**
+     * Generates equally spaced iso values (like
+     * <code>vtkContourFilter.GenerateValues()</code>).
+     *
+     * @param n number of contours
+     * @param min first value
+     * @param max last value
+     */
+    public void generateValues(int n, double min, double max) {
+        values = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            values[i] = n == 1 ? min : min + i * (max - min) / (n - 1);
+        }
+    }
+
+    /**
+     * Defines whether to compute normals (enabled by default).
+     *
+     * @param computeNormals the state to set
+     */
+    public void setComputeNormals(boolean computeNormals) {
+        this.computeNormals = computeNormals;
+    }
+
+    /**
+     * Indicates whether normals are computed.
+     *
+     * @return <code>true</code> if normals are computed;
+     * <code>false</code> otherwise
+     */
+    public boolean isComputeNormals() {
+        return computeNormals;
+    }
+
+    /**
+     * Defines whether to add the iso values as point scalars (enabled by
+     * default).
+     *
+     * @param computeScalars the state to set
+     */
+    public void setComputeScalars(boolean computeScalars) {
+        this.computeScalars = computeScalars;
+    }
+
+    /**
+     * Indicates whether the iso values are added as point scalars.
+     *
+     * @return <code>true</code> if scalars are added;
+     * <code>false</code> otherwise
+     */
+    public boolean isComputeScalars() {
+        return computeScalars;
+    }
+
+    /**
+     * Defines the number of slabs (<code>0</code> means four slabs per
+     * worker thread).
+     *
+     * @param numberOfSlabs number of slabs
+     */
+    public void setNumberOfSlabs(int numberOfSlabs) {
+        if (numberOfSlabs < 0) {
+            throw new IllegalArgumentException(
+                    "Number of slabs must not be negative: " + numberOfSlabs);
+        }
+
+        this.numberOfSlabs = numberOfSlabs;
+    }
+
+    /**
+     * Returns the number of slabs.
+     *
+     * @return the number of slabs (<code>0</code> means automatic)
+     */
+    public int getNumberOfSlabs() {
+        return numberOfSlabs;
+    }
+
+    /**
+     * Returns the duration of the last execution.
+     *
+     * @return the duration of the last execution (in seconds)
+     */
+    public double getExecutionTime() {
+        return executionTime / 1e9;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import vtk.vtkActor;
+
+/**
+ * Result of a pick request (see {@link PickService}). Pick results are
+ * immutable.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class PickResult {
+
+    private final int x;
+    private final int y;
+    private final long sceneVersion;
+    private final vtkActor actor;
+    private final int cellId;
+    private final int pointId;
+    private final double[] position;
+
+    /**
+     * Constructor.
+     *
+     * @param x x coordinate (component coordinates)
+     * @param y y coordinate (component coordinates)
+     * @param sceneVersion scene version at the time of the pick
+     * @param actor picked actor (may be <code>null</code>)
+     * @param cellId picked cell id (<code>-1</code> if unavailable)
+     * @param pointId picked point id (<code>-1</code> if unavailable)
+     * @param position picked world position (may be <code>null</code>)
+     */
+    PickResult(int x, int y, long sceneVersion, vtkActor actor,
+            int cellId, int pointId, double[] position) {
+        this.x = x;
+        this.y = y;
+        this.sceneVersion = sceneVersion;
+        this.actor = actor;
+        this.cellId = cellId;
+        this.pointId = pointId;
+        this.position = position == null ? null : position.clone();
+    }
+
+    /**
+     * Returns the x coordinate of the pick (component coordinates).
+     *
+     * @return the x coordinate
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Returns the y coordinate of the pick (component coordinates).
+     *
+     * @return the y coordinate
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Returns the scene version at the time of the pick (see
+     * {@link VTKCanvas#getSceneVersion() }).
+     *
+     * @return the scene version
+     */
+    public long getSceneVersion() {
+        return sceneVersion;
+    }
+
+    /**
+     * Indicates whether an actor has been picked.
+     *
+     * @return <code>true</code> if an actor has been picked;
+     * <code>false</code> otherwise
+     */
+    public boolean isHit() {
+        return actor != null;
+    }
+
+    /**
+     * Returns the picked actor.
+     *
+     * @return the picked actor or <code>null</code> if nothing has been
+     * picked
+     */
+    public vtkActor getActor() {
+        return actor;
+    }
+
+    /**
+     * Returns the picked cell id (cell picks only).
+     *
+     * @return the picked cell id or <code>-1</code> if unavailable
+     */
+    public int getCellId() {
+        return cellId;
+    }
+
+    /**
+     * Returns the picked point id (cell and point picks only).
+     *
+     * @return the picked point id or <code>-1</code> if unavailable
+     */
+    public int getPointId() {
+        return pointId;
+    }
+
+    /**
+     * Returns the picked world position.
+     *
+     * @return the picked world position or <code>null</code> if nothing has
+     * been picked
+     */
+    public double[] getPosition() {
+        return position == null ? null : position.clone();
+    }
+}
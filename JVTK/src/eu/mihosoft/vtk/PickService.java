@@ -0,0 +1,502 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import vtk.vtkActor;
+import vtk.vtkCellPicker;
+import vtk.vtkPicker;
+import vtk.vtkPointPicker;
+import vtk.vtkRenderWindow;
+import vtk.vtkRenderer;
+
+/**
+ * Asynchronous pick service of a {@link VTKCanvas}. Picks are executed by a
+ * background thread and return futures, i.e., the event dispatch thread is
+ * not blocked by ray casts. Picker instances are reused across requests.
+ *
+ * <p>Results are cached per location and scene version (see
+ * {@link VTKCanvas#getSceneVersion() }). Repeated picks at the same location
+ * do not cause additional ray casts unless the scene has been rendered in the
+ * meantime. Hover picks (see {@link #pickHover(int, int) }) are coalesced
+ * and rate limited to the frame rate.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class PickService {
+
+    /**
+     * Pick type.
+     */
+    public static enum PickType {
+
+        /**
+         * Picks props via ray casting (no cell information).
+         */
+        PROP,
+        /**
+         * Picks cells via ray casting.
+         */
+        CELL,
+        /**
+         * Picks points via ray casting.
+         */
+        POINT
+    }
+    private final VTKCanvas panel;
+    //
+    // executes the picks (single thread since pickers are not thread-safe)
+    private final ScheduledExecutorService executor;
+    //
+    // reused pickers
+    private final vtkCellPicker cellPicker = new vtkCellPicker();
+    private final vtkPointPicker pointPicker = new vtkPointPicker();
+    //
+    // pick results of the current scene version
+    private final Map<Long, PickResult> cache;
+    //
+    // scene version of the cached results
+    private long cacheVersion = -1;
+    //
+    // maximum number of cached results
+    private int cacheSize = 1024;
+    //
+    // pick type used for hover picks
+    private PickType hoverType = PickType.PROP;
+    //
+    // maximum number of hover picks per second
+    private double maxHoverRate = 60;
+    //
+    // hover pick that has not been started yet
+    private HoverPick pendingHover;
+    //
+    // time of the last hover pick (in nanoseconds)
+    private long lastHoverTime;
+    //
+    // number of executed picks (for diagnostics)
+    private volatile int numberOfPicks;
+
+    /**
+     * Constructor.
+     *
+     * @param panel panel to pick from
+     */
+    public PickService(VTKCanvas panel) {
+        this.panel = panel;
+
+        cache = new LinkedHashMap<Long, PickResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Long, PickResult> eldest) {
+                return size() > cacheSize;
+            }
+        };
+
+        executor = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "jvtk-pick");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    /**
+     * Picks at the specified location.
+     *
+     * @param x x coordinate (component coordinates)
+     * @param y y coordinate (component coordinates)
+     * @param type pick type
+     * @return future pick result
+     */
+    public Future<PickResult> pick(final int x, final int y,
+            final PickType type) {
+
+        PickResult cached = getCachedResult(x, y, type);
+
+        if (cached != null) {
+            return completed(cached);
+        }
+
+        return executor.submit(new Callable<PickResult>() {
+            @Override
+            public PickResult call() throws Exception {
+                return pickNow(x, y, type);
+            }
+        });
+    }
+
+    /**
+     * Picks at the specified location. Hover picks are coalesced, i.e., if a
+     * hover pick has been requested but not started yet, its location is
+     * updated and its future is returned. Hover picks are not executed more
+     * often than the scene is rendered (limited by
+     * {@link #setMaxHoverRate(double) }).
+     *
+     * @param x x coordinate (component coordinates)
+     * @param y y coordinate (component coordinates)
+     * @return future pick result
+     */
+    public synchronized Future<PickResult> pickHover(int x, int y) {
+
+        PickResult cached = getCachedResult(x, y, hoverType);
+
+        if (cached != null) {
+            return completed(cached);
+        }
+
+        if (pendingHover != null && pendingHover.update(x, y)) {
+            return pendingHover.future;
+        }
+
+        pendingHover = new HoverPick(x, y, hoverType);
+
+        long delay = lastHoverTime + getHoverInterval() - System.nanoTime();
+
+        executor.schedule(pendingHover.future,
+                Math.max(0, delay), TimeUnit.NANOSECONDS);
+
+        return pendingHover.future;
+    }
+
+    /**
+     * Returns the minimum interval between two hover picks (in
+     * nanoseconds), i.e., the duration of the last frame but at least
+     * <code>1 / maxHoverRate</code>.
+     *
+     * @return the minimum interval between two hover picks
+     */
+    private long getHoverInterval() {
+        double frameTime = panel.GetRenderer().GetLastRenderTimeInSeconds();
+        double minTime = 1.0 / maxHoverRate;
+
+        return (long) (Math.max(frameTime, minTime) * 1e9);
+    }
+
+    /**
+     * Returns a cached result.
+     *
+     * @param x x coordinate (component coordinates)
+     * @param y y coordinate (component coordinates)
+     * @param type pick type
+     * @return the cached result or <code>null</code> if no result has been
+     * cached for the current scene version
+     */
+    private PickResult getCachedResult(int x, int y, PickType type) {
+        synchronized (cache) {
+            if (cacheVersion != panel.getSceneVersion()) {
+                return null;
+            }
+            return cache.get(cacheKey(x, y, type));
+        }
+    }
+
+    /**
+     * Adds the specified result to the cache.
+     *
+     * @param r result to add
+     * @param type pick type
+     */
+    private void cacheResult(PickResult r, PickType type) {
+        synchronized (cache) {
+            if (cacheVersion != r.getSceneVersion()) {
+                cache.clear();
+                cacheVersion = r.getSceneVersion();
+            }
+            cache.put(cacheKey(r.getX(), r.getY(), type), r);
+        }
+    }
+
+    /**
+     * Returns the cache key of the specified location and pick type.
+     */
+    private static Long cacheKey(int x, int y, PickType type) {
+        return ((long) type.ordinal() << 60)
+                | ((x & 0x3fffffffL) << 30) | (y & 0x3fffffffL);
+    }
+
+    /**
+     * Returns a future that is already completed.
+     *
+     * @param r result
+     * @return a completed future
+     */
+    private static Future<PickResult> completed(final PickResult r) {
+        FutureTask<PickResult> f = new FutureTask<PickResult>(
+                new Callable<PickResult>() {
+                    @Override
+                    public PickResult call() throws Exception {
+                        return r;
+                    }
+                });
+        f.run();
+        return f;
+    }
+
+    /**
+     * Picks at the specified location (executed by the pick thread).
+     *
+     * @param x x coordinate (component coordinates)
+     * @param y y coordinate (component coordinates)
+     * @param type pick type
+     * @return the pick result
+     */
+    private PickResult pickNow(int x, int y, PickType type) {
+
+        // the scene might have changed since the request
+        PickResult cached = getCachedResult(x, y, type);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        vtkRenderWindow rw = panel.GetRenderWindow();
+        vtkRenderer ren = panel.GetRenderer();
+
+        PickResult result;
+
+        panel.lock();
+        try {
+            long version = panel.getSceneVersion();
+
+            // vtk coordinates start at the lower left corner
+            int vtkY = rw.GetSize()[1] - y - 1;
+
+            vtkActor actor;
+            int cellId = -1;
+            int pointId = -1;
+            double[] position = null;
+
+            // hardware selection (vtkPropPicker) would require the opengl
+            // context which is owned by the render thread, thus, props are
+            // picked via ray casting as well
+            vtkPicker picker =
+                    type == PickType.POINT ? pointPicker : cellPicker;
+            picker.Pick(x, vtkY, 0, ren);
+            actor = picker.GetActor();
+            if (actor != null) {
+                position = picker.GetPickPosition();
+                if (type == PickType.CELL) {
+                    cellId = cellPicker.GetCellId();
+                    pointId = cellPicker.GetPointId();
+                } else if (type == PickType.POINT) {
+                    pointId = pointPicker.GetPointId();
+                }
+            }
+
+            result = new PickResult(x, y, version,
+                    actor, cellId, pointId, position);
+
+            numberOfPicks++;
+        } finally {
+            panel.unlock();
+        }
+
+        cacheResult(result, type);
+
+        return result;
+    }
+
+    /**
+     * Defines the pick type used for hover picks (default is
+     * {@link PickType#PROP}).
+     *
+     * @param type the pick type to set
+     */
+    public synchronized void setHoverType(PickType type) {
+        this.hoverType = type;
+    }
+
+    /**
+     * Returns the pick type used for hover picks.
+     *
+     * @return the pick type used for hover picks
+     */
+    public synchronized PickType getHoverType() {
+        return hoverType;
+    }
+
+    /**
+     * Defines the maximum number of hover picks per second (default is
+     * <code>60</code>). Hover picks are additionally limited by the frame
+     * rate.
+     *
+     * @param rate the rate to set
+     */
+    public synchronized void setMaxHoverRate(double rate) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException(
+                    "Hover rate must be positive: " + rate);
+        }
+        this.maxHoverRate = rate;
+    }
+
+    /**
+     * Returns the maximum number of hover picks per second.
+     *
+     * @return the maximum number of hover picks per second
+     */
+    public synchronized double getMaxHoverRate() {
+        return maxHoverRate;
+    }
+
+    /**
+     * Defines the maximum number of cached results (default is
+     * <code>1024</code>).
+     *
+     * @param size the cache size to set
+     */
+    public void setCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException(
+                    "Cache size must not be negative: " + size);
+        }
+        synchronized (cache) {
+            this.cacheSize = size;
+            if (size == 0) {
+                cache.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of cached results.
+     *
+     * @return the maximum number of cached results
+     */
+    public int getCacheSize() {
+        synchronized (cache) {
+            return cacheSize;
+        }
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+            cacheVersion = -1;
+        }
+    }
+
+    /**
+     * Returns the number of picks that have been executed, i.e., that have
+     * not been answered from the cache.
+     *
+     * @return the number of executed picks
+     */
+    public int getNumberOfPicks() {
+        return numberOfPicks;
+    }
+
+    /**
+     * Shuts down the pick thread and releases the pickers. Pending picks are
+     * cancelled.
+     */
+    public void dispose() {
+        executor.shutdownNow();
+
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        clearCache();
+
+        cellPicker.Delete();
+        pointPicker.Delete();
+    }
+
+    /**
+     * Hover pick that can be updated until it is started.
+     */
+    private class HoverPick implements Callable<PickResult> {
+
+        private int x;
+        private int y;
+        private final PickType type;
+        private boolean started;
+        private final FutureTask<PickResult> future;
+
+        public HoverPick(int x, int y, PickType type) {
+            this.x = x;
+            this.y = y;
+            this.type = type;
+            this.future = new FutureTask<PickResult>(this);
+        }
+
+        /**
+         * Updates the location of this pick.
+         *
+         * @return <code>true</code> if the location has been updated;
+         * <code>false</code> if this pick has already been started
+         */
+        boolean update(int x, int y) {
+            synchronized (PickService.this) {
+                if (started || type != hoverType) {
+                    return false;
+                }
+                this.x = x;
+                this.y = y;
+                return true;
+            }
+        }
+
+        @Override
+        public PickResult call() throws Exception {
+            int pickX;
+            int pickY;
+
+            synchronized (PickService.this) {
+                started = true;
+                pickX = x;
+                pickY = y;
+                lastHoverTime = System.nanoTime();
+                if (pendingHover == this) {
+                    pendingHover = null;
+                }
+            }
+
+            return pickNow(pickX, pickY, type);
+        }
+    }
+}
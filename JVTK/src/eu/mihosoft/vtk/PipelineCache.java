@@ -0,0 +1,1272 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import vtk.vtkAlgorithm;
+import vtk.vtkAlgorithmOutput;
+import vtk.vtkCellArray;
+import vtk.vtkCharArray;
+import vtk.vtkDataArray;
+import vtk.vtkDataSetAttributes;
+import vtk.vtkDoubleArray;
+import vtk.vtkFloatArray;
+import vtk.vtkIdTypeArray;
+import vtk.vtkIntArray;
+import vtk.vtkLongArray;
+import vtk.vtkLongLongArray;
+import vtk.vtkObject;
+import vtk.vtkPoints;
+import vtk.vtkPolyData;
+import vtk.vtkPolyDataAlgorithm;
+import vtk.vtkShortArray;
+import vtk.vtkSignedCharArray;
+import vtk.vtkUnsignedCharArray;
+import vtk.vtkUnsignedIntArray;
+import vtk.vtkUnsignedLongArray;
+import vtk.vtkUnsignedLongLongArray;
+import vtk.vtkUnsignedShortArray;
+
+/**
+ * Persistent cache for pipeline outputs. Outputs are stored in a compact
+ * binary format (compressed via {@link Deflater}) in a local directory and
+ * are read via memory mapped files.
+ * Thus, expensive pipelines (e.g. contours of large volumes) do not have to
+ * be executed again when the application is restarted.
+ *
+ * <p>The cache key of an output is a hash of the parameters of the
+ * algorithm and of all upstream algorithms (as printed by
+ * {@link vtk.vtkObjectBase#Print() }). Modification times, pointers and
+ * other volatile information are ignored. For file based sources the size
+ * and modification date of the file are part of the key. vtk only prints
+ * pointers of objects that are referenced by algorithms (e.g. implicit
+ * functions). Such objects must be registered via
+ * {@link #addDependency(vtk.vtkAlgorithm, vtk.vtkObject) }. Pipelines with
+ * in-memory inputs (i.e. without a source algorithm) are not cached.</p>
+ *
+ * <p>The total size of the cache is bounded (see
+ * {@link #setMaxSize(long) }). The least recently used outputs are evicted
+ * first.</p>
+ *
+ * <p>Points, cells and data arrays are stored with their original data
+ * type, i.e., cached outputs are identical to the outputs of the pipeline.
+ * Outputs with arrays of other types (e.g. string arrays) are not
+ * cached.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class PipelineCache {
+
+    private static final int MAGIC = 0x4A565443; // "JVTC"
+    private static final int VERSION = 3;
+    private static final String SUFFIX = ".jvtkcache";
+    //
+    // vtk data types
+    private static final int VTK_CHAR = 2;
+    private static final int VTK_UNSIGNED_CHAR = 3;
+    private static final int VTK_SHORT = 4;
+    private static final int VTK_UNSIGNED_SHORT = 5;
+    private static final int VTK_INT = 6;
+    private static final int VTK_UNSIGNED_INT = 7;
+    private static final int VTK_LONG = 8;
+    private static final int VTK_UNSIGNED_LONG = 9;
+    private static final int VTK_FLOAT = 10;
+    private static final int VTK_DOUBLE = 11;
+    private static final int VTK_ID_TYPE = 12;
+    private static final int VTK_SIGNED_CHAR = 15;
+    private static final int VTK_LONG_LONG = 16;
+    private static final int VTK_UNSIGNED_LONG_LONG = 17;
+    //
+    // java array types of the stored values
+    private static final int BYTES = 0;
+    private static final int SHORTS = 1;
+    private static final int INTS = 2;
+    private static final int LONGS = 3;
+    private static final int FLOATS = 4;
+    private static final int DOUBLES = 5;
+    private static final int[] ELEMENT_SIZES = {1, 2, 4, 8, 4, 8};
+    //
+    // volatile lines of the printed algorithm state (ignored by the key)
+    private static final Pattern IGNORED = Pattern.compile(
+            ".*(Modified Time|MTime|TimeStamp|TIME_STAMP|Reference Count|"
+            + "Registered Events|Progress|Abort Execute|Error Code|Debug:|"
+            + "Executive|Information:).*");
+    //
+    // pointers (gcc and msvc notation)
+    private static final Pattern POINTER = Pattern.compile(
+            "0x[0-9a-fA-F]+|\\b[0-9A-F]{16}\\b");
+    private final File directory;
+    //
+    // cached outputs (key -> size in bytes), least recently used first
+    private final Map<String, Long> entries =
+            new LinkedHashMap<String, Long>(16, 0.75f, true);
+    //
+    // objects referenced by algorithms
+    private final Map<vtkAlgorithm, List<vtkObject>> dependencies =
+            new IdentityHashMap<vtkAlgorithm, List<vtkObject>>();
+    //
+    // maximum size of the cache (in bytes)
+    private long maxSize = 1024L * 1024 * 1024;
+    //
+    // current size of the cache (in bytes)
+    private long size;
+    private int numberOfHits;
+    private int numberOfMisses;
+
+    /**
+     * Constructor. Existing outputs in the specified directory are reused.
+     *
+     * @param directory cache directory (created if it does not exist)
+     * @throws IOException if the directory cannot be created
+     */
+    public PipelineCache(File directory) throws IOException {
+        this.directory = directory;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(
+                    "Cannot create cache directory: " + directory);
+        }
+
+        File[] files = directory.listFiles();
+
+        // least recently used first
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 < m2 ? -1 : (m1 > m2 ? 1 : 0);
+            }
+        });
+
+        for (File f : files) {
+            String name = f.getName();
+
+            if (name.endsWith(SUFFIX)) {
+                entries.put(name.substring(
+                        0, name.length() - SUFFIX.length()), f.length());
+                size += f.length();
+            } else if (name.endsWith(".tmp")) {
+                // incomplete output of a previous session
+                f.delete();
+            }
+        }
+    }
+
+    /**
+     * Declares that the output of the specified algorithm depends on the
+     * state of the specified object. This is necessary for objects that are
+     * referenced by the algorithm but not printed by it, e.g., the implicit
+     * function of a <code>vtkSampleFunction</code>.
+     *
+     * @param algorithm algorithm
+     * @param dependency object the algorithm depends on
+     */
+    public synchronized void addDependency(vtkAlgorithm algorithm,
+            vtkObject dependency) {
+        List<vtkObject> deps = dependencies.get(algorithm);
+
+        if (deps == null) {
+            deps = new ArrayList<vtkObject>();
+            dependencies.put(algorithm, deps);
+        }
+
+        deps.add(dependency);
+    }
+
+    /**
+     * Removes all dependencies of the specified algorithm.
+     *
+     * @param algorithm algorithm
+     */
+    public synchronized void removeDependencies(vtkAlgorithm algorithm) {
+        dependencies.remove(algorithm);
+    }
+
+    /**
+     * Returns the output of the specified algorithm. If the output is
+     * cached, the algorithm is not executed. Otherwise, the algorithm is
+     * updated and its output is stored in the cache.
+     *
+     * @param algorithm algorithm
+     * @return a copy of the output of the algorithm
+     */
+    public vtkPolyData getOutput(vtkPolyDataAlgorithm algorithm) {
+        String key = getKey(algorithm);
+
+        if (key != null) {
+            vtkPolyData cached = load(key);
+
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        algorithm.Update();
+
+        vtkPolyData output = new vtkPolyData();
+        output.ShallowCopy(algorithm.GetOutput());
+
+        if (key != null) {
+            store(key, output);
+        }
+
+        return output;
+    }
+
+    /**
+     * Returns the cache key of the output of the specified algorithm.
+     *
+     * @param algorithm algorithm
+     * @return the cache key or <code>null</code> if the output cannot be
+     * cached
+     */
+    public synchronized String getKey(vtkAlgorithm algorithm) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+
+            if (!hash(algorithm, digest,
+                    new IdentityHashMap<vtkAlgorithm, Integer>())) {
+                return null;
+            }
+
+            StringBuilder sb = new StringBuilder();
+
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Hashes the state of the specified algorithm and of its upstream
+     * algorithms.
+     *
+     * @return <code>false</code> if the pipeline has in-memory inputs
+     */
+    private boolean hash(vtkAlgorithm a, MessageDigest digest,
+            Map<vtkAlgorithm, Integer> visited) {
+
+        Integer index = visited.get(a);
+
+        // shared upstream algorithms are hashed once
+        if (index != null) {
+            update(digest, "#" + index);
+            return true;
+        }
+
+        visited.put(a, visited.size());
+
+        if ("vtkTrivialProducer".equals(a.GetClassName())) {
+            return false;
+        }
+
+        update(digest, a.GetClassName());
+        update(digest, normalize(a.Print()));
+
+        List<vtkObject> deps = dependencies.get(a);
+
+        if (deps != null) {
+            for (vtkObject d : deps) {
+                update(digest, d.GetClassName());
+                update(digest, normalize(d.Print()));
+            }
+        }
+
+        for (int p = 0; p < a.GetNumberOfInputPorts(); p++) {
+            for (int i = 0; i < a.GetNumberOfInputConnections(p); i++) {
+                vtkAlgorithmOutput in = a.GetInputConnection(p, i);
+
+                update(digest, "in " + p + " " + i + " " + in.GetIndex());
+
+                if (!hash(in.GetProducer(), digest, visited)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static void update(MessageDigest digest, String s) {
+        try {
+            digest.update(s.getBytes("UTF-8"));
+            digest.update((byte) 0);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Removes volatile information from the printed state of a vtk object.
+     */
+    private static String normalize(String printed) {
+        StringBuilder sb = new StringBuilder();
+
+        // indentation of the ignored block (nested lines are ignored too)
+        int ignoredIndent = -1;
+
+        for (String line : printed.split("\n")) {
+            String trimmed = line.trim();
+            int indent = line.indexOf(trimmed);
+
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+
+            if (ignoredIndent >= 0 && indent > ignoredIndent) {
+                continue;
+            }
+
+            ignoredIndent = -1;
+
+            if (IGNORED.matcher(trimmed).matches()) {
+                ignoredIndent = indent;
+                continue;
+            }
+
+            sb.append(POINTER.matcher(trimmed).replaceAll("*")).append('\n');
+
+            // file based sources: the key depends on the file
+            int colon = trimmed.indexOf(':');
+
+            if (colon > 0 && trimmed.substring(0, colon).contains("File")) {
+                File f = new File(trimmed.substring(colon + 1).trim());
+
+                if (f.isFile()) {
+                    sb.append(f.length()).append(' ').
+                            append(f.lastModified()).append('\n');
+                }
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Loads the specified output from the cache.
+     *
+     * @param key cache key (see {@link #getKey(vtk.vtkAlgorithm) })
+     * @return the output or <code>null</code> if it is not cached
+     */
+    public synchronized vtkPolyData load(String key) {
+
+        if (!entries.containsKey(key)) {
+            numberOfMisses++;
+            return null;
+        }
+
+        File f = getFile(key);
+
+        try {
+            vtkPolyData result = read(f);
+            numberOfHits++;
+
+            // the order of the entries survives restarts
+            f.setLastModified(System.currentTimeMillis());
+
+            return result;
+        } catch (IOException ex) {
+            Logger.getLogger(PipelineCache.class.getName()).
+                    log(Level.WARNING, "Cannot read cached output: " + f, ex);
+        } catch (RuntimeException ex) {
+            // truncated or otherwise corrupt file
+            Logger.getLogger(PipelineCache.class.getName()).
+                    log(Level.WARNING, "Corrupt cached output: " + f, ex);
+        }
+
+        remove(key);
+        numberOfMisses++;
+
+        return null;
+    }
+
+    /**
+     * Stores the specified output in the cache. Least recently used outputs
+     * are evicted if the cache exceeds its maximum size.
+     *
+     * @param key cache key (see {@link #getKey(vtk.vtkAlgorithm) })
+     * @param data output to store
+     */
+    public synchronized void store(String key, vtkPolyData data) {
+
+        remove(key);
+
+        // the old output could not be deleted
+        if (entries.containsKey(key)) {
+            return;
+        }
+
+        File f = getFile(key);
+        File tmp = new File(directory, key + ".tmp");
+
+        try {
+            write(tmp, data);
+        } catch (IOException ex) {
+            Logger.getLogger(PipelineCache.class.getName()).
+                    log(Level.WARNING, "Cannot write cached output: " + f, ex);
+            tmp.delete();
+            return;
+        }
+
+        // incomplete files are never visible under the final name
+        if (!tmp.renameTo(f)) {
+            tmp.delete();
+            return;
+        }
+
+        entries.put(key, f.length());
+        size += f.length();
+
+        evict();
+    }
+
+    /**
+     * Evicts least recently used outputs until the cache does not exceed
+     * its maximum size.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+
+            if (delete(e.getKey())) {
+                size -= e.getValue();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes the specified output from the cache.
+     */
+    private void remove(String key) {
+        Long s = entries.get(key);
+
+        if (s != null && delete(key)) {
+            entries.remove(key);
+            size -= s;
+        }
+    }
+
+    /**
+     * Deletes the file of the specified output.
+     *
+     * @param key cache key
+     * @return <code>true</code> if the file has been deleted;
+     * <code>false</code> otherwise
+     */
+    private boolean delete(String key) {
+        File f = getFile(key);
+
+        if (f.delete() || !f.exists()) {
+            return true;
+        }
+
+        // e.g. the file is still mapped (windows)
+        Logger.getLogger(PipelineCache.class.getName()).
+                log(Level.WARNING, "Cannot delete cached output: " + f);
+        f.deleteOnExit();
+
+        return false;
+    }
+
+    private File getFile(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+
+    /**
+     * Writes the specified poly data.
+     */
+    private static void write(File f, vtkPolyData data) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(f, "rw");
+        Writer out = null;
+
+        try {
+            file.setLength(0);
+
+            // the header is not compressed
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.flip();
+
+            while (header.hasRemaining()) {
+                file.getChannel().write(header);
+            }
+
+            out = new Writer(file.getChannel());
+
+            vtkPoints points = data.GetPoints();
+
+            if (points == null) {
+                vtkFloatArray empty = new vtkFloatArray();
+                empty.SetNumberOfComponents(3);
+                writeArray(out, empty);
+            } else {
+                writeArray(out, points.GetData());
+            }
+
+            vtkCellArray[] cells = {data.GetVerts(), data.GetLines(),
+                data.GetPolys(), data.GetStrips()};
+
+            for (vtkCellArray c : cells) {
+                if (c == null || c.GetNumberOfCells() == 0) {
+                    out.putInt(0);
+                } else {
+                    out.putInt(c.GetNumberOfCells());
+                    writeArray(out, c.GetData());
+                }
+            }
+
+            writeAttributes(out, data.GetPointData());
+            writeAttributes(out, data.GetCellData());
+
+            out.finish();
+        } finally {
+            if (out != null) {
+                out.end();
+            }
+
+            file.close();
+        }
+    }
+
+    /**
+     * Writes the arrays of the specified attributes.
+     */
+    private static void writeAttributes(Writer out,
+            vtkDataSetAttributes attributes) throws IOException {
+
+        int numberOfArrays = attributes.GetNumberOfArrays();
+
+        vtkDataArray scalars = attributes.GetScalars();
+        vtkDataArray normals = attributes.GetNormals();
+
+        out.putInt(numberOfArrays);
+
+        for (int i = 0; i < numberOfArrays; i++) {
+            vtkDataArray a = attributes.GetArray(i);
+
+            // outputs are either cached completely or not at all
+            if (a == null) {
+                throw new IOException("Unsupported array: "
+                        + attributes.GetArrayName(i));
+            }
+
+            int flags = (a == scalars ? 1 : 0) | (a == normals ? 2 : 0);
+            String name = a.GetName();
+
+            out.putInt(flags);
+            out.putBytes(name == null ? null : name.getBytes("UTF-8"));
+            writeArray(out, a);
+        }
+    }
+
+    /**
+     * Writes the specified array with its original data type.
+     */
+    private static void writeArray(Writer out, vtkDataArray a)
+            throws IOException {
+        out.putInt(a.GetDataType());
+        out.putInt(a.GetNumberOfComponents());
+        out.putArray(getValues(a));
+    }
+
+    /**
+     * Reads poly data via a memory mapped file.
+     */
+    private static vtkPolyData read(File f) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(f, "r");
+
+        MappedByteBuffer mapped;
+
+        try {
+            mapped = file.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, file.length());
+        } finally {
+            // the mapping stays valid after closing the file
+            file.close();
+        }
+
+        if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+            throw new IOException("Unsupported file format: " + f);
+        }
+
+        Reader in = new Reader(mapped);
+
+        try {
+            vtkPolyData data = new vtkPolyData();
+
+            vtkPoints points = new vtkPoints();
+            points.SetData(readArray(in));
+            data.SetPoints(points);
+
+            vtkCellArray[] cells = new vtkCellArray[4];
+
+            for (int i = 0; i < cells.length; i++) {
+                int numberOfCells = in.getInt();
+
+                if (numberOfCells == 0) {
+                    continue;
+                }
+
+                cells[i] = new vtkCellArray();
+                cells[i].SetCells(numberOfCells,
+                        (vtkIdTypeArray) readArray(in));
+            }
+
+            if (cells[0] != null) {
+                data.SetVerts(cells[0]);
+            }
+            if (cells[1] != null) {
+                data.SetLines(cells[1]);
+            }
+            if (cells[2] != null) {
+                data.SetPolys(cells[2]);
+            }
+            if (cells[3] != null) {
+                data.SetStrips(cells[3]);
+            }
+
+            readAttributes(in, data.GetPointData());
+            readAttributes(in, data.GetCellData());
+
+            return data;
+        } finally {
+            in.end();
+        }
+    }
+
+    /**
+     * Reads data arrays and adds them to the specified attributes.
+     */
+    private static void readAttributes(Reader in,
+            vtkDataSetAttributes attributes) throws IOException {
+
+        int numberOfArrays = in.getInt();
+
+        for (int i = 0; i < numberOfArrays; i++) {
+            int flags = in.getInt();
+            byte[] name = in.getBytes();
+
+            vtkDataArray a = readArray(in);
+
+            if (name != null) {
+                a.SetName(new String(name, "UTF-8"));
+            }
+
+            if ((flags & 1) != 0) {
+                attributes.SetScalars(a);
+            } else if ((flags & 2) != 0) {
+                attributes.SetNormals(a);
+            } else {
+                attributes.AddArray(a);
+            }
+        }
+    }
+
+    /**
+     * Reads an array and restores its original data type.
+     */
+    private static vtkDataArray readArray(Reader in) throws IOException {
+        int type = in.getInt();
+        int numberOfComponents = in.getInt();
+        Object values = in.getArray();
+
+        vtkDataArray carrier;
+
+        if (values instanceof byte[]) {
+            vtkUnsignedCharArray a = new vtkUnsignedCharArray();
+            a.SetNumberOfComponents(numberOfComponents);
+            a.SetJavaArray((byte[]) values);
+            carrier = a;
+        } else if (values instanceof short[]) {
+            vtkShortArray a = new vtkShortArray();
+            a.SetNumberOfComponents(numberOfComponents);
+            a.SetJavaArray((short[]) values);
+            carrier = a;
+        } else if (values instanceof int[]) {
+            vtkIntArray a = new vtkIntArray();
+            a.SetNumberOfComponents(numberOfComponents);
+            a.SetJavaArray((int[]) values);
+            carrier = a;
+        } else if (values instanceof long[]) {
+            vtkLongArray a = new vtkLongArray();
+            a.SetNumberOfComponents(numberOfComponents);
+            a.SetJavaArray((long[]) values);
+            carrier = a;
+        } else if (values instanceof float[]) {
+            vtkFloatArray a = new vtkFloatArray();
+            a.SetNumberOfComponents(numberOfComponents);
+            a.SetJavaArray((float[]) values);
+            carrier = a;
+        } else {
+            vtkDoubleArray a = new vtkDoubleArray();
+            a.SetNumberOfComponents(numberOfComponents);
+            a.SetJavaArray((double[]) values);
+            carrier = a;
+        }
+
+        vtkDataArray result = newArray(type);
+
+        if (result.getClass() == carrier.getClass()) {
+            return carrier;
+        }
+
+        // same size, thus, the values are copied bit by bit
+        result.DeepCopy(carrier);
+
+        return result;
+    }
+
+    /**
+     * Returns the values of the specified array as java array (byte, short,
+     * int, long, float or double). The values are not altered: arrays of
+     * unsigned or character types are stored in java arrays of the same
+     * size.
+     *
+     * @throws IOException if the data type is not supported
+     */
+    private static Object getValues(vtkDataArray a) throws IOException {
+        switch (a.GetDataType()) {
+            case VTK_CHAR:
+            case VTK_SIGNED_CHAR:
+            case VTK_UNSIGNED_CHAR:
+                return ((vtkUnsignedCharArray) convert(
+                        a, new vtkUnsignedCharArray())).GetJavaArray();
+            case VTK_SHORT:
+            case VTK_UNSIGNED_SHORT:
+                return ((vtkShortArray) convert(
+                        a, new vtkShortArray())).GetJavaArray();
+            case VTK_INT:
+            case VTK_UNSIGNED_INT:
+                return ((vtkIntArray) convert(
+                        a, new vtkIntArray())).GetJavaArray();
+            case VTK_LONG:
+            case VTK_UNSIGNED_LONG:
+            case VTK_ID_TYPE:
+            case VTK_LONG_LONG:
+            case VTK_UNSIGNED_LONG_LONG:
+                // size of these types depends on the platform
+                if (a.GetDataTypeSize() == 4) {
+                    return ((vtkIntArray) convert(
+                            a, new vtkIntArray())).GetJavaArray();
+                }
+
+                vtkLongArray longs = new vtkLongArray();
+
+                if (longs.GetDataTypeSize() == a.GetDataTypeSize()) {
+                    return ((vtkLongArray) convert(a, longs)).GetJavaArray();
+                }
+
+                break;
+            case VTK_FLOAT:
+                return ((vtkFloatArray) convert(
+                        a, new vtkFloatArray())).GetJavaArray();
+            case VTK_DOUBLE:
+                return ((vtkDoubleArray) convert(
+                        a, new vtkDoubleArray())).GetJavaArray();
+        }
+
+        throw new IOException("Unsupported array: " + a.GetClassName());
+    }
+
+    /**
+     * Returns the specified array as array of the class of the specified
+     * carrier (copied into the carrier if necessary).
+     */
+    private static vtkDataArray convert(vtkDataArray a,
+            vtkDataArray carrier) {
+        if (carrier.getClass().isInstance(a)) {
+            return a;
+        }
+
+        carrier.DeepCopy(a);
+
+        return carrier;
+    }
+
+    /**
+     * Creates an empty array of the specified data type.
+     *
+     * @param type vtk data type
+     * @throws IOException if the data type is not supported
+     */
+    private static vtkDataArray newArray(int type) throws IOException {
+        switch (type) {
+            case VTK_CHAR:
+                return new vtkCharArray();
+            case VTK_UNSIGNED_CHAR:
+                return new vtkUnsignedCharArray();
+            case VTK_SHORT:
+                return new vtkShortArray();
+            case VTK_UNSIGNED_SHORT:
+                return new vtkUnsignedShortArray();
+            case VTK_INT:
+                return new vtkIntArray();
+            case VTK_UNSIGNED_INT:
+                return new vtkUnsignedIntArray();
+            case VTK_LONG:
+                return new vtkLongArray();
+            case VTK_UNSIGNED_LONG:
+                return new vtkUnsignedLongArray();
+            case VTK_FLOAT:
+                return new vtkFloatArray();
+            case VTK_DOUBLE:
+                return new vtkDoubleArray();
+            case VTK_ID_TYPE:
+                return new vtkIdTypeArray();
+            case VTK_SIGNED_CHAR:
+                return new vtkSignedCharArray();
+            case VTK_LONG_LONG:
+                return new vtkLongLongArray();
+            case VTK_UNSIGNED_LONG_LONG:
+                return new vtkUnsignedLongLongArray();
+            default:
+                throw new IOException("Unsupported data type: " + type);
+        }
+    }
+
+    /**
+     * Defines the maximum size of the cache (1 GB by default).
+     *
+     * @param maxSize maximum size (in bytes)
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException(
+                    "Maximum size must be positive: " + maxSize);
+        }
+
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    /**
+     * Returns the maximum size of the cache.
+     *
+     * @return the maximum size (in bytes)
+     */
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the current size of the cache.
+     *
+     * @return the current size (in bytes)
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of outputs that have been loaded from the cache.
+     *
+     * @return the number of cache hits
+     */
+    public synchronized int getNumberOfHits() {
+        return numberOfHits;
+    }
+
+    /**
+     * Returns the number of outputs that were not cached.
+     *
+     * @return the number of cache misses
+     */
+    public synchronized int getNumberOfMisses() {
+        return numberOfMisses;
+    }
+
+    /**
+     * Removes all outputs from the cache.
+     */
+    public synchronized void clear() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+
+        while (it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+
+            if (delete(e.getKey())) {
+                size -= e.getValue();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Buffered writer for file channels. Written values are compressed.
+     */
+    private static class Writer {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final byte[] compressed = new byte[1 << 16];
+
+        public Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        public void putInt(int v) throws IOException {
+            ensureRemaining(4);
+            buffer.putInt(v);
+        }
+
+        /**
+         * Writes the specified byte, short, int, long, float or double
+         * array.
+         */
+        public void putArray(Object values) throws IOException {
+            int kind = getKind(values);
+            int elementSize = ELEMENT_SIZES[kind];
+            int length = Array.getLength(values);
+
+            putInt(kind);
+            putInt(length);
+
+            int offset = 0;
+
+            while (offset < length) {
+                ensureRemaining(elementSize);
+                int n = Math.min(length - offset,
+                        buffer.remaining() / elementSize);
+
+                switch (kind) {
+                    case BYTES:
+                        buffer.put((byte[]) values, offset, n);
+                        break;
+                    case SHORTS:
+                        buffer.asShortBuffer().put(
+                                (short[]) values, offset, n);
+                        break;
+                    case INTS:
+                        buffer.asIntBuffer().put((int[]) values, offset, n);
+                        break;
+                    case LONGS:
+                        buffer.asLongBuffer().put((long[]) values, offset, n);
+                        break;
+                    case FLOATS:
+                        buffer.asFloatBuffer().put(
+                                (float[]) values, offset, n);
+                        break;
+                    default:
+                        buffer.asDoubleBuffer().put(
+                                (double[]) values, offset, n);
+                        break;
+                }
+
+                if (kind != BYTES) {
+                    buffer.position(buffer.position() + n * elementSize);
+                }
+
+                offset += n;
+            }
+        }
+
+        public void putBytes(byte[] values) throws IOException {
+            if (values == null) {
+                putInt(-1);
+                return;
+            }
+
+            putInt(values.length);
+
+            int offset = 0;
+
+            while (offset < values.length) {
+                ensureRemaining(1);
+                int n = Math.min(values.length - offset, buffer.remaining());
+                buffer.put(values, offset, n);
+                offset += n;
+            }
+        }
+
+        private void ensureRemaining(int n) throws IOException {
+            if (buffer.remaining() < n) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            deflater.setInput(buffer.array(), 0, buffer.position());
+
+            while (!deflater.needsInput()) {
+                write(deflater.deflate(compressed));
+            }
+
+            buffer.clear();
+        }
+
+        /**
+         * Writes all remaining values.
+         */
+        public void finish() throws IOException {
+            flush();
+
+            deflater.finish();
+
+            while (!deflater.finished()) {
+                write(deflater.deflate(compressed));
+            }
+        }
+
+        private void write(int length) throws IOException {
+            ByteBuffer b = ByteBuffer.wrap(compressed, 0, length);
+
+            while (b.hasRemaining()) {
+                channel.write(b);
+            }
+        }
+
+        /**
+         * Releases the native resources of the compressor.
+         */
+        public void end() {
+            deflater.end();
+        }
+
+        private static int getKind(Object values) {
+            if (values instanceof byte[]) {
+                return BYTES;
+            } else if (values instanceof short[]) {
+                return SHORTS;
+            } else if (values instanceof int[]) {
+                return INTS;
+            } else if (values instanceof long[]) {
+                return LONGS;
+            } else if (values instanceof float[]) {
+                return FLOATS;
+            } else if (values instanceof double[]) {
+                return DOUBLES;
+            }
+
+            throw new IllegalArgumentException(
+                    "Unsupported array: " + values);
+        }
+    }
+
+    /**
+     * Buffered reader for compressed values (see {@link Writer}).
+     */
+    private static class Reader {
+
+        private final ByteBuffer source;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        private final Inflater inflater = new Inflater();
+        private final byte[] compressed = new byte[1 << 16];
+
+        public Reader(ByteBuffer source) {
+            this.source = source;
+
+            // empty
+            buffer.flip();
+        }
+
+        public int getInt() throws IOException {
+            ensureAvailable(4);
+            return buffer.getInt();
+        }
+
+        /**
+         * Reads a byte, short, int, long, float or double array.
+         */
+        public Object getArray() throws IOException {
+            int kind = getInt();
+            int length = getInt();
+
+            if (kind < 0 || kind >= ELEMENT_SIZES.length || length < 0) {
+                throw new IOException("Corrupt array: " + kind + ", " + length);
+            }
+
+            int elementSize = ELEMENT_SIZES[kind];
+
+            Object result;
+
+            switch (kind) {
+                case BYTES:
+                    result = new byte[length];
+                    break;
+                case SHORTS:
+                    result = new short[length];
+                    break;
+                case INTS:
+                    result = new int[length];
+                    break;
+                case LONGS:
+                    result = new long[length];
+                    break;
+                case FLOATS:
+                    result = new float[length];
+                    break;
+                default:
+                    result = new double[length];
+                    break;
+            }
+
+            int offset = 0;
+
+            while (offset < length) {
+                ensureAvailable(elementSize);
+                int n = Math.min(length - offset,
+                        buffer.remaining() / elementSize);
+
+                switch (kind) {
+                    case BYTES:
+                        buffer.get((byte[]) result, offset, n);
+                        break;
+                    case SHORTS:
+                        buffer.asShortBuffer().get(
+                                (short[]) result, offset, n);
+                        break;
+                    case INTS:
+                        buffer.asIntBuffer().get((int[]) result, offset, n);
+                        break;
+                    case LONGS:
+                        buffer.asLongBuffer().get((long[]) result, offset, n);
+                        break;
+                    case FLOATS:
+                        buffer.asFloatBuffer().get(
+                                (float[]) result, offset, n);
+                        break;
+                    default:
+                        buffer.asDoubleBuffer().get(
+                                (double[]) result, offset, n);
+                        break;
+                }
+
+                if (kind != BYTES) {
+                    buffer.position(buffer.position() + n * elementSize);
+                }
+
+                offset += n;
+            }
+
+            return result;
+        }
+
+        public byte[] getBytes() throws IOException {
+            int length = getInt();
+
+            if (length < 0) {
+                return null;
+            }
+
+            byte[] result = new byte[length];
+
+            int offset = 0;
+
+            while (offset < length) {
+                ensureAvailable(1);
+                int n = Math.min(length - offset, buffer.remaining());
+                buffer.get(result, offset, n);
+                offset += n;
+            }
+
+            return result;
+        }
+
+        /**
+         * Decompresses values until at least <code>n</code> bytes are
+         * available.
+         */
+        private void ensureAvailable(int n) throws IOException {
+            if (buffer.remaining() >= n) {
+                return;
+            }
+
+            buffer.compact();
+
+            try {
+                while (buffer.position() < n) {
+                    if (inflater.needsInput()) {
+                        int length = Math.min(
+                                compressed.length, source.remaining());
+
+                        if (length == 0) {
+                            throw new EOFException("Truncated cached output");
+                        }
+
+                        source.get(compressed, 0, length);
+                        inflater.setInput(compressed, 0, length);
+                    }
+
+                    int count = inflater.inflate(buffer.array(),
+                            buffer.position(), buffer.remaining());
+
+                    if (count == 0 && (inflater.finished()
+                            || inflater.needsDictionary())) {
+                        throw new EOFException("Truncated cached output");
+                    }
+
+                    buffer.position(buffer.position() + count);
+                }
+            } catch (DataFormatException ex) {
+                throw new IOException("Corrupt cached output", ex);
+            } finally {
+                buffer.flip();
+            }
+        }
+
+        /**
+         * Releases the native resources of the decompressor.
+         */
+        public void end() {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,474 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import vtk.vtkAlgorithm;
+import vtk.vtkAlgorithmOutput;
+import vtk.vtkDataObject;
+import vtk.vtkDataObjectTypes;
+
+/**
+ * Updates independent branches of a vtk pipeline concurrently. The scheduler
+ * analyses the pipeline upstream of a set of sink algorithms (e.g. the
+ * mappers of a scene). Algorithms that are upstream of more than one sink
+ * are shared. They are updated first, one after another. Afterwards, the
+ * branches, i.e., the algorithms that belong to exactly one sink, are
+ * updated in parallel.
+ *
+ * <p>Branches are decoupled from the shared algorithms: they read shallow
+ * copies of the shared outputs. Thus, concurrent branch updates never
+ * traverse the executives of the shared algorithms (vtk executives are not
+ * thread-safe). As a consequence, changes of the shared algorithms only
+ * reach the branches via {@link #update() }. The original connections are
+ * restored by {@link #dispose() }.</p>
+ *
+ * <p>Example:</p>
+ * <pre>
+ * PipelineScheduler scheduler = new PipelineScheduler();
+ * scheduler.addSink(isoMapper);
+ * scheduler.addSink(cutMapper);
+ * ...
+ * sample.SetSampleDimensions(100, 100, 100);
+ * scheduler.update();
+ * </pre>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class PipelineScheduler {
+
+    private final ExecutorService executor;
+    private final List<vtkAlgorithm> sinks = new ArrayList<vtkAlgorithm>();
+    //
+    // shared algorithms that are updated before the branches (per output
+    // port)
+    private final List<vtkAlgorithmOutput> shared =
+            new ArrayList<vtkAlgorithmOutput>();
+    //
+    // sinks of the branches that are updated in parallel
+    private final List<vtkAlgorithm> branches = new ArrayList<vtkAlgorithm>();
+    //
+    // input ports of branches that are connected to shared algorithms
+    private final List<Decoupling> decouplings = new ArrayList<Decoupling>();
+    private final vtkDataObjectTypes dataObjectTypes =
+            new vtkDataObjectTypes();
+    private boolean analysed;
+    //
+    // duration of the last update (in nanoseconds)
+    private long sharedTime;
+    private long branchTime;
+
+    /**
+     * Constructor. Branches are updated by the shared worker pool.
+     */
+    public PipelineScheduler() {
+        this(WorkerPool.getExecutor());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param executor executor that updates the branches
+     */
+    public PipelineScheduler(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds a sink algorithm to this scheduler.
+     *
+     * @param sink sink to add
+     */
+    public synchronized void addSink(vtkAlgorithm sink) {
+        for (vtkAlgorithm s : sinks) {
+            if (s == sink) {
+                return;
+            }
+        }
+
+        restore();
+        sinks.add(sink);
+    }
+
+    /**
+     * Removes a sink algorithm from this scheduler.
+     *
+     * @param sink sink to remove
+     */
+    public synchronized void removeSink(vtkAlgorithm sink) {
+        for (int i = 0; i < sinks.size(); i++) {
+            if (sinks.get(i) == sink) {
+                restore();
+                sinks.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Updates the shared algorithms and afterwards all branches in parallel.
+     * This method blocks until all branches have been updated.
+     */
+    public synchronized void update() {
+
+        if (!analysed) {
+            analyse();
+        }
+
+        long start = System.nanoTime();
+
+        for (vtkAlgorithmOutput out : shared) {
+            out.GetProducer().GetExecutive().Update(out.GetIndex());
+        }
+
+        for (Decoupling d : decouplings) {
+            d.synchronize(dataObjectTypes);
+        }
+
+        long sharedEnd = System.nanoTime();
+
+        if (branches.size() == 1) {
+            branches.get(0).Update();
+        } else if (!branches.isEmpty()) {
+
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+            for (final vtkAlgorithm b : branches) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        b.Update();
+                        return null;
+                    }
+                });
+            }
+
+            try {
+                for (Future<Void> f : executor.invokeAll(tasks)) {
+                    f.get();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException(ex.getCause());
+            }
+        }
+
+        sharedTime = sharedEnd - start;
+        branchTime = System.nanoTime() - sharedEnd;
+    }
+
+    /**
+     * Analyses the pipeline upstream of the sinks.
+     */
+    private void analyse() {
+
+        // number of sinks that are downstream of an algorithm
+        Map<vtkAlgorithm, Integer> sinkCount =
+                new IdentityHashMap<vtkAlgorithm, Integer>();
+
+        for (vtkAlgorithm sink : sinks) {
+
+            Map<vtkAlgorithm, Boolean> visited =
+                    new IdentityHashMap<vtkAlgorithm, Boolean>();
+            List<vtkAlgorithm> stack = new ArrayList<vtkAlgorithm>();
+            stack.add(sink);
+
+            while (!stack.isEmpty()) {
+                vtkAlgorithm a = stack.remove(stack.size() - 1);
+
+                if (visited.put(a, Boolean.TRUE) != null) {
+                    continue;
+                }
+
+                Integer count = sinkCount.get(a);
+                sinkCount.put(a, count == null ? 1 : count + 1);
+
+                for (vtkAlgorithmOutput in : getInputs(a)) {
+                    stack.add(in.GetProducer());
+                }
+            }
+        }
+
+        shared.clear();
+        branches.clear();
+        decouplings.clear();
+
+        for (vtkAlgorithm sink : sinks) {
+            if (sinkCount.get(sink) > 1) {
+                addShared(sink.GetNumberOfOutputPorts() > 0
+                        ? sink.GetOutputPort(0) : null, sink);
+            } else {
+                branches.add(sink);
+            }
+        }
+
+        for (Map.Entry<vtkAlgorithm, Integer> e : sinkCount.entrySet()) {
+
+            vtkAlgorithm consumer = e.getKey();
+
+            if (e.getValue() > 1) {
+                continue;
+            }
+
+            for (int p = 0; p < consumer.GetNumberOfInputPorts(); p++) {
+
+                int n = consumer.GetNumberOfInputConnections(p);
+                vtkAlgorithmOutput[] connections = new vtkAlgorithmOutput[n];
+                boolean connectedToShared = false;
+
+                for (int i = 0; i < n; i++) {
+                    connections[i] = consumer.GetInputConnection(p, i);
+
+                    if (sinkCount.get(connections[i].GetProducer()) > 1) {
+                        addShared(connections[i], null);
+                        connectedToShared = true;
+                    }
+                }
+
+                if (connectedToShared) {
+                    decouplings.add(new Decoupling(consumer, p, connections,
+                            sinkCount));
+                }
+            }
+        }
+
+        analysed = true;
+    }
+
+    /**
+     * Adds a shared output port (or a shared sink without output ports).
+     */
+    private void addShared(vtkAlgorithmOutput out, vtkAlgorithm sink) {
+
+        if (out == null) {
+            // sinks without output ports cannot be shared (nothing can be
+            // connected to them). this is just defensive
+            branches.add(sink);
+            return;
+        }
+
+        for (vtkAlgorithmOutput o : shared) {
+            if (o.GetProducer() == out.GetProducer()
+                    && o.GetIndex() == out.GetIndex()) {
+                return;
+            }
+        }
+
+        shared.add(out);
+    }
+
+    /**
+     * Returns all input connections of the specified algorithm.
+     */
+    private static List<vtkAlgorithmOutput> getInputs(vtkAlgorithm a) {
+        List<vtkAlgorithmOutput> result = new ArrayList<vtkAlgorithmOutput>();
+
+        for (int p = 0; p < a.GetNumberOfInputPorts(); p++) {
+            for (int i = 0; i < a.GetNumberOfInputConnections(p); i++) {
+                result.add(a.GetInputConnection(p, i));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Connects the specified port of an algorithm to the specified outputs.
+     */
+    private static void connect(vtkAlgorithm a, int port,
+            vtkAlgorithmOutput[] connections) {
+        for (int i = 0; i < connections.length; i++) {
+            if (i == 0) {
+                a.SetInputConnection(port, connections[i]);
+            } else {
+                a.AddInputConnection(port, connections[i]);
+            }
+        }
+    }
+
+    /**
+     * Restores the original connections of all decoupled branches.
+     */
+    private void restore() {
+        for (Decoupling d : decouplings) {
+            d.restore();
+        }
+
+        decouplings.clear();
+        shared.clear();
+        branches.clear();
+        analysed = false;
+    }
+
+    /**
+     * Returns the number of branches that are updated in parallel.
+     *
+     * @return the number of branches
+     */
+    public synchronized int getNumberOfBranches() {
+        if (!analysed) {
+            analyse();
+        }
+        return branches.size();
+    }
+
+    /**
+     * Returns the number of shared output ports that are updated before the
+     * branches.
+     *
+     * @return the number of shared output ports
+     */
+    public synchronized int getNumberOfSharedOutputs() {
+        if (!analysed) {
+            analyse();
+        }
+        return shared.size();
+    }
+
+    /**
+     * Returns the time needed to update the shared algorithms during the
+     * last update (in seconds).
+     *
+     * @return the time needed to update the shared algorithms
+     */
+    public synchronized double getSharedUpdateTime() {
+        return sharedTime / 1e9;
+    }
+
+    /**
+     * Returns the time needed to update the branches during the last update
+     * (in seconds).
+     *
+     * @return the time needed to update the branches
+     */
+    public synchronized double getBranchUpdateTime() {
+        return branchTime / 1e9;
+    }
+
+    /**
+     * Restores the original pipeline connections and removes all sinks.
+     */
+    public synchronized void dispose() {
+        restore();
+        sinks.clear();
+    }
+
+    /**
+     * Input port of a branch algorithm that is connected to (at least one)
+     * shared algorithm.
+     */
+    private static class Decoupling {
+
+        private final vtkAlgorithm consumer;
+        private final int port;
+        private final vtkAlgorithmOutput[] original;
+        //
+        // copies of the shared outputs (null for connections to algorithms
+        // of the same branch)
+        private final vtkDataObject[] copies;
+        private final boolean[] isShared;
+        //
+        // mtime of the shared outputs when they were copied
+        private final int[] copiedMTime;
+        private boolean decoupled;
+
+        public Decoupling(vtkAlgorithm consumer, int port,
+                vtkAlgorithmOutput[] original,
+                Map<vtkAlgorithm, Integer> sinkCount) {
+            this.consumer = consumer;
+            this.port = port;
+            this.original = original;
+            this.copies = new vtkDataObject[original.length];
+            this.isShared = new boolean[original.length];
+            this.copiedMTime = new int[original.length];
+
+            for (int i = 0; i < original.length; i++) {
+                isShared[i] = sinkCount.get(original[i].GetProducer()) > 1;
+            }
+        }
+
+        /**
+         * Copies the outputs of the shared algorithms if they have changed
+         * and connects the consumer to the copies. The shared algorithms
+         * must be up to date.
+         */
+        public void synchronize(vtkDataObjectTypes types) {
+
+            for (int i = 0; i < original.length; i++) {
+
+                if (!isShared[i]) {
+                    continue;
+                }
+
+                vtkDataObject out = original[i].GetProducer().
+                        GetOutputDataObject(original[i].GetIndex());
+
+                if (copies[i] == null) {
+                    copies[i] = types.NewDataObject(out.GetDataObjectType());
+                } else if (copiedMTime[i] == out.GetMTime()) {
+                    continue;
+                }
+
+                // modifies the copy, i.e., the branch will execute
+                copies[i].ShallowCopy(out);
+                copiedMTime[i] = out.GetMTime();
+            }
+
+            if (!decoupled) {
+                vtkAlgorithmOutput[] connections =
+                        new vtkAlgorithmOutput[original.length];
+
+                for (int i = 0; i < original.length; i++) {
+                    connections[i] = isShared[i]
+                            ? copies[i].GetProducerPort() : original[i];
+                }
+
+                connect(consumer, port, connections);
+                decoupled = true;
+            }
+        }
+
+        /**
+         * Restores the original connections.
+         */
+        public void restore() {
+            if (decoupled) {
+                connect(consumer, port, original);
+                decoupled = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.io.File;
+import vtk.*;
+
+/**
+ * Measures the update time of a pipeline with many independent branches
+ * with and without concurrent branch updates (see
+ * {@link PipelineScheduler}).
+ *
+ * <p>Usage: <code>PipelineSchedulerBenchmark [branches [resolution
+ * [iterations]]]</code></p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class PipelineSchedulerBenchmark {
+
+    // no instanciation allowed
+    private PipelineSchedulerBenchmark() {
+        throw new AssertionError(); // not in this class either!
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args optional arguments: number of branches, sample resolution
+     * and iterations
+     */
+    public static void main(String[] args) throws Exception {
+
+        int numberOfBranches = 16;
+        int resolution = 100;
+        int iterations = 5;
+
+        if (args.length >= 1) {
+            numberOfBranches = Integer.parseInt(args[0]);
+        }
+
+        if (args.length >= 2) {
+            resolution = Integer.parseInt(args[1]);
+        }
+
+        if (args.length >= 3) {
+            iterations = Integer.parseInt(args[2]);
+        }
+
+        SysUtil.loadLibraries(new File("natives").getAbsolutePath());
+
+        vtkSphere sphere = new vtkSphere();
+        sphere.SetRadius(0.8);
+
+        // shared upstream
+        vtkSampleFunction sample = new vtkSampleFunction();
+        sample.SetSampleDimensions(resolution, resolution, resolution);
+        sample.SetImplicitFunction(sphere);
+
+        vtkAlgorithm[] sinks = new vtkAlgorithm[numberOfBranches];
+
+        // independent branches: contour, smoothing and normals
+        for (int i = 0; i < numberOfBranches; i++) {
+            vtkContourFilter contour = new vtkContourFilter();
+            contour.SetInputConnection(sample.GetOutputPort());
+            contour.SetValue(0, (i + 1.0) / (numberOfBranches + 1));
+
+            vtkSmoothPolyDataFilter smooth = new vtkSmoothPolyDataFilter();
+            smooth.SetInputConnection(contour.GetOutputPort());
+            smooth.SetNumberOfIterations(20);
+
+            vtkPolyDataNormals normals = new vtkPolyDataNormals();
+            normals.SetInputConnection(smooth.GetOutputPort());
+
+            sinks[i] = normals;
+        }
+
+        System.out.println(">> pipeline scheduler benchmark: "
+                + numberOfBranches + " branches, resolution " + resolution
+                + ", " + iterations + " iterations");
+
+        // serial update (the default vtk behavior)
+        long start = System.nanoTime();
+
+        for (int it = 0; it < iterations; it++) {
+            sample.Modified();
+
+            for (vtkAlgorithm sink : sinks) {
+                sink.Update();
+            }
+        }
+
+        double serial = (System.nanoTime() - start) / 1e6 / iterations;
+
+        System.out.println(String.format(
+                " --> serial:    %8.1f ms/update", serial));
+
+        PipelineScheduler scheduler = new PipelineScheduler();
+
+        for (vtkAlgorithm sink : sinks) {
+            scheduler.addSink(sink);
+        }
+
+        double sharedTime = 0;
+        double branchTime = 0;
+
+        start = System.nanoTime();
+
+        for (int it = 0; it < iterations; it++) {
+            sample.Modified();
+            scheduler.update();
+
+            sharedTime += scheduler.getSharedUpdateTime();
+            branchTime += scheduler.getBranchUpdateTime();
+        }
+
+        double parallel = (System.nanoTime() - start) / 1e6 / iterations;
+
+        System.out.println(String.format(
+                " --> scheduled: %8.1f ms/update (shared %.1f ms, "
+                + "%d branches %.1f ms, %d threads)", parallel,
+                sharedTime * 1e3 / iterations,
+                scheduler.getNumberOfBranches(),
+                branchTime * 1e3 / iterations,
+                WorkerPool.getNumberOfThreads()));
+
+        System.out.println(String.format(
+                " --> speedup:   %8.2fx", serial / parallel));
+
+        scheduler.dispose();
+
+        System.out.println(" --> done.");
+
+        System.exit(0);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.FutureTask;
+import vtk.vtkPolyData;
+import vtk.vtkPolyDataAlgorithm;
+import vtk.vtkPolyDataMapper;
+import vtk.vtkRenderer;
+
+/**
+ * Future of a background pipeline update (see {@link BackgroundPipeline}).
+ * The progress of the update can be queried via {@link #getProgress() }.
+ * Cancelling the future aborts the execution of the algorithm (see
+ * {@link vtk.vtkAlgorithm#SetAbortExecute(int) }). The result of the future
+ * is the new input of the mapper.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class PipelineUpdate extends FutureTask<vtkPolyData> {
+
+    private final vtkPolyDataAlgorithm algorithm;
+    //
+    // progress of the algorithm ([0,1])
+    private volatile double progress;
+
+    /**
+     * Constructor.
+     *
+     * @param pipeline pipeline that executes this update
+     * @param algorithm algorithm to update
+     * @param mapper mapper that receives the output
+     * @param parameters changes parameters before the update (may be
+     * <code>null</code>)
+     */
+    PipelineUpdate(BackgroundPipeline pipeline,
+            vtkPolyDataAlgorithm algorithm, vtkPolyDataMapper mapper,
+            Runnable parameters) {
+        this(new Task(pipeline, algorithm, mapper, parameters));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param task task to execute
+     */
+    private PipelineUpdate(Task task) {
+        super(task);
+        this.algorithm = task.algorithm;
+        task.update = this;
+    }
+
+    /**
+     * Returns the progress of this update.
+     *
+     * @return the progress (<code>[0,1]</code>)
+     */
+    public double getProgress() {
+        return isDone() && !isCancelled() ? 1.0 : progress;
+    }
+
+    /**
+     * Updates the progress. This method is called by the
+     * <code>ProgressEvent</code> observer of the algorithm.
+     */
+    public void progressChanged() {
+        progress = algorithm.GetProgress();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean result = super.cancel(mayInterruptIfRunning);
+
+        if (result) {
+            // the algorithm checks this flag during execution
+            algorithm.SetAbortExecute(1);
+        }
+
+        return result;
+    }
+
+    /**
+     * Updates the algorithm and swaps the output into the mapper.
+     */
+    private static class Task implements Callable<vtkPolyData> {
+
+        private final BackgroundPipeline pipeline;
+        private final vtkPolyDataAlgorithm algorithm;
+        private final vtkPolyDataMapper mapper;
+        private final Runnable parameters;
+        private PipelineUpdate update;
+
+        public Task(BackgroundPipeline pipeline,
+                vtkPolyDataAlgorithm algorithm, vtkPolyDataMapper mapper,
+                Runnable parameters) {
+            this.pipeline = pipeline;
+            this.algorithm = algorithm;
+            this.mapper = mapper;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public vtkPolyData call() throws Exception {
+
+            if (update.isCancelled()) {
+                throw new CancellationException();
+            }
+
+            // parameters are changed on the update thread, i.e., never while
+            // another update is running
+            if (parameters != null) {
+                parameters.run();
+            }
+
+            PipelineCache cache = pipeline.getCache();
+            String key = cache != null ? cache.getKey(algorithm) : null;
+
+            vtkPolyData cached = key != null ? cache.load(key) : null;
+
+            if (cached != null) {
+                swap(cached);
+                return cached;
+            }
+
+            algorithm.SetAbortExecute(0);
+
+            int observer = algorithm.AddObserver(
+                    "ProgressEvent", update, "progressChanged");
+
+            boolean aborted;
+
+            try {
+                algorithm.Update();
+                aborted = algorithm.GetAbortExecute() != 0
+                        || update.isCancelled();
+            } finally {
+                algorithm.RemoveObserver(observer);
+            }
+
+            if (aborted) {
+                algorithm.SetAbortExecute(0);
+
+                // the partial output must not be considered up to date
+                algorithm.Modified();
+
+                throw new CancellationException();
+            }
+
+            // detached copy (the filter allocates new arrays on the next
+            // execution, i.e., the copy is not modified afterwards)
+            vtkPolyData output = new vtkPolyData();
+            output.ShallowCopy(algorithm.GetOutput());
+
+            if (key != null) {
+                cache.store(key, output);
+            }
+
+            swap(output);
+
+            return output;
+        }
+
+        /**
+         * Swaps the specified output into the mapper.
+         */
+        private void swap(final vtkPolyData output) {
+            pipeline.swap(update, mapper, new SceneTransaction() {
+                @Override
+                public void run(vtkRenderer renderer) {
+                    mapper.SetInput(output);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import vtk.vtkRenderWindow;
+
+/**
+ * Transfers pixels from a vtk render window to Java memory. Implementations
+ * differ in how the pixels are transferred (see {@link PixelTransfers}).
+ *
+ * <p><b>Note:</b> {@link #readPixels(vtk.vtkRenderWindow, int, int, int, int, int, byte[]) }
+ * is called while holding the render lock.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public interface PixelTransfer {
+
+    /**
+     * Returns the name of this pixel transfer.
+     *
+     * @return the name of this pixel transfer
+     */
+    public String getName();
+
+    /**
+     * Indicates whether this pixel transfer can be used on this system.
+     *
+     * @return <code>true</code> if this pixel transfer is available;
+     * <code>false</code> otherwise
+     */
+    public boolean isAvailable();
+
+    /**
+     * Reads the specified region of the front buffer. The result contains
+     * the pixels row by row, starting with the bottom row (vtk/OpenGL
+     * layout).
+     *
+     * @param rw render window to read from
+     * @param x x coordinate of the lower left corner (vtk coordinates)
+     * @param y y coordinate of the lower left corner (vtk coordinates)
+     * @param w width
+     * @param h height
+     * @param components number of components (3 for RGB, 4 for RGBA)
+     * @param dest array that may be reused to store the result (may be
+     * <code>null</code>)
+     * @return the pixel data (either <code>dest</code> or a new array)
+     */
+    public byte[] readPixels(vtkRenderWindow rw,
+            int x, int y, int w, int h, int components, byte[] dest);
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.io.File;
+import vtk.*;
+
+/**
+ * Compares the available pixel transfers. Renders a simple scene to a native
+ * render window and measures the time necessary to read back the content with
+ * each pixel transfer.
+ *
+ * <p>Usage: <code>PixelTransferBenchmark [width height [iterations]]</code></p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class PixelTransferBenchmark {
+
+    // no instanciation allowed
+    private PixelTransferBenchmark() {
+        throw new AssertionError(); // not in this class either!
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args optional arguments: width, height and number of iterations
+     */
+    public static void main(String[] args) {
+
+        int width = 1920;
+        int height = 1080;
+        int iterations = 100;
+
+        if (args.length >= 2) {
+            width = Integer.parseInt(args[0]);
+            height = Integer.parseInt(args[1]);
+        }
+
+        if (args.length >= 3) {
+            iterations = Integer.parseInt(args[2]);
+        }
+
+        System.loadLibrary("jawt");
+        SysUtil.loadLibraries(new File("natives").getAbsolutePath());
+
+        vtkSphereSource sphere = new vtkSphereSource();
+        sphere.SetThetaResolution(64);
+        sphere.SetPhiResolution(64);
+
+        vtkPolyDataMapper mapper = new vtkPolyDataMapper();
+        mapper.SetInputConnection(sphere.GetOutputPort());
+
+        vtkActor actor = new vtkActor();
+        actor.SetMapper(mapper);
+
+        vtkRenderer ren = new vtkRenderer();
+        ren.AddActor(actor);
+
+        vtkRenderWindow rw = new vtkRenderWindow();
+        rw.AddRenderer(ren);
+        rw.SetSize(width, height);
+        rw.Render();
+
+        System.out.println(">> pixel transfer benchmark: " + width + "x"
+                + height + ", " + iterations + " iterations");
+
+        for (PixelTransfer t : PixelTransfers.getAll()) {
+
+            if (!t.isAvailable()) {
+                System.out.println(" --> " + t.getName() + ": not available");
+                continue;
+            }
+
+            for (int components = 3; components <= 4; components++) {
+                double ms = measure(t, rw, width, height, components,
+                        iterations);
+                double mb = width * height * components / (1024.0 * 1024.0);
+
+                System.out.println(String.format(
+                        " --> %-10s %s: %8.3f ms/frame, %8.1f MB/s",
+                        t.getName(), components == 3 ? "RGB " : "RGBA",
+                        ms, mb / (ms / 1000.0)));
+            }
+        }
+
+        System.out.println(" --> done.");
+
+        System.exit(0);
+    }
+
+    /**
+     * Measures the average readback time of the specified pixel transfer.
+     *
+     * @return average readback time (in milliseconds)
+     */
+    private static double measure(PixelTransfer t, vtkRenderWindow rw,
+            int width, int height, int components, int iterations) {
+
+        byte[] data = null;
+
+        // warm up
+        for (int i = 0; i < 10; i++) {
+            rw.Render();
+            data = t.readPixels(rw, 0, 0, width, height, components, data);
+        }
+
+        long duration = 0;
+
+        for (int i = 0; i < iterations; i++) {
+            rw.Render();
+
+            long start = System.nanoTime();
+            data = t.readPixels(rw, 0, 0, width, height, components, data);
+            duration += System.nanoTime() - start;
+        }
+
+        return duration / 1e6 / iterations;
+    }
+}
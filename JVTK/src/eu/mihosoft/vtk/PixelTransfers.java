@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+/**
+ * Creates pixel transfers. The default pixel transfer can be selected via
+ * the system property <code>eu.mihosoft.vtk.pixeltransfer</code> (values:
+ * <code>heap</code>, <code>direct</code> or <code>synthetic</code>). If no
+ * property is specified, the fastest available pixel transfer is used.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class PixelTransfers {
+
+    /**
+     * Name of the system property that selects the default pixel transfer.
+     */
+    public static final String PROPERTY_NAME = "eu.mihosoft.vtk.pixeltransfer";
+
+    // no instanciation allowed
+    private PixelTransfers() {
+        throw new AssertionError(); // not in this class either!
+    }
+
+    /**
+     * Returns all pixel transfers (available or not).
+     *
+     * @return all pixel transfers
+     */
+    public static PixelTransfer[] getAll() {
+        return new PixelTransfer[]{
+                    new HeapPixelTransfer(),
+                    new DirectBufferPixelTransfer(),
+                    new SyntheticPixelTransfer()};
+    }
+
+    /**
+     * Returns the pixel transfer with the specified name.
+     *
+     * @param name name of the pixel transfer
+     * @return the pixel transfer or <code>null</code> if no such pixel
+     * transfer exists
+     */
+    public static PixelTransfer getByName(String name) {
+        for (PixelTransfer t : getAll()) {
+            if (t.getName().equals(name)) {
+                return t;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the default pixel transfer. If a pixel transfer has been
+     * selected via system property and it is available, it is returned.
+     * Otherwise the fastest available pixel transfer is returned.
+     *
+     * @return the default pixel transfer
+     */
+    public static PixelTransfer getDefault() {
+        String name = System.getProperty(PROPERTY_NAME);
+
+        if (name != null) {
+            PixelTransfer t = getByName(name);
+
+            if (t != null && t.isAvailable()) {
+                return t;
+            }
+
+            System.err.println(">> pixel transfer \"" + name
+                    + "\" not available, using default.");
+        }
+
+        PixelTransfer direct = new DirectBufferPixelTransfer();
+
+        if (direct.isAvailable()) {
+            return direct;
+        }
+
+        return new HeapPixelTransfer();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.io.File;
+import vtk.*;
+
+/**
+ * Measures the render time of a scene with many small actors before and
+ * after scene compaction (see {@link SceneCompactor}).
+ *
+ * <p>Usage: <code>SceneCompactionBenchmark [actors [iterations]]</code></p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class SceneCompactionBenchmark {
+
+    // no instanciation allowed
+    private SceneCompactionBenchmark() {
+        throw new AssertionError(); // not in this class either!
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args optional arguments: number of actors and iterations
+     */
+    public static void main(String[] args) throws Exception {
+
+        int numberOfActors = 5000;
+        int iterations = 50;
+
+        if (args.length >= 1) {
+            numberOfActors = Integer.parseInt(args[0]);
+        }
+
+        if (args.length >= 2) {
+            iterations = Integer.parseInt(args[1]);
+        }
+
+        System.loadLibrary("jawt");
+        SysUtil.loadLibraries(new File("natives").getAbsolutePath());
+
+        vtkSphereSource sphere = new vtkSphereSource();
+        sphere.SetThetaResolution(8);
+        sphere.SetPhiResolution(8);
+        sphere.SetRadius(0.4);
+        sphere.Update();
+
+        vtkRenderer ren = new vtkRenderer();
+
+        // two groups of actors with shared properties
+        ActorGroup red = new ActorGroup();
+        red.setColor(1, 0, 0);
+        ActorGroup blue = new ActorGroup();
+        blue.setColor(0, 0, 1);
+
+        int n = (int) Math.ceil(Math.sqrt(numberOfActors));
+
+        for (int i = 0; i < numberOfActors; i++) {
+            vtkPolyDataMapper mapper = new vtkPolyDataMapper();
+            mapper.SetInput(sphere.GetOutput());
+
+            vtkActor actor = new vtkActor();
+            actor.SetMapper(mapper);
+            actor.SetPosition(i % n, i / n, 0);
+
+            if (i % 2 == 0) {
+                red.add(actor);
+            } else {
+                blue.add(actor);
+            }
+
+            ren.AddActor(actor);
+        }
+
+        ren.ResetCamera();
+
+        vtkRenderWindow rw = new vtkRenderWindow();
+        rw.AddRenderer(ren);
+        rw.SetSize(1024, 768);
+        rw.Render();
+
+        System.out.println(">> scene compaction benchmark: "
+                + numberOfActors + " actors, " + iterations + " iterations");
+
+        double before = measure(rw, iterations);
+
+        System.out.println(String.format(
+                " --> original:  %8.3f ms/frame", before));
+
+        long start = System.nanoTime();
+
+        CompactedScene scene = new SceneCompactor(ren).compact().get();
+
+        double buildTime = (System.nanoTime() - start) / 1e6;
+
+        scene.apply();
+
+        double after = measure(rw, iterations);
+
+        System.out.println(String.format(
+                " --> compacted: %8.3f ms/frame (%d actors merged into %d, "
+                + "build time %.1f ms)", after,
+                scene.getNumberOfOriginalActors(),
+                scene.getMergedActors().size(), buildTime));
+
+        System.out.println(String.format(
+                " --> speedup:   %8.2fx", before / after));
+
+        System.out.println(" --> done.");
+
+        System.exit(0);
+    }
+
+    /**
+     * Measures the average render time.
+     *
+     * @return average render time (in milliseconds)
+     */
+    private static double measure(vtkRenderWindow rw, int iterations) {
+
+        // warm up
+        for (int i = 0; i < 5; i++) {
+            rw.Render();
+        }
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            rw.Render();
+        }
+
+        return (System.nanoTime() - start) / 1e6 / iterations;
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import vtk.vtkActor;
+import vtk.vtkMapper;
+import vtk.vtkMatrix4x4;
+import vtk.vtkPolyData;
+import vtk.vtkPolyDataMapper;
+import vtk.vtkProp;
+import vtk.vtkPropCollection;
+import vtk.vtkProperty;
+import vtk.vtkRenderer;
+import vtk.vtkScalarsToColors;
+
+/**
+ * Merges many small static actors into a few large batches to reduce the
+ * number of draw calls and state changes. Visible actors with a
+ * {@link vtkPolyDataMapper} and without texture are grouped by property
+ * (same {@link vtkProperty} instance, see {@link ActorGroup}), color
+ * mapping of the mapper (scalar visibility, lookup table instance, scalar
+ * range, scalar mode and color mode) and available normals and scalars
+ * (the merged geometry only contains arrays that all merged actors
+ * provide). The transforms of the actors are baked into the merged
+ * geometry.
+ *
+ * <p><b>Note:</b> properties and lookup tables are compared by identity.
+ * Actors that keep their own default {@link vtkProperty} are never merged.
+ * Actors must share a property instance to be merged. The same applies to
+ * the lookup tables of actors with scalar visibility. Actors that color by
+ * a named field data array are not merged.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ * final Future&lt;CompactedScene&gt; f = compactor.compact();
+ * // ...
+ * panel.update(new SceneTransaction() {
+ *     public void run(vtkRenderer renderer) {
+ *         f.get().apply();
+ *     }
+ * });
+ * </pre>
+ *
+ * <p><b>Note:</b> {@link #compact() } takes a snapshot of the scene on the
+ * calling thread and must not be called while the scene is rendered. The
+ * merged geometry is built by the worker pool.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class SceneCompactor {
+
+    private static final int VTK_SCALAR_MODE_USE_POINT_FIELD_DATA = 3;
+    private final vtkRenderer renderer;
+    //
+    // minimum number of actors per batch
+    private int minActorsPerBatch = 2;
+    //
+    // maximum number of cells per batch
+    private int maxCellsPerBatch = 1000000;
+
+    /**
+     * Constructor.
+     *
+     * @param renderer renderer whose actors shall be merged
+     */
+    public SceneCompactor(vtkRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Merges the compatible actors of the renderer. The scene is not
+     * modified until {@link CompactedScene#apply() } is called.
+     *
+     * @return future compacted scene
+     */
+    public Future<CompactedScene> compact() {
+
+        final List<CompactedScene.Batch> batches = collectBatches();
+
+        return WorkerPool.getExecutor().submit(new Callable<CompactedScene>() {
+            @Override
+            public CompactedScene call() throws Exception {
+                for (CompactedScene.Batch b : batches) {
+                    b.build();
+                }
+                return new CompactedScene(renderer, batches);
+            }
+        });
+    }
+
+    /**
+     * Groups the compatible actors of the renderer and takes a snapshot of
+     * their geometry and transforms.
+     *
+     * @return batches
+     */
+    private List<CompactedScene.Batch> collectBatches() {
+
+        Map<BatchKey, List<CompactedScene.Batch>> groups =
+                new LinkedHashMap<BatchKey, List<CompactedScene.Batch>>();
+
+        vtkPropCollection props = renderer.GetViewProps();
+        props.InitTraversal();
+
+        for (int i = 0; i < props.GetNumberOfItems(); i++) {
+            vtkProp p = props.GetNextProp();
+
+            if (!isCompatible(p)) {
+                continue;
+            }
+
+            vtkActor a = (vtkActor) p;
+            vtkMapper m = a.GetMapper();
+            vtkPolyData input = ((vtkPolyDataMapper) m).GetInput();
+
+            int numberOfCells = input.GetNumberOfCells();
+
+            if (numberOfCells == 0) {
+                continue;
+            }
+
+            BatchKey key = new BatchKey(a, input);
+
+            List<CompactedScene.Batch> group = groups.get(key);
+
+            if (group == null) {
+                group = new ArrayList<CompactedScene.Batch>();
+                groups.put(key, group);
+            }
+
+            CompactedScene.Batch batch = group.isEmpty()
+                    ? null : group.get(group.size() - 1);
+
+            if (batch == null || batch.getNumberOfCells()
+                    + numberOfCells > maxCellsPerBatch) {
+                batch = new CompactedScene.Batch(
+                        key.property, key.createMapper());
+                group.add(batch);
+            }
+
+            // snapshot (the geometry is shared, not copied)
+            vtkPolyData geometry = new vtkPolyData();
+            geometry.ShallowCopy(input);
+
+            vtkMatrix4x4 matrix = new vtkMatrix4x4();
+            matrix.DeepCopy(a.GetMatrix());
+
+            batch.add(a, geometry, matrix, numberOfCells);
+        }
+
+        List<CompactedScene.Batch> result =
+                new ArrayList<CompactedScene.Batch>();
+
+        for (List<CompactedScene.Batch> group : groups.values()) {
+            for (CompactedScene.Batch b : group) {
+                if (b.getNumberOfActors() >= minActorsPerBatch) {
+                    result.add(b);
+                } else {
+                    b.dispose();
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Indicates whether the specified prop can be merged.
+     *
+     * @param p prop to check
+     * @return <code>true</code> if the prop can be merged;
+     * <code>false</code> otherwise
+     */
+    private static boolean isCompatible(vtkProp p) {
+        if (!(p instanceof vtkActor) || p.GetVisibility() == 0) {
+            return false;
+        }
+
+        vtkActor a = (vtkActor) p;
+        vtkMapper m = a.GetMapper();
+
+        // field data arrays are selected by name (not part of the key)
+        if (m != null && m.GetScalarVisibility() != 0
+                && m.GetScalarMode() >= VTK_SCALAR_MODE_USE_POINT_FIELD_DATA) {
+            return false;
+        }
+
+        return m instanceof vtkPolyDataMapper
+                && ((vtkPolyDataMapper) m).GetInput() != null
+                && a.GetTexture() == null;
+    }
+
+    /**
+     * Defines the minimum number of actors per batch (default is
+     * <code>2</code>). Smaller groups are left unchanged.
+     *
+     * @param n the minimum number of actors to set
+     */
+    public void setMinActorsPerBatch(int n) {
+        this.minActorsPerBatch = Math.max(1, n);
+    }
+
+    /**
+     * Returns the minimum number of actors per batch.
+     *
+     * @return the minimum number of actors per batch
+     */
+    public int getMinActorsPerBatch() {
+        return minActorsPerBatch;
+    }
+
+    /**
+     * Defines the maximum number of cells per batch (default is
+     * <code>1000000</code>). Large batches are expensive to rebuild if the
+     * visibility of an original actor changes.
+     *
+     * @param n the maximum number of cells to set
+     */
+    public void setMaxCellsPerBatch(int n) {
+        this.maxCellsPerBatch = Math.max(1, n);
+    }
+
+    /**
+     * Returns the maximum number of cells per batch.
+     *
+     * @return the maximum number of cells per batch
+     */
+    public int getMaxCellsPerBatch() {
+        return maxCellsPerBatch;
+    }
+
+    /**
+     * Key of compatible actors (compared by identity of the property and the
+     * lookup table, by the color mapping of the mapper and by the available
+     * arrays).
+     */
+    private static class BatchKey {
+
+        private final vtkProperty property;
+        private final int scalarVisibility;
+        private final boolean normals;
+        private final boolean scalars;
+        private final boolean cellScalars;
+        //
+        // color mapping (only used if scalar visibility is on)
+        private final vtkScalarsToColors lookupTable;
+        private final double[] scalarRange;
+        private final int scalarMode;
+        private final int colorMode;
+        private final int useLookupTableScalarRange;
+        private final int interpolateScalarsBeforeMapping;
+
+        public BatchKey(vtkActor a, vtkPolyData input) {
+            vtkMapper m = a.GetMapper();
+
+            this.property = a.GetProperty();
+            this.scalarVisibility = m.GetScalarVisibility();
+            this.normals = input.GetPointData().GetNormals() != null;
+            this.scalars = input.GetPointData().GetScalars() != null;
+            this.cellScalars = input.GetCellData().GetScalars() != null;
+
+            if (scalarVisibility != 0) {
+                this.lookupTable = m.GetLookupTable();
+                this.scalarRange = m.GetScalarRange();
+                this.scalarMode = m.GetScalarMode();
+                this.colorMode = m.GetColorMode();
+                this.useLookupTableScalarRange =
+                        m.GetUseLookupTableScalarRange();
+                this.interpolateScalarsBeforeMapping =
+                        m.GetInterpolateScalarsBeforeMapping();
+            } else {
+                this.lookupTable = null;
+                this.scalarRange = new double[2];
+                this.scalarMode = 0;
+                this.colorMode = 0;
+                this.useLookupTableScalarRange = 0;
+                this.interpolateScalarsBeforeMapping = 0;
+            }
+        }
+
+        /**
+         * Creates a mapper with the color mapping of this key.
+         *
+         * @return mapper without input
+         */
+        public vtkPolyDataMapper createMapper() {
+            vtkPolyDataMapper mapper = new vtkPolyDataMapper();
+            mapper.SetScalarVisibility(scalarVisibility);
+
+            if (scalarVisibility != 0) {
+                mapper.SetLookupTable(lookupTable);
+                mapper.SetScalarRange(scalarRange);
+                mapper.SetScalarMode(scalarMode);
+                mapper.SetColorMode(colorMode);
+                mapper.SetUseLookupTableScalarRange(
+                        useLookupTableScalarRange);
+                mapper.SetInterpolateScalarsBeforeMapping(
+                        interpolateScalarsBeforeMapping);
+            }
+
+            return mapper;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof BatchKey)) {
+                return false;
+            }
+            BatchKey other = (BatchKey) obj;
+            return property == other.property
+                    && scalarVisibility == other.scalarVisibility
+                    && normals == other.normals && scalars == other.scalars
+                    && cellScalars == other.cellScalars
+                    && lookupTable == other.lookupTable
+                    && Arrays.equals(scalarRange, other.scalarRange)
+                    && scalarMode == other.scalarMode
+                    && colorMode == other.colorMode
+                    && useLookupTableScalarRange
+                    == other.useLookupTableScalarRange
+                    && interpolateScalarsBeforeMapping
+                    == other.interpolateScalarsBeforeMapping;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = System.identityHashCode(property);
+            h = h * 31 + System.identityHashCode(lookupTable);
+            h = h * 31 + Arrays.hashCode(scalarRange);
+            h = h * 31 + scalarVisibility;
+            h = h * 31 + scalarMode;
+            h = h * 31 + colorMode;
+            h = h * 8 + (normals ? 4 : 0) + (scalars ? 2 : 0)
+                    + (cellScalars ? 1 : 0);
+            return h;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import vtk.vtkRenderWindow;
+
+/**
+ * Pipelined readback that splits the frame into horizontal stripes. Each
+ * stripe is read while holding the render lock and handed to the worker pool
+ * which flips, swizzles and premultiplies it while the next stripe is being
+ * transferred. Thus, the frame latency approaches the maximum of readback and
+ * conversion time instead of their sum.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+class StripedReadback {
+
+    //
+    // pixel data of the stripes (reused across frames)
+    private byte[][] stripeData = new byte[0][];
+    //
+    // destination image (reused across frames)
+    private BufferedImage image;
+
+    /**
+     * Reads the specified region of the render window.
+     *
+     * @param panel panel that provides the render window and the render lock
+     * @param transfer pixel transfer used to read the stripes
+     * @param x x coordinate of the lower left corner (vtk coordinates)
+     * @param y y coordinate of the lower left corner (vtk coordinates)
+     * @param w width
+     * @param h height
+     * @param opaque defines whether to read opaque (RGB) content
+     * @param stripes number of stripes
+     * @return image that contains the specified region (may be the image
+     * returned by the previous call)
+     */
+    public BufferedImage read(VTKCanvas panel, PixelTransfer transfer,
+            int x, int y, final int w, final int h,
+            final boolean opaque, int stripes) {
+
+        stripes = Math.max(1, Math.min(stripes, h));
+
+        int type = opaque
+                ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE;
+
+        if (image == null || image.getWidth() != w || image.getHeight() != h
+                || image.getType() != type) {
+            image = new BufferedImage(w, h, type);
+        }
+
+        if (stripeData.length != stripes) {
+            stripeData = new byte[stripes][];
+        }
+
+        final int[] pixels =
+                ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        vtkRenderWindow rw = panel.GetRenderWindow();
+
+        List<Future<?>> conversions = new ArrayList<Future<?>>();
+
+        for (int s = 0; s < stripes; s++) {
+
+            // rows of this stripe (vtk order, i.e., bottom row first)
+            final int rowStart = s * h / stripes;
+            final int rowEnd = (s + 1) * h / stripes;
+
+            panel.lock();
+            stripeData[s] = transfer.readPixels(rw, x, y + rowStart,
+                    w, rowEnd - rowStart, opaque ? 3 : 4, stripeData[s]);
+            panel.unlock();
+
+            final byte[] data = stripeData[s];
+
+            conversions.add(WorkerPool.getExecutor().submit(new Runnable() {
+                @Override
+                public void run() {
+                    convert(data, pixels, w, h, rowStart, rowEnd, opaque);
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> f : conversions) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+
+        return image;
+    }
+
+    /**
+     * Converts a stripe from vtk layout (RGB(A) bytes, bottom row first) to
+     * the layout of the destination image (packed (A)RGB ints, top row first,
+     * premultiplied alpha).
+     */
+    private static void convert(byte[] data, int[] pixels, int w, int h,
+            int rowStart, int rowEnd, boolean opaque) {
+
+        int i = 0;
+
+        for (int row = rowStart; row < rowEnd; row++) {
+
+            // flip
+            int p = (h - 1 - row) * w;
+            int pEnd = p + w;
+
+            if (opaque) {
+                for (; p < pEnd; p++) {
+                    int r = data[i++] & 0xff;
+                    int g = data[i++] & 0xff;
+                    int b = data[i++] & 0xff;
+
+                    pixels[p] = 0xff000000 | (r << 16) | (g << 8) | b;
+                }
+            } else {
+                for (; p < pEnd; p++) {
+                    int r = data[i++] & 0xff;
+                    int g = data[i++] & 0xff;
+                    int b = data[i++] & 0xff;
+                    int a = data[i++] & 0xff;
+
+                    if (a != 0xff) {
+                        r = premultiply(r, a);
+                        g = premultiply(g, a);
+                        b = premultiply(b, a);
+                    }
+
+                    pixels[p] = (a << 24) | (r << 16) | (g << 8) | b;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns <code>c * a / 255</code> (rounded).
+     */
+    private static int premultiply(int c, int a) {
+        int t = c * a + 128;
+        return (t + (t >> 8)) >> 8;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import vtk.vtkRenderWindow;
+
+/**
+ * Pixel transfer that produces synthetic frames (a moving gradient) instead
+ * of reading from the render window. Intended for testing and benchmarking
+ * the Java side of the readback pipeline.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class SyntheticPixelTransfer implements PixelTransfer {
+
+    private int frame;
+
+    @Override
+    public String getName() {
+        return "synthetic";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public byte[] readPixels(vtkRenderWindow rw,
+            int x, int y, int w, int h, int components, byte[] dest) {
+
+        int size = w * h * components;
+
+        byte[] result = dest != null && dest.length == size
+                ? dest : new byte[size];
+
+        frame++;
+
+        int i = 0;
+
+        for (int row = 0; row < h; row++) {
+            for (int col = 0; col < w; col++) {
+                result[i++] = (byte) (x + col + frame);
+                result[i++] = (byte) (y + row);
+                result[i++] = (byte) frame;
+
+                if (components == 4) {
+                    result[i++] = (byte) 255;
+                }
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.awt.Rectangle;
+import java.awt.image.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Detects the regions that differ between successive frames. Each frame is
+ * divided into square tiles. For every tile a hash is computed (in parallel
+ * for large frames) and compared to the hash of the previous frame.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+class TileDiff {
+
+    /**
+     * Default tile size (in pixels).
+     */
+    public static final int DEFAULT_TILE_SIZE = 32;
+    //
+    // frames with less pixels are hashed on the calling thread
+    private static final int PARALLEL_THRESHOLD = 256 * 256;
+    //
+    private final int tileSize;
+    //
+    // tile hashes of the previous frame
+    private long[] hashes;
+    //
+    // region of the previous frame
+    private Rectangle region;
+
+    /**
+     * Constructor.
+     */
+    public TileDiff() {
+        this(DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tileSize tile size (in pixels)
+     */
+    public TileDiff(int tileSize) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException(
+                    "Tile size must be positive: " + tileSize);
+        }
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Forgets the previous frame. The next call to
+     * {@link #diff(java.awt.image.BufferedImage, java.awt.Rectangle) }
+     * will report the whole frame as changed.
+     */
+    public void reset() {
+        hashes = null;
+        region = null;
+    }
+
+    /**
+     * Compares the specified frame with the previous frame.
+     *
+     * @param image the new frame
+     * @param region location of the frame (component coordinates)
+     * @return rectangles that cover the changed tiles (component coordinates)
+     * or <code>null</code> if the whole frame has to be repainted
+     */
+    public List<Rectangle> diff(BufferedImage image, Rectangle region) {
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        int tilesX = (width + tileSize - 1) / tileSize;
+        int tilesY = (height + tileSize - 1) / tileSize;
+
+        long[] newHashes = computeHashes(image.getRaster(), tilesX, tilesY);
+
+        if (newHashes == null) {
+            reset();
+            return null;
+        }
+
+        boolean regionChanged = this.region == null
+                || !this.region.equals(region)
+                || hashes == null || hashes.length != newHashes.length;
+
+        long[] oldHashes = hashes;
+
+        hashes = newHashes;
+        this.region = new Rectangle(region);
+
+        if (regionChanged) {
+            return null;
+        }
+
+        List<Rectangle> result = new ArrayList<Rectangle>();
+
+        // we merge horizontally adjacent tiles to reduce the number of
+        // repaint requests
+        for (int ty = 0; ty < tilesY; ty++) {
+            int runStart = -1;
+            for (int tx = 0; tx <= tilesX; tx++) {
+                boolean changed = tx < tilesX
+                        && oldHashes[ty * tilesX + tx]
+                        != newHashes[ty * tilesX + tx];
+
+                if (changed && runStart < 0) {
+                    runStart = tx;
+                } else if (!changed && runStart >= 0) {
+                    int x = runStart * tileSize;
+                    int y = ty * tileSize;
+                    int w = Math.min(tx * tileSize, width) - x;
+                    int h = Math.min(y + tileSize, height) - y;
+
+                    result.add(new Rectangle(
+                            region.x + x, region.y + y, w, h));
+                    runStart = -1;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Computes the tile hashes of the specified raster.
+     *
+     * @param raster raster
+     * @param tilesX number of tiles in x direction
+     * @param tilesY number of tiles in y direction
+     * @return tile hashes or <code>null</code> if the raster layout is not
+     * supported
+     */
+    private long[] computeHashes(final Raster raster,
+            final int tilesX, final int tilesY) {
+
+        final DataBuffer buffer = raster.getDataBuffer();
+        SampleModel sm = raster.getSampleModel();
+
+        if (raster.getSampleModelTranslateX() != 0
+                || raster.getSampleModelTranslateY() != 0) {
+            return null;
+        }
+
+        final int pixelStride;
+        final int scanlineStride;
+
+        if (buffer instanceof DataBufferByte
+                && sm instanceof ComponentSampleModel) {
+            pixelStride = ((ComponentSampleModel) sm).getPixelStride();
+            scanlineStride = ((ComponentSampleModel) sm).getScanlineStride();
+        } else if (buffer instanceof DataBufferInt
+                && sm instanceof SinglePixelPackedSampleModel) {
+            pixelStride = 1;
+            scanlineStride =
+                    ((SinglePixelPackedSampleModel) sm).getScanlineStride();
+        } else {
+            return null;
+        }
+
+        final long[] result = new long[tilesX * tilesY];
+        final int width = raster.getWidth();
+        final int height = raster.getHeight();
+
+        int numTasks = width * height < PARALLEL_THRESHOLD
+                ? 1 : Math.min(tilesY, WorkerPool.getNumberOfThreads());
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+        for (int i = 0; i < numTasks; i++) {
+            final int tyStart = i * tilesY / numTasks;
+            final int tyEnd = (i + 1) * tilesY / numTasks;
+
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int ty = tyStart; ty < tyEnd; ty++) {
+                        hashTileRow(buffer, pixelStride, scanlineStride,
+                                width, height, ty, tilesX, result);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        if (numTasks == 1) {
+            try {
+                tasks.get(0).call();
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        } else {
+            try {
+                for (Future<Void> f
+                        : WorkerPool.getExecutor().invokeAll(tasks)) {
+                    f.get();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException(ex.getCause());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Computes the hashes of all tiles in the specified tile row (FNV-1a).
+     */
+    private void hashTileRow(DataBuffer buffer, int pixelStride,
+            int scanlineStride, int width, int height,
+            int ty, int tilesX, long[] result) {
+
+        int yStart = ty * tileSize;
+        int yEnd = Math.min(yStart + tileSize, height);
+
+        byte[] bytes = buffer instanceof DataBufferByte
+                ? ((DataBufferByte) buffer).getData() : null;
+        int[] ints = buffer instanceof DataBufferInt
+                ? ((DataBufferInt) buffer).getData() : null;
+        int offset = buffer.getOffset();
+
+        for (int tx = 0; tx < tilesX; tx++) {
+            int xStart = tx * tileSize;
+            int xEnd = Math.min(xStart + tileSize, width);
+
+            long h = 0xcbf29ce484222325L;
+
+            for (int y = yStart; y < yEnd; y++) {
+                int start = offset + y * scanlineStride + xStart * pixelStride;
+                int end = offset + y * scanlineStride + xEnd * pixelStride;
+
+                if (bytes != null) {
+                    for (int i = start; i < end; i++) {
+                        h = (h ^ bytes[i]) * 0x100000001b3L;
+                    }
+                } else {
+                    for (int i = start; i < end; i++) {
+                        h = (h ^ ints[i]) * 0x100000001b3L;
+                    }
+                }
+            }
+
+            result[ty * tilesX + tx] = h;
+        }
+    }
+}
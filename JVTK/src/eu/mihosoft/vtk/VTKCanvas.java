@@ -62,6 +62,15 @@ public class VTKCanvas extends vtkPanel implements MouseListener, MouseMotionLis
     private double defaultCamPosX = 0;
     private double defaultCamPosY = 0;
     private double defaultCamPosZ = 6;
+    //
+    // incremented whenever the render window has rendered a frame
+    private volatile long sceneVersion;
+    //
+    // asynchronous pick service (created on demand)
+    private PickService pickService;
+    //
+    // level of detail manager (created on demand)
+    private LODManager lodManager;
     
     public void setDefaultCamPos(double x, double y, double z) {
         setDefaultCamPosX(x);
@@ -77,6 +86,16 @@ public class VTKCanvas extends vtkPanel implements MouseListener, MouseMotionLis
 
     @Override
     public void Delete() {
+        synchronized (this) {
+            if (pickService != null) {
+                pickService.dispose();
+                pickService = null;
+            }
+            if (lodManager != null) {
+                lodManager.dispose();
+                lodManager = null;
+            }
+        }
         iren = null;
         pw = null;
         bw = null;
@@ -98,6 +117,7 @@ public class VTKCanvas extends vtkPanel implements MouseListener, MouseMotionLis
         iren.TimerEventResetsTimerOff();
         iren.AddObserver("CreateTimerEvent", this, "StartTimer");
         iren.AddObserver("DestroyTimerEvent", this, "DestroyTimer");
+        rw.AddObserver("EndEvent", this, "sceneChanged");
         iren.SetSize(200, 200);
         iren.ConfigureEvent();
         pw.AddObserver("EnableEvent", this, "BeginPlaneInteraction");
@@ -169,6 +189,54 @@ public class VTKCanvas extends vtkPanel implements MouseListener, MouseMotionLis
         bw.PlaceWidget();
     }
 
+    /**
+     * Increments the scene version. This method is called whenever the
+     * render window has rendered a frame.
+     */
+    public void sceneChanged() {
+        sceneVersion++;
+    }
+
+    /**
+     * Returns the scene version. The version changes whenever the render
+     * window has rendered a frame, e.g., because actors or the camera have
+     * changed. It can be used to invalidate data derived from the rendered
+     * image.
+     *
+     * @return the scene version
+     */
+    public long getSceneVersion() {
+        return sceneVersion;
+    }
+
+    /**
+     * Returns the pick service of this canvas. The pick service executes
+     * picks off the event dispatch thread and caches the results per scene
+     * version.
+     *
+     * @return the pick service
+     */
+    public synchronized PickService getPickService() {
+        if (pickService == null) {
+            pickService = new PickService(this);
+        }
+        return pickService;
+    }
+
+    /**
+     * Returns the level of detail manager of this canvas. Actors registered
+     * with the manager are rendered with simplified representations while
+     * a mouse button is pressed.
+     *
+     * @return the level of detail manager
+     */
+    public synchronized LODManager getLODManager() {
+        if (lodManager == null) {
+            lodManager = new LODManager(this);
+        }
+        return lodManager;
+    }
+
     public void BeginPlaneInteraction() {
         System.out.println("Plane widget begin interaction");
     }
@@ -32,16 +32,18 @@ import java.awt.color.ColorSpace;
 import java.awt.event.*;
 import java.awt.geom.AffineTransform;
 import java.awt.image.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.JWindow;
+import javax.swing.SwingUtilities;
 import sun.awt.image.ByteInterleavedRaster;
 import vtk.vtkPanel;
 import vtk.vtkRenderWindow;
 import vtk.vtkRenderer;
-import vtk.vtkUnsignedCharArray;
 
 /**
  * Swing component that displays the content of a {@link vtk.vtkPanel}. In
@@ -54,12 +56,35 @@ import vtk.vtkUnsignedCharArray;
  * mode that can be enabled either manually through
  * {@link #enterFullscreenMode() } or by double clicking on the component.</p>
  *
+ * <p>In hybrid mode (see {@link #setHybridMode(boolean) }) this component
+ * automatically switches to native rendering if neither transparency nor
+ * overlapping components are present.</p>
+ *
  * @author Michael Hoffer <info@michaelhoffer.de>
  */
 public class VTKJPanel extends JPanel
         implements MouseListener, MouseMotionListener, MouseWheelListener, KeyListener {
 
     private static final long serialVersionUID = 1L;
+
+    /**
+     * Render modes of this panel.
+     *
+     * @see VTKJPanel#setHybridMode(boolean)
+     */
+    public enum RenderMode {
+
+        /**
+         * The content is rendered offscreen, read back and drawn by Swing
+         * (supports transparency and overlapping components).
+         */
+        LIGHTWEIGHT,
+        /**
+         * The content is rendered natively by a heavyweight canvas (maximum
+         * render performance).
+         */
+        NATIVE
+    }
     //
     // vtk objects
     //
@@ -77,6 +102,9 @@ public class VTKJPanel extends JPanel
     // offsets for sample model
     private final int[] bOffs = {0, 1, 2, 3};
     //
+    // offsets for sample model (opaque content, no alpha channel)
+    private final int[] rgbOffs = {0, 1, 2};
+    //
     // sample model (used by writable raster)
     private SampleModel sampleModel;
     //
@@ -88,7 +116,13 @@ public class VTKJPanel extends JPanel
     private byte[] renderData;
     //
     // the color model for the offscreen image
-    private static ColorModel colorModel = createColorModel();
+    private static ColorModel colorModel = createColorModel(true);
+    //
+    // the color model for the offscreen image (opaque content)
+    private static ColorModel opaqueColorModel = createColorModel(false);
+    //
+    // indicates whether the current sample model is used for opaque content
+    private boolean opaqueImage;
     //
     // indicates whether rendering content
     private boolean renderContent;
@@ -102,6 +136,137 @@ public class VTKJPanel extends JPanel
     //
     // alpha value of vtk content. allows transparency.
     private float contentAlpha = 1.f;
+    //
+    // region of the render window that is currently read back
+    // (component coordinates, i.e., origin is the upper left corner)
+    private Rectangle readbackRegion;
+    //
+    // indicates whether rendering is suspended because this component is not
+    // showing or its window is iconified
+    private boolean renderingSuspended;
+    //
+    // indicates whether only changed tiles shall be repainted
+    private boolean dirtyRegionRepaint;
+    //
+    // detects changed tiles of successive frames
+    private final TileDiff tileDiff = new TileDiff();
+    //
+    // tiles that changed during the last rendering (null means all)
+    private List<Rectangle> dirtyTiles;
+    //
+    // indicates whether a dirty region repaint has been scheduled (bursts of
+    // events are coalesced into one frame)
+    private boolean dirtyRegionRepaintScheduled;
+    //
+    // delay (in milliseconds) after which a pending resize is applied
+    private int resizeDelay = 150;
+    //
+    // indicates whether a resize is in progress (the render window has not
+    // been resized yet and the last frame is shown stretched)
+    private boolean resizing;
+    //
+    // applies pending resize requests once the size is stable
+    private final javax.swing.Timer resizeTimer;
+    //
+    // indicates whether to automatically switch to native rendering
+    private boolean hybridMode;
+    //
+    // the current render mode
+    private RenderMode renderMode = RenderMode.LIGHTWEIGHT;
+    //
+    // indicates whether a render mode update has been scheduled
+    private boolean renderModeUpdateScheduled;
+    //
+    // ancestors that are observed for added/removed (overlay) components
+    private final List<Container> observedAncestors =
+            new ArrayList<Container>();
+    //
+    // triggers a render mode update if overlays are added or removed
+    private final ContainerListener ancestorListener = new ContainerListener() {
+        @Override
+        public void componentAdded(ContainerEvent e) {
+            scheduleRenderModeUpdate();
+        }
+
+        @Override
+        public void componentRemoved(ContainerEvent e) {
+            scheduleRenderModeUpdate();
+        }
+    };
+    //
+    // indicates whether to read back asynchronously via pixel buffer objects
+    private boolean asyncReadback;
+    //
+    // indicates whether asynchronous readback is not supported
+    private boolean asyncReadbackUnavailable;
+    //
+    // asynchronous readback (created on demand)
+    private PBOReadback pboReadback;
+    //
+    // indicates whether the last rendered frame is still pending
+    private boolean asyncFramePending;
+    //
+    // shows the pending frame if no further frame has been rendered
+    private final javax.swing.Timer pendingFrameTimer;
+    //
+    // minimum delay before the pending frame is shown (in milliseconds)
+    private static final int MIN_PENDING_FRAME_DELAY = 20;
+    //
+    // transfers pixels from the render window
+    private PixelTransfer pixelTransfer = PixelTransfers.getDefault();
+    //
+    // number of stripes for pipelined readback (1 disables striping)
+    private int readbackStripes = 1;
+    //
+    // pipelined readback (used if readbackStripes > 1)
+    private final StripedReadback stripedReadback = new StripedReadback();
+    //
+    // indicates whether to capture the depth buffer
+    private boolean depthCapture;
+    //
+    // depth values of the last frame (created on demand)
+    private DepthBuffer depthBuffer;
+    //
+    // id buffer picker (created on demand)
+    private IdBufferPicker idBufferPicker;
+    //
+    // guards scene transactions (reentrant)
+    private final Object transactionLock = new Object();
+    //
+    // nesting depth of scene transactions. rendering is suppressed while
+    // a transaction is running
+    private volatile int transactionDepth;
+    //
+    // window that contains this component (used to detect iconification)
+    private Window ownerWindow;
+    //
+    // listens for iconification of the owner window
+    private final WindowListener ownerWindowListener = new WindowAdapter() {
+        @Override
+        public void windowIconified(WindowEvent e) {
+            updateRenderingSuspended();
+        }
+
+        @Override
+        public void windowDeiconified(WindowEvent e) {
+            updateRenderingSuspended();
+        }
+
+        @Override
+        public void windowActivated(WindowEvent e) {
+            // keeps the native window on top of its owner
+            if (renderMode == RenderMode.NATIVE && !fullscreen) {
+                window.setAlwaysOnTop(true);
+            }
+        }
+
+        @Override
+        public void windowDeactivated(WindowEvent e) {
+            if (e.getOppositeWindow() != window) {
+                window.setAlwaysOnTop(false);
+            }
+        }
+    };
 
     /**
      * Constructor.
@@ -115,7 +280,7 @@ public class VTKJPanel extends JPanel
 
                 super.keyPressed(e);
 
-                if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+                if (e.getKeyCode() == KeyEvent.VK_ESCAPE && fullscreen) {
                     leaveFullscreenMode();
                 }
             }
@@ -134,13 +299,74 @@ public class VTKJPanel extends JPanel
 
         initWindow();
 
-        // double click will leave fullscreen mode
+        window.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowDeactivated(WindowEvent e) {
+                if (e.getOppositeWindow() != ownerWindow) {
+                    window.setAlwaysOnTop(false);
+                }
+            }
+        });
+
+        // the native window follows this panel
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentMoved(ComponentEvent e) {
+                updateNativeWindow();
+            }
+
+            @Override
+            public void componentResized(ComponentEvent e) {
+                updateNativeWindow();
+            }
+        });
+
+        addHierarchyBoundsListener(new HierarchyBoundsListener() {
+            @Override
+            public void ancestorMoved(HierarchyEvent e) {
+                updateNativeWindow();
+            }
+
+            @Override
+            public void ancestorResized(HierarchyEvent e) {
+                updateNativeWindow();
+            }
+        });
+
+        // applies the size once it has been stable for resizeDelay ms
+        resizeTimer = new javax.swing.Timer(resizeDelay, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                resizing = false;
+                if (!fullscreen) {
+                    resizeRenderWindow(getWidth(), getHeight());
+                }
+                repaint();
+            }
+        });
+        resizeTimer.setRepeats(false);
+
+        pendingFrameTimer = new javax.swing.Timer(MIN_PENDING_FRAME_DELAY,
+                new ActionListener() {
+                    @Override
+                    public void actionPerformed(ActionEvent e) {
+                        repaint();
+                    }
+                });
+        pendingFrameTimer.setRepeats(false);
+
+        // double click will leave fullscreen mode (or enter fullscreen mode
+        // if the panel is rendered natively)
         panel.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
                 if (e.getClickCount() == 2) {
 
-                    leaveFullscreenMode();
+                    if (fullscreen) {
+                        leaveFullscreenMode();
+                    } else if (renderMode == RenderMode.NATIVE) {
+                        enterFullscreenMode();
+                    }
                 }
             }
         });
@@ -149,6 +375,26 @@ public class VTKJPanel extends JPanel
         addMouseMotionListener(this);
         addMouseWheelListener(this);
         addKeyListener(this);
+
+        // we don't render while we are hidden (e.g. inactive tab, iconified
+        // window) and refresh once we are showing again
+        addHierarchyListener(new HierarchyListener() {
+            @Override
+            public void hierarchyChanged(HierarchyEvent e) {
+                if ((e.getChangeFlags() & HierarchyEvent.PARENT_CHANGED) != 0
+                        || (e.getChangeFlags()
+                        & HierarchyEvent.DISPLAYABILITY_CHANGED) != 0) {
+                    updateOwnerWindow();
+                    updateObservedAncestors();
+                    scheduleRenderModeUpdate();
+                }
+
+                if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+                    updateRenderingSuspended();
+                }
+            }
+        });
+
         setBackground(new Color(120, 120, 120));
 
         rw.SetAlphaBitPlanes(1);
@@ -163,6 +409,9 @@ public class VTKJPanel extends JPanel
         } else {
             rw.SetAlphaBitPlanes(0);
         }
+
+        contentChanged();
+        updateRenderMode();
     }
 
     public boolean isBackgroundTransparent() {
@@ -190,12 +439,19 @@ public class VTKJPanel extends JPanel
         this.setSize(getSize());
 
         repair();
+        scheduleRenderModeUpdate();
     }
 
     /**
      * Enters fullscreen mode.
      */
     public void enterFullscreenMode() {
+
+        // fullscreen rendering is done by the hidden window
+        if (renderMode == RenderMode.NATIVE) {
+            setRenderMode(RenderMode.LIGHTWEIGHT);
+        }
+
         GraphicsUtil.enterFullscreenMode(window);
         fullscreen = true;
 //        this.setSize(getSize());
@@ -251,19 +507,73 @@ public class VTKJPanel extends JPanel
     @Override
     public void setBounds(int x, int y, int w, int h) {
         super.setBounds(x, y, w, h);
-        if (window != null && !fullscreen) {
-
-            // on windows we must manually change the size of the render window
-            if (SysUtil.isWindows()) {
-                panel.lock();
-                rw.SetSize(w, h);
-                panel.unlock();
+        if (window != null && !fullscreen
+                && renderMode == RenderMode.LIGHTWEIGHT) {
+
+            int[] renderSize = rw.GetSize();
+            boolean sizeChanged = w != renderSize[0] || h != renderSize[1];
+
+            // while the size changes we show a stretched copy of the last
+            // frame and defer resizing the render window until the size is
+            // stable
+            if (resizeDelay > 0 && sizeChanged && img != null) {
+                resizing = true;
+                resizeTimer.restart();
+            } else {
+                resizing = false;
+                resizeTimer.stop();
+                resizeRenderWindow(w, h);
             }
+        }
+    }
+
+    /**
+     * Resizes the render window and the hidden window.
+     *
+     * @param w width
+     * @param h height
+     */
+    private void resizeRenderWindow(int w, int h) {
+        // on windows we must manually change the size of the render window
+        if (SysUtil.isWindows()) {
+            panel.lock();
+            rw.SetSize(w, h);
+            panel.unlock();
+        }
 
-            window.setSize(w, h);
+        window.setSize(w, h);
 
-            contentChanged();
+        contentChanged();
+    }
+
+    /**
+     * Defines the delay (in milliseconds) after which a resize is applied to
+     * the render window. While the size of this component changes (e.g.
+     * dragging a split pane divider) a stretched copy of the last frame is
+     * shown. A value of <code>0</code> applies resizes immediately.
+     *
+     * @param resizeDelay the resize delay to set (in milliseconds)
+     */
+    public void setResizeDelay(int resizeDelay) {
+        if (resizeDelay < 0) {
+            throw new IllegalArgumentException(
+                    "Resize delay must not be negative: " + resizeDelay);
         }
+        this.resizeDelay = resizeDelay;
+
+        if (resizeDelay > 0) {
+            resizeTimer.setInitialDelay(resizeDelay);
+        }
+    }
+
+    /**
+     * Returns the delay (in milliseconds) after which a resize is applied to
+     * the render window.
+     *
+     * @return the resize delay (in milliseconds)
+     */
+    public int getResizeDelay() {
+        return resizeDelay;
     }
 
     /**
@@ -279,7 +589,107 @@ public class VTKJPanel extends JPanel
         updateImage();
         contentChanged = false;
 
+        if (dirtyRegionRepaint && img instanceof BufferedImage) {
+            dirtyTiles = tileDiff.diff((BufferedImage) img, readbackRegion);
+        } else {
+            dirtyTiles = null;
+        }
+    }
+
+    /**
+     * Indicates that the content has changed and requests a repaint. If
+     * dirty region repaint is enabled the content is rendered once all
+     * pending events have been processed and only the tiles that differ from
+     * the previous frame are repainted.
+     */
+    private void repaintContent() {
+        contentChanged();
+
+        // the frame is emitted when the transaction is committed
+        if (transactionDepth > 0) {
+            return;
+        }
+
+        if (!isDirtyRegionRepaintPossible()) {
+            repaint();
+            return;
+        }
+
+        if (dirtyRegionRepaintScheduled) {
+            return;
+        }
+
+        dirtyRegionRepaintScheduled = true;
+
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                dirtyRegionRepaintScheduled = false;
+                repaintDirtyRegions();
+            }
+        });
+    }
+
+    /**
+     * Indicates whether the content can be repainted via dirty regions.
+     */
+    private boolean isDirtyRegionRepaintPossible() {
+        return dirtyRegionRepaint && !renderingSuspended && !resizing
+                && renderMode != RenderMode.NATIVE && isShowing();
+    }
+
+    /**
+     * Renders the content and repaints the tiles that differ from the
+     * previous frame.
+     */
+    private void repaintDirtyRegions() {
+
+        // the state may have changed since the repaint has been scheduled
+        if (!isDirtyRegionRepaintPossible()) {
+            repaint();
+            return;
+        }
+
+        // already rendered by a paint event or emitted when a transaction
+        // that has been started in the meantime is committed
+        if (!contentChanged || transactionDepth > 0) {
+            return;
+        }
+
+        render();
+
+        if (dirtyTiles == null) {
+            repaint();
+        } else {
+            for (Rectangle r : dirtyTiles) {
+                repaint(r);
+            }
+        }
+    }
+
+    /**
+     * Defines whether to repaint only the regions that changed since the
+     * previous frame (disabled by default). If enabled, each new frame is
+     * compared with the previous frame in tiles of 32x32 pixels and only
+     * changed tiles are repainted. This reduces blit and compositing costs
+     * for mostly static scenes.
+     *
+     * @param v defines whether to enable dirty region repaint
+     */
+    public void setDirtyRegionRepaint(boolean v) {
+        this.dirtyRegionRepaint = v;
+        tileDiff.reset();
+        dirtyTiles = null;
+    }
 
+    /**
+     * Indicates whether dirty region repaint is enabled.
+     *
+     * @return <code>true</code> if dirty region repaint is enabled;
+     * <code>false</code> otherwise
+     */
+    public boolean isDirtyRegionRepaint() {
+        return dirtyRegionRepaint;
     }
 
     /**
@@ -292,6 +702,63 @@ public class VTKJPanel extends JPanel
         contentChanged = true;
     }
 
+    /**
+     * Performs the specified scene mutations as one transaction. All
+     * mutations are executed under a single render lock, intermediate
+     * renders are suppressed and exactly one frame is rendered after the
+     * transaction has been committed. Transactions may be nested. In this
+     * case the frame is rendered after the outermost transaction has been
+     * committed. This method may be called from any thread.
+     *
+     * @param transaction transaction to perform
+     */
+    public void update(SceneTransaction transaction) {
+        synchronized (transactionLock) {
+            boolean outermost = transactionDepth == 0;
+
+            transactionDepth++;
+
+            if (outermost) {
+                panel.lock();
+            }
+
+            try {
+                transaction.run(ren);
+            } finally {
+                if (outermost) {
+                    panel.unlock();
+                }
+
+                transactionDepth--;
+            }
+
+            if (!outermost) {
+                return;
+            }
+        }
+
+        if (SwingUtilities.isEventDispatchThread()) {
+            repaintContent();
+        } else {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    repaintContent();
+                }
+            });
+        }
+    }
+
+    /**
+     * Indicates whether a scene transaction is running.
+     *
+     * @return <code>true</code> if a scene transaction is running;
+     * <code>false</code> otherwise
+     */
+    public boolean isUpdating() {
+        return transactionDepth > 0;
+    }
+
     /**
      * Deletes the render content and the associated buffer image
      */
@@ -304,10 +771,21 @@ public class VTKJPanel extends JPanel
 
         super.paintComponent(g);
 
+        // the heavyweight canvas renders itself
+        if (renderMode == RenderMode.NATIVE) {
+            if (contentChanged) {
+                contentChanged = false;
+                panel.repaint();
+            }
+            return;
+        }
+
         Graphics2D g2 = (Graphics2D) g;
 
         Composite original = g2.getComposite();
 
+        Image image = getImage();
+
         // TODO find out if this condition really improves performance
         if (getContentAlpha() < 1.f) {
             AlphaComposite ac1 =
@@ -315,17 +793,56 @@ public class VTKJPanel extends JPanel
                     getContentAlpha());
             g2.setComposite(ac1);
 
-            g2.drawImage(getImage(), 0, 0, /*
-                     * getWidth(), getHeight(),
-                     */ null);
+            drawContent(g2, image);
 
             g2.setComposite(original);
         } else {
-            g2.drawImage(getImage(), 0, 0, /*
-                     * getWidth(), getHeight(),
-                     */ null);
+            drawContent(g2, image);
+        }
+
+    }
+
+    /**
+     * Draws the specified content image. While resizing, the image is
+     * stretched to the current size of this component.
+     *
+     * @param g2 graphics context
+     * @param image image to draw
+     */
+    private void drawContent(Graphics2D g2, Image image) {
+
+        if (image == null || readbackRegion == null) {
+            return;
+        }
+
+        // the image only contains the visible part of the render window
+        Rectangle r = readbackRegion;
+
+        if (!resizing) {
+            g2.drawImage(image, r.x, r.y, null);
+            return;
         }
 
+        // the render window still has the previous size
+        int[] renderSize = rw.GetSize();
+        double sx = getWidth() / (double) Math.max(1, renderSize[0]);
+        double sy = getHeight() / (double) Math.max(1, renderSize[1]);
+
+        Object interpolation =
+                g2.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+        g2.drawImage(image,
+                (int) (r.x * sx), (int) (r.y * sy),
+                (int) Math.ceil(r.width * sx), (int) Math.ceil(r.height * sy),
+                null);
+
+        if (interpolation != null) {
+            g2.setRenderingHint(
+                    RenderingHints.KEY_INTERPOLATION, interpolation);
+        }
     }
 
     /**
@@ -335,82 +852,307 @@ public class VTKJPanel extends JPanel
      */
     private Image getImage() {
 
-        if (img == null || sizeChanged() || contentChanged) {
+        // while we are hidden, resizing or inside a scene transaction we show
+        // whatever we have rendered before
+        if (renderingSuspended || resizing || transactionDepth > 0) {
+            return img;
+        }
+
+        if (img == null || readbackRegionChanged() || contentChanged) {
             render();
+        } else if (asyncFramePending) {
+            fetchPendingFrame();
         }
 
         return img;
     }
 
     /**
-     * Indicates whether the render window and the offscreen image differ in
-     * size.
+     * Returns the region of the render window that shall be read back, i.e.,
+     * the visible rectangle of this component clipped to the size of the
+     * render window.
      *
-     * @return <code>true</code> if sizes differ; <code>false</code> otherwise
+     * @return region to read back (component coordinates)
      */
-    private boolean sizeChanged() {
-
+    private Rectangle computeReadbackRegion() {
         int[] renderSize = rw.GetSize();
-        int width = renderSize[0];
-        int height = renderSize[1];
 
-        boolean changed = img == null || width != img.getWidth(null) - 1
-                || height != img.getHeight(null) - 1;
+        return getVisibleRect().intersection(
+                new Rectangle(0, 0, renderSize[0], renderSize[1]));
+    }
 
-        return changed;
+    /**
+     * Indicates whether the region to read back differs from the region of
+     * the current offscreen image. This is the case if the render window has
+     * been resized or if the visible rectangle of this component has changed
+     * (e.g. scrolling).
+     *
+     * @return <code>true</code> if regions differ; <code>false</code> otherwise
+     */
+    private boolean readbackRegionChanged() {
+        return img == null || readbackRegion == null
+                || !readbackRegion.equals(computeReadbackRegion());
     }
 
     /**
-     * Updates the offscreen image of this panel.
+     * Suspends rendering if this component is not showing or if its window
+     * is iconified. If rendering is resumed this component is refreshed.
      */
-    private synchronized void updateImage() {
+    private void updateRenderingSuspended() {
 
-        // if we have no content to render nothing to be done
-        if (!renderContent) {
+        boolean iconified = ownerWindow instanceof Frame
+                && (((Frame) ownerWindow).getExtendedState()
+                & Frame.ICONIFIED) != 0;
+
+        boolean suspend = !isShowing() || iconified;
+
+        if (suspend == renderingSuspended) {
             return;
         }
 
-        // size of render window
-        int[] renderSize = rw.GetSize();
-        int width = renderSize[0];
-        int height = renderSize[1];
+        renderingSuspended = suspend;
 
-        // if either samplemodel, the mirror transform are null or
-        // render window and offscreen image have different sizes we need to
-        // create new sample model and transform
-        if (sampleModel == null || at == null || sizeChanged()) {
+        updateNativeWindow();
 
-            // as far as I know vtk uses RGBA component layout (see below)
-            sampleModel = new PixelInterleavedSampleModel(
-                    DataBuffer.TYPE_BYTE,
-                    width + 1, height + 1,
-                    4, 4 * (width + 1),
-                    bOffs);
+        if (!renderingSuspended) {
+            contentChanged();
+            repaint();
+        }
+    }
 
-            // transform to get around the axis problem
-            // @vtk devs why din't you choose the "right" orientation ;)
-            at = new AffineTransform(1, 0.0d, 0.0d, -1, 0, height + 1);
+    /**
+     * Registers the iconification listener at the window that currently
+     * contains this component.
+     */
+    private void updateOwnerWindow() {
+        Window w = SwingUtilities.getWindowAncestor(this);
 
-            // resize hidden frame if not in fullscreen mode
-            if (!fullscreen) {
-                panel.lock();
-                window.setSize(getWidth(), getHeight());
-                panel.unlock();
-            }
+        if (w == ownerWindow) {
+            return;
         }
 
-        panel.lock();
-        // retrieve the pixeldata from render window
-        vtkUnsignedCharArray vtkPixelData = new vtkUnsignedCharArray();
-        ren.GetRenderWindow().GetRGBACharPixelData(0, 0, width, height,
-                1, vtkPixelData);
+        if (ownerWindow != null) {
+            ownerWindow.removeWindowListener(ownerWindowListener);
+        }
 
-        renderData = vtkPixelData.GetJavaArray();
-        DataBuffer dbuf = new DataBufferByte(renderData, width * height, 0);
+        ownerWindow = w;
 
-        // we now construct an image raster with sample model (see above)
-        WritableRaster raster =
-                new ByteInterleavedRaster(sampleModel, dbuf, new Point(0, 0));
+        if (ownerWindow != null) {
+            ownerWindow.addWindowListener(ownerWindowListener);
+        }
+
+        updateRenderingSuspended();
+    }
+
+    /**
+     * Updates the offscreen image of this panel. Only the visible part of the
+     * render window is read back.
+     */
+    private synchronized void updateImage() {
+
+        // if we have no content to render nothing to be done
+        if (!renderContent) {
+            return;
+        }
+
+        // size of render window
+        int[] renderSize = rw.GetSize();
+        int renderHeight = renderSize[1];
+
+        // visible part of the render window
+        Rectangle region = computeReadbackRegion();
+
+        // nothing visible, nothing to read back
+        if (region.isEmpty()) {
+            return;
+        }
+
+        int width = region.width;
+        int height = region.height;
+
+        // opaque content does not need an alpha channel. we read back RGB
+        // only which saves bandwidth and allows for plain image copies
+        boolean opaque = !isBackgroundTransparent() && getContentAlpha() >= 1.f;
+
+        // if either samplemodel, the mirror transform are null or
+        // the readback region has changed we need to
+        // create new sample model and transform
+        if (sampleModel == null || at == null
+                || !region.equals(readbackRegion) || opaque != opaqueImage) {
+
+            if (opaque) {
+                sampleModel = new PixelInterleavedSampleModel(
+                        DataBuffer.TYPE_BYTE,
+                        width, height,
+                        3, 3 * width,
+                        rgbOffs);
+            } else {
+                // as far as I know vtk uses RGBA component layout (see below)
+                sampleModel = new PixelInterleavedSampleModel(
+                        DataBuffer.TYPE_BYTE,
+                        width, height,
+                        4, 4 * width,
+                        bOffs);
+            }
+
+            opaqueImage = opaque;
+
+            // transform to get around the axis problem
+            // @vtk devs why din't you choose the "right" orientation ;)
+            at = new AffineTransform(1, 0.0d, 0.0d, -1, 0, height);
+
+            // resize hidden frame if not in fullscreen mode
+            if (!fullscreen) {
+                panel.lock();
+                window.setSize(getWidth(), getHeight());
+                panel.unlock();
+            }
+
+            readbackRegion = region;
+        }
+
+        // vtk coordinates start at the lower left corner
+        int x0 = region.x;
+        int y0 = renderHeight - region.y - height;
+
+        // read in stripes which are converted in parallel while the next
+        // stripe is transferred
+        if (readbackStripes > 1 && !isAsyncReadbackActive()) {
+            asyncFramePending = false;
+            img = stripedReadback.read(panel, pixelTransfer,
+                    x0, y0, width, height, opaque, readbackStripes);
+
+            if (depthCapture) {
+                panel.lock();
+                captureDepth(region, renderSize);
+                panel.unlock();
+            }
+
+            return;
+        }
+
+        panel.lock();
+
+        asyncFramePending = false;
+
+        if (!readPixelsAsync(x0, y0, width, height, opaque ? 3 : 4)) {
+            // retrieve the pixeldata from render window
+            renderData = pixelTransfer.readPixels(rw, x0, y0, width, height,
+                    opaque ? 3 : 4, renderData);
+        }
+
+        if (depthCapture) {
+            captureDepth(region, renderSize);
+        }
+
+        img = createImage();
+        panel.unlock();
+
+        // the frame we just rendered is still in transfer. if no further
+        // frame is rendered in the meantime we show it with a delayed repaint
+        if (asyncFramePending) {
+            pendingFrameTimer.setInitialDelay(Math.max(MIN_PENDING_FRAME_DELAY,
+                    (int) (2000 * ren.GetLastRenderTimeInSeconds())));
+            pendingFrameTimer.restart();
+        }
+    }
+
+    /**
+     * Reads the specified region via asynchronous pbo readback (if enabled).
+     * If a frame with the same layout is pending, the pending frame is
+     * fetched and the new frame stays pending, i.e., the image is one frame
+     * behind (see {@link #fetchPendingFrame() }).
+     *
+     * <p><b>Note:</b> must be called while holding the render lock.</p>
+     *
+     * @param x x coordinate of the lower left corner (vtk coordinates)
+     * @param y y coordinate of the lower left corner (vtk coordinates)
+     * @param w width
+     * @param h height
+     * @param components number of components (3 for RGB, 4 for RGBA)
+     * @return <code>true</code> if render data has been read;
+     * <code>false</code> if the synchronous readback shall be used
+     */
+    private boolean readPixelsAsync(int x, int y, int w, int h,
+            int components) {
+
+        if (!asyncReadback || asyncReadbackUnavailable) {
+            return false;
+        }
+
+        rw.MakeCurrent();
+
+        if (pboReadback == null) {
+            pboReadback = PBOReadback.create();
+
+            if (pboReadback == null) {
+                // pbo extension or native helper not available
+                asyncReadbackUnavailable = true;
+                return false;
+            }
+        }
+
+        int size = w * h * components;
+
+        if (renderData == null || renderData.length != size) {
+            renderData = new byte[size];
+        }
+
+        boolean layoutChanged =
+                !pboReadback.hasLayout(x, y, w, h, components);
+
+        if (!pboReadback.read(x, y, w, h, components)) {
+            pboReadback.reset();
+            return false;
+        }
+
+        // we only fetch the previous frame whose transfer should be complete
+        // by now, the new frame stays pending. the first frame after a
+        // layout change has no predecessor and is fetched synchronously
+        if ((layoutChanged || pboReadback.getPending() > 1)
+                && !pboReadback.fetch(renderData)) {
+            pboReadback.reset();
+            return false;
+        }
+
+        asyncFramePending = pboReadback.getPending() > 0;
+
+        return true;
+    }
+
+    /**
+     * Updates the offscreen image with the frame that is still pending from
+     * the last asynchronous readback.
+     */
+    private synchronized void fetchPendingFrame() {
+
+        asyncFramePending = false;
+
+        panel.lock();
+        rw.MakeCurrent();
+        boolean fetched = pboReadback != null
+                && pboReadback.fetch(renderData);
+        if (fetched) {
+            img = createImage();
+        }
+        panel.unlock();
+
+        if (fetched && dirtyRegionRepaint) {
+            dirtyTiles = tileDiff.diff((BufferedImage) img, readbackRegion);
+        }
+    }
+
+    /**
+     * Creates the offscreen image from the current render data.
+     *
+     * @return the offscreen image
+     */
+    private BufferedImage createImage() {
+        DataBuffer dbuf = new DataBufferByte(renderData, renderData.length, 0);
+
+        // we now construct an image raster with sample model (see above)
+        WritableRaster raster =
+                new ByteInterleavedRaster(sampleModel, dbuf, new Point(0, 0));
 
         // transform the original raster
         AffineTransformOp op = new AffineTransformOp(
@@ -418,22 +1160,32 @@ public class VTKJPanel extends JPanel
         WritableRaster mirrorRaster = op.filter(raster, null);
 
         // finally, create an image
-        img = new BufferedImage(colorModel, mirrorRaster, false, null);
-        panel.unlock();
+        return new BufferedImage(opaqueImage ? opaqueColorModel : colorModel,
+                mirrorRaster, false, null);
     }
 
     /**
      * Returns the color model used to construct the offscreen image.
      *
+     * @param alpha defines whether the color model has an alpha channel
      * @return color model
      */
-    private static ColorModel createColorModel() {
+    private static ColorModel createColorModel(boolean alpha) {
         ColorSpace cs = ColorSpace.getInstance(ColorSpace.CS_sRGB);
-        int[] nBits = {8, 8, 8, 8};
 
-        return new ComponentColorModel(cs, nBits, true, false,
-                Transparency.TRANSLUCENT,
-                DataBuffer.TYPE_BYTE);
+        if (alpha) {
+            int[] nBits = {8, 8, 8, 8};
+
+            return new ComponentColorModel(cs, nBits, true, false,
+                    Transparency.TRANSLUCENT,
+                    DataBuffer.TYPE_BYTE);
+        } else {
+            int[] nBits = {8, 8, 8};
+
+            return new ComponentColorModel(cs, nBits, false, false,
+                    Transparency.OPAQUE,
+                    DataBuffer.TYPE_BYTE);
+        }
     }
 
     @Override
@@ -444,8 +1196,7 @@ public class VTKJPanel extends JPanel
         }
 
 //        render();
-        contentChanged();
-        repaint();
+        repaintContent();
 
         panel.mouseClicked(e);
 
@@ -455,8 +1206,7 @@ public class VTKJPanel extends JPanel
     public void mousePressed(MouseEvent e) {
         panel.mousePressed(e);
 //        render();
-        contentChanged();
-        repaint();
+        repaintContent();
     }
 
     @Override
@@ -485,24 +1235,21 @@ public class VTKJPanel extends JPanel
 
         panel.mouseDragged(e);
 //        render();
-        contentChanged();
-        repaint();
+        repaintContent();
     }
 
     @Override
     public void mouseWheelMoved(MouseWheelEvent e) {
         panel.mouseWheelMoved(e);
 //        render();
-        contentChanged();
-        repaint();
+        repaintContent();
     }
 
     @Override
     public void keyTyped(KeyEvent e) {
         panel.keyReleased(e);
 //        render();
-        contentChanged();
-        repaint();
+        repaintContent();
     }
 
     public void HardCopy(String filename, int mag) {
@@ -513,22 +1260,233 @@ public class VTKJPanel extends JPanel
     public void keyReleased(KeyEvent e) {
         panel.keyReleased(e);
 //        render();
-        contentChanged();
-        repaint();
+        repaintContent();
     }
 
     @Override
     public void keyPressed(KeyEvent e) {
         panel.keyPressed(e);
 //        render();
+        repaintContent();
+    }
+
+    /**
+     * Defines the pixel transfer used to read back the content. By default,
+     * the pixel transfer returned by {@link PixelTransfers#getDefault() } is
+     * used. If the specified pixel transfer is not available, the heap pixel
+     * transfer is used instead.
+     *
+     * @param pixelTransfer the pixel transfer to set
+     */
+    public void setPixelTransfer(PixelTransfer pixelTransfer) {
+        if (pixelTransfer == null) {
+            throw new IllegalArgumentException(
+                    "Pixel transfer must not be null.");
+        }
+
+        if (!pixelTransfer.isAvailable()) {
+            System.err.println(">> pixel transfer \""
+                    + pixelTransfer.getName() + "\" not available.");
+            pixelTransfer = new HeapPixelTransfer();
+        }
+
+        this.pixelTransfer = pixelTransfer;
+        contentChanged();
+    }
+
+    /**
+     * Returns the pixel transfer used to read back the content.
+     *
+     * @return the pixel transfer
+     */
+    public PixelTransfer getPixelTransfer() {
+        return pixelTransfer;
+    }
+
+    /**
+     * Defines the number of horizontal stripes used for pipelined readback
+     * (default is <code>1</code>, i.e., no striping). If more than one stripe
+     * is used, each stripe is read back and then flipped and converted to a
+     * premultiplied image by the worker pool while the next stripe is
+     * transferred. This is recommended for large panels (e.g. 4K). Striping
+     * is not used while asynchronous readback is active.
+     *
+     * @param stripes the number of stripes to set
+     */
+    public void setReadbackStripes(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException(
+                    "Number of stripes must be positive: " + stripes);
+        }
+        this.readbackStripes = stripes;
+        contentChanged();
+    }
+
+    /**
+     * Returns the number of horizontal stripes used for pipelined readback.
+     *
+     * @return the number of stripes
+     */
+    public int getReadbackStripes() {
+        return readbackStripes;
+    }
+
+    /**
+     * Defines whether to read back the content asynchronously via two
+     * alternating pixel buffer objects (disabled by default). While frame N
+     * is transferred, frame N-1 is shown. This trades one frame of latency
+     * for higher throughput. Requires the native readback helper (see
+     * <code>JVTK/native</code>) and pixel buffer object support. If either is
+     * unavailable, the default readback is used.
+     *
+     * @param v defines whether to enable asynchronous readback
+     */
+    public void setAsyncReadback(boolean v) {
+        this.asyncReadback = v;
+
+        if (!v) {
+            disposeAsyncReadback();
+        }
+
         contentChanged();
-        repaint();
+    }
+
+    /**
+     * Indicates whether asynchronous readback is enabled.
+     *
+     * @return <code>true</code> if asynchronous readback is enabled;
+     * <code>false</code> otherwise
+     * @see #isAsyncReadbackActive()
+     */
+    public boolean isAsyncReadback() {
+        return asyncReadback;
+    }
+
+    /**
+     * Indicates whether asynchronous readback is enabled and supported.
+     * Support can only be determined after the first frame has been rendered.
+     *
+     * @return <code>true</code> if asynchronous readback is active;
+     * <code>false</code> otherwise
+     */
+    public boolean isAsyncReadbackActive() {
+        return asyncReadback && !asyncReadbackUnavailable
+                && NativeReadback.isAvailable();
+    }
+
+    /**
+     * Captures the depth buffer of the specified region.
+     *
+     * <p><b>Note:</b> must be called while holding the render lock.</p>
+     *
+     * @param region region to capture (component coordinates)
+     * @param renderSize size of the render window
+     */
+    private void captureDepth(Rectangle region, int[] renderSize) {
+        if (depthBuffer == null) {
+            depthBuffer = new DepthBuffer();
+        }
+
+        depthBuffer.capture(rw, ren, region, renderSize[0], renderSize[1]);
+    }
+
+    /**
+     * Defines whether to capture the depth buffer together with the color
+     * content (disabled by default). The depth values can be accessed via
+     * {@link #getDepthBuffer() }, e.g., to clip Swing overlays or to
+     * unproject the location under the mouse cursor without picking. While
+     * asynchronous readback is active, the depth buffer may be one frame
+     * ahead of the displayed content.
+     *
+     * @param v defines whether to capture the depth buffer
+     */
+    public void setDepthCapture(boolean v) {
+        this.depthCapture = v;
+
+        if (!v) {
+            disposeDepthBuffer();
+        }
+
+        contentChanged();
+    }
+
+    /**
+     * Indicates whether the depth buffer is captured.
+     *
+     * @return <code>true</code> if the depth buffer is captured;
+     * <code>false</code> otherwise
+     */
+    public boolean isDepthCapture() {
+        return depthCapture;
+    }
+
+    /**
+     * Returns the depth buffer of the last frame.
+     *
+     * @return the depth buffer or <code>null</code> if depth capture is
+     * disabled or no frame has been captured yet
+     * @see #setDepthCapture(boolean)
+     */
+    public synchronized DepthBuffer getDepthBuffer() {
+        return depthBuffer;
+    }
+
+    /**
+     * Returns the id buffer picker of this panel. The picker renders color
+     * coded actor ids whenever the scene has changed and answers picks via
+     * array lookups which makes it suitable for hover highlighting. Component
+     * coordinates of this panel can be passed directly.
+     *
+     * @return the id buffer picker
+     */
+    public synchronized IdBufferPicker getIdBufferPicker() {
+        if (idBufferPicker == null) {
+            idBufferPicker = new IdBufferPicker(panel);
+        }
+
+        return idBufferPicker;
+    }
+
+    /**
+     * Releases the depth buffer.
+     */
+    private synchronized void disposeDepthBuffer() {
+        if (depthBuffer != null) {
+            depthBuffer.dispose();
+            depthBuffer = null;
+        }
+    }
+
+    /**
+     * Releases the pixel buffer objects used for asynchronous readback.
+     */
+    private synchronized void disposeAsyncReadback() {
+        asyncFramePending = false;
+        pendingFrameTimer.stop();
+
+        if (pboReadback != null) {
+            panel.lock();
+            rw.MakeCurrent();
+            pboReadback.dispose();
+            panel.unlock();
+            pboReadback = null;
+        }
     }
 
     /**
      * Disposes this component.
      */
     public void dispose() {
+        disposeAsyncReadback();
+        disposeDepthBuffer();
+
+        synchronized (this) {
+            if (idBufferPicker != null) {
+                idBufferPicker.dispose();
+                idBufferPicker = null;
+            }
+        }
+
         panel.Delete();
         window.dispose();
     }
@@ -549,8 +1507,7 @@ public class VTKJPanel extends JPanel
      */
     public void resetCamera() {
         panel.resetCamera();
-        contentChanged();
-        repaint();
+        repaintContent();
     }
 
     /**
@@ -579,8 +1536,7 @@ public class VTKJPanel extends JPanel
 
         panel.unlock();
 
-        contentChanged();
-        repaint();
+        repaintContent();
     }
 
     /**
@@ -605,6 +1561,230 @@ public class VTKJPanel extends JPanel
     public void setContentAlpha(float contentAlpha) {
         this.contentAlpha = contentAlpha;
         contentChanged();
+        updateRenderMode();
+    }
+
+    /**
+     * Defines whether to use hybrid mode (disabled by default). In hybrid
+     * mode this panel automatically renders natively via a heavyweight canvas
+     * if neither translucency (content alpha is <code>1</code> and background
+     * is not transparent) nor overlapping lightweight components are present.
+     * Otherwise it falls back to lightweight rendering. Changes of the render
+     * mode are reported as <code>"renderMode"</code> property change events.
+     *
+     * <p><b>Note:</b> adding or removing components is detected
+     * automatically. If the visibility or the bounds of overlapping
+     * components are changed, {@link #updateRenderMode() } should be
+     * called.</p>
+     *
+     * @param v defines whether to enable hybrid mode
+     */
+    public void setHybridMode(boolean v) {
+        this.hybridMode = v;
+        updateRenderMode();
+    }
+
+    /**
+     * Indicates whether hybrid mode is enabled.
+     *
+     * @return <code>true</code> if hybrid mode is enabled;
+     * <code>false</code> otherwise
+     */
+    public boolean isHybridMode() {
+        return hybridMode;
+    }
+
+    /**
+     * Returns the active render mode.
+     *
+     * @return the active render mode
+     */
+    public RenderMode getRenderMode() {
+        return renderMode;
+    }
+
+    /**
+     * Switches to the render mode that is suitable for the current state of
+     * this panel and the overlapping components (only applicable in hybrid
+     * mode). If called from another thread, the update is performed by the
+     * event dispatch thread.
+     */
+    public void updateRenderMode() {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    updateRenderMode();
+                }
+            });
+            return;
+        }
+
+        boolean useNative = hybridMode && !fullscreen
+                && getContentAlpha() >= 1.f
+                && !isBackgroundTransparent()
+                && !isOverlapped();
+
+        setRenderMode(useNative ? RenderMode.NATIVE : RenderMode.LIGHTWEIGHT);
+    }
+
+    /**
+     * Schedules a render mode update. Multiple requests are collapsed into
+     * one update.
+     */
+    private void scheduleRenderModeUpdate() {
+        if (!hybridMode || renderModeUpdateScheduled) {
+            return;
+        }
+
+        renderModeUpdateScheduled = true;
+
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                renderModeUpdateScheduled = false;
+                updateRenderMode();
+            }
+        });
+    }
+
+    /**
+     * Switches the render mode. In native mode the hidden window is shown on
+     * top of this panel. The canvas always stays in the hidden window since
+     * moving it to another parent would invalidate its native window and
+     * OpenGL context.
+     *
+     * <p><b>Note:</b> must be called on the event dispatch thread.</p>
+     *
+     * @param mode the render mode to set
+     */
+    private void setRenderMode(RenderMode mode) {
+
+        if (!SwingUtilities.isEventDispatchThread()) {
+            throw new IllegalStateException(
+                    "Render mode must be changed on the event dispatch thread.");
+        }
+
+        if (mode == renderMode) {
+            return;
+        }
+
+        RenderMode oldMode = renderMode;
+        renderMode = mode;
+
+        resizeTimer.stop();
+        resizing = false;
+
+        if (mode == RenderMode.NATIVE) {
+            updateNativeWindow();
+        } else {
+            if (!fullscreen) {
+                window.setAlwaysOnTop(false);
+                window.setVisible(false);
+            }
+
+            readbackRegion = null;
+            img = null;
+            if (!fullscreen) {
+                resizeRenderWindow(getWidth(), getHeight());
+            }
+        }
+
+        contentChanged();
+        revalidate();
+        repaint();
+
+        firePropertyChange("renderMode", oldMode, mode);
+    }
+
+    /**
+     * Shows the hidden window on top of this panel while native rendering is
+     * active and this panel is showing. Otherwise the window is hidden.
+     */
+    private void updateNativeWindow() {
+        if (renderMode != RenderMode.NATIVE || fullscreen) {
+            return;
+        }
+
+        if (!isShowing() || renderingSuspended) {
+            window.setVisible(false);
+            return;
+        }
+
+        Point p = getLocationOnScreen();
+        window.setLocation(p.x, p.y);
+
+        if (window.getWidth() != getWidth()
+                || window.getHeight() != getHeight()) {
+            resizeRenderWindow(getWidth(), getHeight());
+        }
+
+        if (!window.isVisible()) {
+            window.setVisible(true);
+        }
+    }
+
+    /**
+     * Indicates whether lightweight components are drawn on top of this
+     * panel.
+     *
+     * @return <code>true</code> if this panel is overlapped;
+     * <code>false</code> otherwise
+     */
+    private boolean isOverlapped() {
+
+        // our own children are drawn on top
+        for (Component c : getComponents()) {
+            if (c.isVisible()) {
+                return true;
+            }
+        }
+
+        Component child = this;
+        Container parent = getParent();
+        Rectangle bounds = new Rectangle(0, 0, getWidth(), getHeight());
+
+        while (parent != null && !(child instanceof Window)) {
+
+            // bounds in parent coordinates
+            bounds.translate(child.getX(), child.getY());
+
+            // components with lower index are drawn on top
+            for (Component c : parent.getComponents()) {
+                if (c == child) {
+                    break;
+                }
+
+                if (c.isVisible() && c.getBounds().intersects(bounds)) {
+                    return true;
+                }
+            }
+
+            child = parent;
+            parent = parent.getParent();
+        }
+
+        return false;
+    }
+
+    /**
+     * Observes all ancestors of this panel for added/removed components.
+     */
+    private void updateObservedAncestors() {
+        for (Container c : observedAncestors) {
+            c.removeContainerListener(ancestorListener);
+        }
+
+        observedAncestors.clear();
+
+        for (Container c = getParent(); c != null; c = c.getParent()) {
+            c.addContainerListener(ancestorListener);
+            observedAncestors.add(c);
+
+            if (c instanceof Window) {
+                break;
+            }
+        }
     }
 
     /**
@@ -33,6 +33,8 @@ package eu.mihosoft.vtk;
  */
 import java.awt.Graphics;
 import java.awt.event.*;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import javax.swing.SwingUtilities;
 import vtk.*;
 
@@ -58,12 +60,21 @@ class VTKPanel extends vtkPanel
         implements MouseListener, MouseMotionListener, KeyListener {
 
     private static final long serialVersionUID = 1L;
+    private static final int VTK_WIREFRAME = 1;
+    private static final int VTK_SURFACE = 2;
     protected vtkRenderWindow rw = new vtkRenderWindow();
     protected vtkRenderer ren = new vtkRenderer();
     protected vtkCamera cam = null;
     protected vtkLight lgt = new vtkLight();
     protected int lastX;
     protected int lastY;
+    //
+    // reused by pickActor()
+    private final vtkPropPicker picker = new vtkPropPicker();
+    //
+    // groups whose shared properties are changed by the 'w' and 's' keys
+    private final List<ActorGroup> actorGroups =
+            new CopyOnWriteArrayList<ActorGroup>();
     protected int windowset = 0;
     protected int lightingset = 0;
     protected int LightFollowCamera = 1;
@@ -397,33 +408,57 @@ class VTKPanel extends vtkPanel
             pickActor(lastX, lastY);
         }
         if ('w' == keyChar) {
-            vtkActorCollection ac;
-            vtkActor anActor;
-            int i;
-
-            ac = ren.GetActors();
-            ac.InitTraversal();
-            for (i = 0; i < ac.GetNumberOfItems(); i++) {
-                anActor = ac.GetNextActor();
-                anActor.GetProperty().SetRepresentationToWireframe();
-            }
+            setRepresentation(VTK_WIREFRAME);
             this.Render();
         }
         if ('s' == keyChar) {
-            vtkActorCollection ac;
-            vtkActor anActor;
-            int i;
-
-            ac = ren.GetActors();
-            ac.InitTraversal();
-            for (i = 0; i < ac.GetNumberOfItems(); i++) {
-                anActor = ac.GetNextActor();
-                anActor.GetProperty().SetRepresentationToSurface();
-            }
+            setRepresentation(VTK_SURFACE);
             this.Render();
         }
     }
 
+    /**
+     * Registers the specified actor group. If groups are registered, the
+     * 'w' and 's' keys only change the shared properties of the registered
+     * groups, i.e., the costs do not depend on the number of actors.
+     * Otherwise, the properties of all actors are changed.
+     *
+     * @param g group to register
+     */
+    public void addActorGroup(ActorGroup g) {
+        actorGroups.add(g);
+    }
+
+    /**
+     * Unregisters the specified actor group.
+     *
+     * @param g group to unregister
+     * @return <code>true</code> if the group has been unregistered;
+     * <code>false</code> if it was not registered
+     */
+    public boolean removeActorGroup(ActorGroup g) {
+        return actorGroups.remove(g);
+    }
+
+    /**
+     * Changes the representation of the registered actor groups or, if no
+     * groups are registered, of the distinct properties of all actors.
+     */
+    private void setRepresentation(int representation) {
+        if (!actorGroups.isEmpty()) {
+            for (ActorGroup g : actorGroups) {
+                g.setRepresentation(representation);
+            }
+            return;
+        }
+
+        // the properties are collected on each call since replacing the
+        // property of an actor does not modify the prop collection
+        for (vtkProperty p : ActorGroup.getProperties(ren.GetActors())) {
+            p.SetRepresentation(representation);
+        }
+    }
+
     public void HardCopy(String filename, int mag) {
 
         Lock();
@@ -444,15 +479,29 @@ class VTKPanel extends vtkPanel
 
     public void pickActor(int x, int y) {
 
-        vtkPropPicker picker = new vtkPropPicker();
+        vtkActor actor = getActorAt(x, y);
+
+        if (actor != null) {
+            System.out.println(actor.GetClassName());
+        }
+    }
+
+    /**
+     * Returns the actor at the specified location.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     * @return the actor at the specified location or <code>null</code> if no
+     * actor is visible at this location
+     */
+    public vtkActor getActorAt(int x, int y) {
 
         Lock();
         picker.PickProp(x, rw.GetSize()[1] - y, ren);
+        vtkActor actor = picker.GetActor();
         UnLock();
 
-        if (picker.GetActor() != null) {
-            System.out.println(picker.GetActor().GetClassName());
-        }
+        return actor;
     }
 
     public void keyReleased(KeyEvent e) {
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012 Michael Hoffer <info@michaelhoffer.de>. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Michael Hoffer <info@michaelhoffer.de> "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL Michael Hoffer <info@michaelhoffer.de> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Michael Hoffer <info@michaelhoffer.de>.
+ */
+package eu.mihosoft.vtk;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared pool of worker threads used for parallel image and geometry
+ * processing. Worker threads are daemon threads, i.e., they do not prevent
+ * the application from exiting.
+ *
+ * <p><b>Note:</b> tasks executed by this pool must not call vtk methods that
+ * cause rendering unless they acquire the render lock.</p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+final class WorkerPool {
+
+    private static final int NUMBER_OF_THREADS =
+            Runtime.getRuntime().availableProcessors();
+    private static final ExecutorService executor =
+            Executors.newFixedThreadPool(NUMBER_OF_THREADS,
+            new WorkerThreadFactory());
+
+    // no instanciation allowed
+    private WorkerPool() {
+        throw new AssertionError(); // not in this class either!
+    }
+
+    /**
+     * Returns the shared executor.
+     *
+     * @return the shared executor
+     */
+    public static ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return the number of worker threads
+     */
+    public static int getNumberOfThreads() {
+        return NUMBER_OF_THREADS;
+    }
+
+    /**
+     * Creates named daemon threads.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r,
+                    "jvtk-worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}